@@ -1,10 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.service.FeedService;
 
@@ -22,8 +27,26 @@ public class FeedController {
     }
 
     @GetMapping("/{userId}/feed")
-    public List<FeedEvent> getFeedByUserId(@PathVariable Integer userId) {
-        log.info("Request for feed for user with id {}", userId);
-        return feedService.getFeedByUserId(userId);
+    public ResponseEntity<List<FeedEvent>> getFeedByUserId(@PathVariable Integer userId,
+                                                           @RequestParam(required = false) String after,
+                                                           @RequestParam(required = false) Integer limit) {
+        log.info("Request for feed for user with id {}: after={}, limit={}", userId, after, limit);
+        return PageResponses.of(feedService.getFeedPage(userId, after, limit));
+    }
+
+    @GetMapping("/{userId}/timeline")
+    public ResponseEntity<List<FeedEvent>> getTimeline(@PathVariable Integer userId,
+                                                       @RequestParam(required = false) String before,
+                                                       @RequestParam(required = false) Integer limit) {
+        log.info("Request for timeline of user with id {}: before={}, limit={}", userId, before, limit);
+        return PageResponses.of(feedService.getTimeline(userId, before, limit));
+    }
+
+    // EventSource при переподключении сам присылает id последнего полученного события - его позицию в ленте
+    @GetMapping(path = "/{userId}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFeed(@PathVariable Integer userId,
+                                 @RequestHeader(name = "Last-Event-ID", required = false) Integer lastEventId) {
+        log.info("Subscription to feed of user with id {}, Last-Event-ID={}", userId, lastEventId);
+        return feedService.subscribe(userId, lastEventId);
     }
 }
@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import java.util.List;
@@ -34,9 +37,11 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getAllFilms() {
-        log.info("Display a list of all movies: {}", filmService.getAllFilms());
-        return filmService.getAllFilms();
+    public ResponseEntity<List<Film>> getAllFilms(@RequestParam(required = false) String after,
+                                                  @RequestParam(required = false) Integer limit) {
+        log.info("Display a page of movies: after={}, limit={}", after, limit);
+        Page<Film> page = filmService.getFilmsPage(after, limit);
+        return PageResponses.of(page);
     }
 
     @GetMapping("/{id}")
@@ -67,7 +72,13 @@ public class FilmController {
     }
 
     @GetMapping("/common")
-    public List<Film> getCommonFilms(@RequestParam("userId") int userId, @RequestParam("friendId") int friendId) {
+    public List<Film> getCommonFilms(@RequestParam(required = false) Integer userId,
+                                     @RequestParam(required = false) Integer friendId,
+                                     @RequestParam(required = false) List<Integer> userIds) {
+        if (userIds != null) {
+            log.info("Поступил запрос на получение общих фильмов у пользователей с id {}.", userIds);
+            return filmService.getCommonFilms(userIds);
+        }
         log.info("Поступил запрос на получение общих фильмов у пользователей с id {}.",
                 String.valueOf(userId) + "," + String.valueOf(friendId));
 
@@ -90,6 +101,14 @@ public class FilmController {
         return filmService.getFilmsBySearch(query, by);
     }
 
+    @GetMapping("/suggest")
+    public List<Suggestion> getSuggestions(@RequestParam(name = "prefix") String prefix,
+                                           @RequestParam(required = false) Integer limit) {
+        log.debug("Suggestions for prefix {}, limit={}", prefix, limit);
+
+        return filmService.getSuggestions(prefix, limit);
+    }
+
     @DeleteMapping("/{filmId}")
     public Film delete(@PathVariable(name = "filmId") Integer filmIdRequest) {
         log.info("Поступил запрос на удаление фильма с id {}.", filmIdRequest);
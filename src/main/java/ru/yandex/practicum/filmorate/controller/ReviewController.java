@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.service.ReviewService;
@@ -41,10 +42,13 @@ public class ReviewController {
     }
 
     @GetMapping
-    public List<Review> getAllReviews(@RequestParam(required = false) Integer filmId,
-                                      @RequestParam(defaultValue = "10") int count) {
-        log.info("Display a list of all movies: {}", reviewService.getAllReviews(filmId, count));
-        return reviewService.getAllReviews(filmId, count);
+    public ResponseEntity<List<Review>> getAllReviews(@RequestParam(required = false) Integer filmId,
+                                                      @RequestParam(required = false) String after,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) Integer count) {
+        log.info("Request for reviews: filmId={}, after={}, limit={}, count={}", filmId, after, limit, count);
+        // count - прежнее имя параметра limit
+        return PageResponses.of(reviewService.getReviewsPage(filmId, after, limit != null ? limit : count));
     }
 
     @GetMapping("/{id}")
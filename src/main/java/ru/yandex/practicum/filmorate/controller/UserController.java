@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
@@ -39,9 +41,11 @@ public class UserController {
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        log.info("Display a list of all users");
-        return userService.getAllUsers();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) String after,
+                                                  @RequestParam(required = false) Integer limit) {
+        log.info("Display a page of users: after={}, limit={}", after, limit);
+        Page<User> page = userService.getUsersPage(after, limit);
+        return PageResponses.of(page);
     }
 
     @PutMapping("/{id}/friends/{friendId}")
@@ -66,10 +70,23 @@ public class UserController {
 
     @GetMapping("/{userId}/friends/common/{friendId}")
     public List<User> getCommonFriends(@PathVariable int userId, @PathVariable int friendId) {
-        log.info("Display a list of common friends {} of users {} and {}", userService.getAllUsers(), userId, friendId);
+        log.info("Display a list of common friends of users {} and {}", userId, friendId);
         return userService.getCommonFriends(userId, friendId);
     }
 
+    @GetMapping("/{userId}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable int userId,
+                                           @RequestParam(required = false) Integer limit) {
+        log.info("Display friend suggestions for user {}, limit={}", userId, limit);
+        return userService.getFriendSuggestions(userId, limit);
+    }
+
+    @GetMapping("/{userId}/path/{otherId}")
+    public List<User> getFriendshipPath(@PathVariable int userId, @PathVariable int otherId) {
+        log.info("Display the shortest friendship chain from user {} to user {}", userId, otherId);
+        return userService.getFriendshipPath(userId, otherId);
+    }
+
     @GetMapping("/{userId}/recommendations")
     public Collection<Film> getFilmsRecommendations(@PathVariable int userId) {
         log.info("Display a list of recommendations for user with id {}", userId);
@@ -1,12 +1,12 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class FeedEvent {
     private Integer eventId;
     private Long timestamp;
@@ -14,4 +14,18 @@ public class FeedEvent {
     private EventType eventType;
     private Operation operation;
     private Integer entityId;
+    // место в порядке фиксации записей ленты, его ставит хранилище; клиенту достается только в курсоре
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Integer position;
+
+    public FeedEvent(Integer eventId, Long timestamp, Integer userId, EventType eventType, Operation operation,
+                     Integer entityId) {
+        this.eventId = eventId;
+        this.timestamp = timestamp;
+        this.userId = userId;
+        this.eventType = eventType;
+        this.operation = operation;
+        this.entityId = entityId;
+    }
 }
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.model;
 import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
 import java.time.LocalDate;
 import java.util.HashSet;
@@ -18,7 +19,7 @@ public class Film {
     private String description;
     private LocalDate releaseDate;
     private Integer duration;
-    private final Set<Integer> likes = new HashSet<>();
+    private final IntSet likes = new IntSet();
     private Set<Genre> genres = new HashSet<>();
     private MpaRating mpa;
 
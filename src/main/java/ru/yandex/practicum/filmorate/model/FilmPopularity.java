@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Set;
+
+/**
+ * Данные фильма, по которым строится рейтинг популярности: число лайков, год выпуска и жанры.
+ */
+public record FilmPopularity(int filmId, int likes, int year, Set<Integer> genreIds) {
+}
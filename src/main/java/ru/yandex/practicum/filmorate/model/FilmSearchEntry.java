@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Set;
+
+/**
+ * Данные фильма для поискового индекса: наименование и режиссеры.
+ */
+public record FilmSearchEntry(int filmId, String name, Set<Long> directorIds) {
+}
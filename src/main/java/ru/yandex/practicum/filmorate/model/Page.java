@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+
+/**
+ * Страница списка и курсор следующей страницы (null, если страница последняя).
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+}
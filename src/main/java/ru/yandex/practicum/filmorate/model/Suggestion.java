@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Подсказка автодополнения: фильм или режиссер, чье наименование начинается с введенного префикса.
+ */
+public record Suggestion(long id, String name, SuggestionType type) {
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+@JsonFormat(shape = JsonFormat.Shape.STRING)
+public enum SuggestionType {
+    FILM,
+    DIRECTOR
+}
@@ -1,10 +1,9 @@
 package ru.yandex.practicum.filmorate.model;
 
 import lombok.Data;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
 
 @Data
 public class User {
@@ -13,5 +12,5 @@ public class User {
     private String login;
     private String name;
     private LocalDate birthday;
-    private final Set<Integer> friends = new HashSet<>();
+    private final IntSet friends = new IntSet();
 }
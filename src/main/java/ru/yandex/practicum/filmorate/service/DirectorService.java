@@ -7,32 +7,79 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
 
 import java.util.Collection;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class DirectorService {
     private final DirectorDbStorage directorDbStorage;
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmSuggestIndex filmSuggestIndex;
+    private final ReferenceData referenceData;
+    private final FilmCache filmCache;
+    private final IndexRebuilder indexRebuilder;
 
     private static final Logger log = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(DirectorService.class);
 
     @Autowired
-    public DirectorService(DirectorDbStorage directorDbStorage) {
+    public DirectorService(DirectorDbStorage directorDbStorage, FilmSearchIndex filmSearchIndex,
+                           FilmSuggestIndex filmSuggestIndex, ReferenceData referenceData, FilmCache filmCache,
+                           IndexRebuilder indexRebuilder) {
         this.directorDbStorage = directorDbStorage;
+        this.filmSearchIndex = filmSearchIndex;
+        this.filmSuggestIndex = filmSuggestIndex;
+        this.referenceData = referenceData;
+        this.filmCache = filmCache;
+        this.indexRebuilder = indexRebuilder;
     }
 
     public Director add(Director directorRequest) {
-        return directorDbStorage.add(directorRequest);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            Director director = directorDbStorage.add(directorRequest);
+            referenceData.directorsChanged();
+            filmSearchIndex.directorSaved(director);
+            filmSuggestIndex.directorSaved(director);
+            return director;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public Director update(Director directorRequest) {
-        return directorDbStorage.update(directorRequest);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            Director director = directorDbStorage.update(directorRequest);
+            referenceData.directorsChanged();
+            filmCache.directorChanged(director.getId());
+            filmSearchIndex.directorSaved(director);
+            filmSuggestIndex.directorSaved(director);
+            return director;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public Director delete(Long directorId) {
         Director removeDirector = getByIdDirector(directorId);
 
-        return directorDbStorage.delete(removeDirector);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            removeDirector = directorDbStorage.delete(removeDirector);
+            referenceData.directorsChanged();
+            filmCache.directorChanged(removeDirector.getId());
+            filmSearchIndex.directorRemoved(removeDirector.getId());
+            filmSuggestIndex.directorRemoved(removeDirector.getId());
+        } finally {
+            writeLock.unlock();
+        }
+
+        return removeDirector;
     }
 
     public Director getById(Long id) {
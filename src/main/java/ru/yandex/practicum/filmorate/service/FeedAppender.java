@@ -0,0 +1,290 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.util.RingBuffer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Отложенная запись ленты событий: события копятся в кольцевом буфере и пишутся в БД пачками
+ * одним потоком - когда набралась пачка или когда самое старое событие ждет дольше flush-interval.
+ * <p>
+ * Если буфер полон, писатель ждет место до append-timeout, а потом пишет событие сам: события не теряются,
+ * а запросы замедляются вместе с БД. Чтение ленты сначала дожидается записи всего, что было принято до него.
+ * В режиме SYNC, а также до запуска и после остановки события пишутся сразу в потоке запроса.
+ * Записанные события передаются подписчикам через {@link FeedHub} и в окна {@link FeedTimeline}.
+ */
+@Slf4j
+@Component
+public class FeedAppender {
+    private final FeedStorage feedStorage;
+    private final FeedHub feedHub;
+    private final FeedTimeline feedTimeline;
+
+    @Value("${filmorate.feed.write-mode:ASYNC}")
+    private Mode mode = Mode.ASYNC;
+
+    @Value("${filmorate.feed.buffer-capacity:8192}")
+    private int bufferCapacity = 8192;
+
+    @Value("${filmorate.feed.batch-size:256}")
+    private int batchSize = 256;
+
+    @Value("${filmorate.feed.flush-interval-ms:20}")
+    private long flushIntervalMillis = 20;
+
+    @Value("${filmorate.feed.append-timeout-ms:1000}")
+    private long appendTimeoutMillis = 1000;
+
+    @Value("${filmorate.feed.drain-timeout-ms:5000}")
+    private long drainTimeoutMillis = 5000;
+
+    private volatile RingBuffer<FeedEvent> buffer;
+    private volatile Thread flusher;
+    private volatile boolean stopping;
+    private volatile boolean flushRequested;
+    // сколько событий из буфера уже записано (или окончательно не записано)
+    private volatile long flushed;
+    private final Object flushMonitor = new Object();
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder blockedAppends = new LongAdder();
+    private final LongAdder directWrites = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public FeedAppender(@Qualifier("feedDbStorage") FeedStorage feedStorage, FeedHub feedHub,
+                        FeedTimeline feedTimeline) {
+        this.feedStorage = feedStorage;
+        this.feedHub = feedHub;
+        this.feedTimeline = feedTimeline;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (mode != Mode.ASYNC || flusher != null) return;
+
+        buffer = new RingBuffer<>(Integer.highestOneBit(Math.max(2, bufferCapacity - 1)) << 1);
+        stopping = false;
+        flushed = 0;
+        flusher = Thread.ofPlatform().name("feed-appender").daemon().start(this::flushLoop);
+        log.info("Отложенная запись ленты: буфер {}, пачка {}, интервал {} мс.", buffer.capacity(), batchSize,
+                flushIntervalMillis);
+    }
+
+    /**
+     * Останавливает прием в буфер и дописывает все, что в нем осталось.
+     */
+    @PreDestroy
+    public synchronized void drain() {
+        Thread thread = flusher;
+        if (thread == null) return;
+
+        stopping = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(drainTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Запись ленты не завершилась за {} мс, в буфере {} событий.", drainTimeoutMillis,
+                    buffer.size());
+        } else {
+            // писатель мог успеть положить событие, пока поток записи завершался
+            List<FeedEvent> rest = new ArrayList<>();
+            buffer.drainTo(rest, Integer.MAX_VALUE);
+            if (!rest.isEmpty()) write(rest);
+            publishFlushed(buffer.drained());
+        }
+        flusher = null;
+        log.info("Запись ленты остановлена: {}", stats());
+    }
+
+    public void append(FeedEvent event) {
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(Instant.now().toEpochMilli());
+        }
+        RingBuffer<FeedEvent> current = buffer;
+        Thread thread = flusher;
+        if (current == null || thread == null || stopping) {
+            writeDirectly(event);
+            return;
+        }
+
+        if (!current.offer(event) && !awaitSpace(current, thread, event)) {
+            log.warn("Буфер ленты полон дольше {} мс, событие пишется в потоке запроса.", appendTimeoutMillis);
+            writeDirectly(event);
+            return;
+        }
+        appended.increment();
+        // полная пачка пишется сразу, не дожидаясь интервала
+        if (current.size() >= batchSize) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Ждет, пока будут записаны все события, принятые в буфер до вызова, - но не дольше drain-timeout.
+     */
+    public void awaitFlushed() {
+        RingBuffer<FeedEvent> current = buffer;
+        Thread thread = flusher;
+        if (current == null || thread == null) return;
+        long target = current.offered();
+        if (flushed >= target) return;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        synchronized (flushMonitor) {
+            try {
+                while (flushed < target && thread.isAlive()) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        log.warn("Лента не записана за {} мс, чтение может не увидеть последние события.",
+                                drainTimeoutMillis);
+                        return;
+                    }
+                    flushRequested = true;
+                    LockSupport.unpark(thread);
+                    flushMonitor.wait(Math.max(1, Math.min(remaining, flushIntervalMillis)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public Stats stats() {
+        RingBuffer<FeedEvent> current = buffer;
+        long batchCount = batches.get();
+        return new Stats(
+                current == null ? 0 : current.size(),
+                appended.sum(),
+                written.get(),
+                failed.get(),
+                blockedAppends.sum(),
+                directWrites.sum(),
+                batchCount,
+                batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(flushNanos.get() / batchCount),
+                TimeUnit.NANOSECONDS.toMicros(lastFlushNanos),
+                TimeUnit.NANOSECONDS.toMicros(maxFlushNanos));
+    }
+
+    /**
+     * SYNC - событие записано к концу запроса; ASYNC - записывается пачкой вскоре после него.
+     */
+    public enum Mode {
+        SYNC,
+        ASYNC
+    }
+
+    /**
+     * Счетчики с момента запуска; время записи пачек в микросекундах.
+     */
+    public record Stats(int queueDepth, long appended, long written, long failed, long blockedAppends,
+                        long directWrites, long batches, long averageFlushMicros, long lastFlushMicros,
+                        long maxFlushMicros) {
+    }
+
+    private boolean awaitSpace(RingBuffer<FeedEvent> current, Thread thread, FeedEvent event) {
+        blockedAppends.increment();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(appendTimeoutMillis);
+        while (System.nanoTime() < deadline && !stopping && thread.isAlive()) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(100_000);
+            if (current.offer(event)) return true;
+        }
+        return false;
+    }
+
+    private void writeDirectly(FeedEvent event) {
+        directWrites.increment();
+        feedStorage.addEvent(event);
+        published(event);
+    }
+
+    private void flushLoop() {
+        RingBuffer<FeedEvent> current = buffer;
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        List<FeedEvent> batch = new ArrayList<>(batchSize);
+        long oldestAt = 0;
+
+        while (true) {
+            // флаг читается до выборки: после остановки прием закрыт, и пустой буфер значит, что записано все
+            boolean stop = stopping;
+            boolean wasEmpty = batch.isEmpty();
+            current.drainTo(batch, batchSize - batch.size());
+            long now = System.nanoTime();
+            if (wasEmpty && !batch.isEmpty()) oldestAt = now;
+
+            boolean due = stop || flushRequested || batch.size() >= batchSize
+                    || (!batch.isEmpty() && now - oldestAt >= intervalNanos);
+            if (!due) {
+                LockSupport.parkNanos(batch.isEmpty() ? intervalNanos : oldestAt + intervalNanos - now);
+                continue;
+            }
+
+            flushRequested = false;
+            if (!batch.isEmpty()) write(batch);
+            publishFlushed(current.drained());
+            if (stop && current.size() == 0) return;
+        }
+    }
+
+    private void write(List<FeedEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            feedStorage.addEvents(batch);
+            written.addAndGet(batch.size());
+            batch.forEach(this::published);
+        } catch (RuntimeException e) {
+            // пачка откатилась целиком; пишем по одному, чтобы одно плохое событие не потеряло остальные
+            log.warn("Пачка из {} событий ленты не записана, запись по одному: {}", batch.size(), e.getMessage());
+            for (FeedEvent event : batch) {
+                try {
+                    feedStorage.addEvent(event);
+                    written.incrementAndGet();
+                    published(event);
+                } catch (RuntimeException eventError) {
+                    failed.incrementAndGet();
+                    log.error("Событие ленты не записано: {}", event, eventError);
+                }
+            }
+        } finally {
+            batch.clear();
+            long elapsed = System.nanoTime() - start;
+            batches.incrementAndGet();
+            flushNanos.addAndGet(elapsed);
+            lastFlushNanos = elapsed;
+            if (elapsed > maxFlushNanos) maxFlushNanos = elapsed;
+        }
+    }
+
+    private void published(FeedEvent event) {
+        feedHub.publish(event);
+        feedTimeline.eventWritten(event);
+    }
+
+    private void publishFlushed(long position) {
+        if (flushed == position) return;
+        flushed = position;
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Подписки на ленту пользователя по SSE: события, записанные в БД, рассылаются подписчикам их пользователя.
+ * <p>
+ * Подписка без событий - это только открытый {@link SseEmitter} в карте, потоков она не держит.
+ * У каждой подписки своя очередь; отправку ведет задача в пуле из sender-threads потоков, которая
+ * запускается, когда в очереди что-то появилось, и завершается, когда она опустела, - так события одного
+ * подписчика уходят по порядку, а медленный клиент занимает один поток и не задерживает остальных.
+ * Потоки обычные, не виртуальные: {@link SseEmitter#send} синхронизирован, и блокирующая запись в нем
+ * закрепила бы виртуальный поток за несущим. Если у клиента скопилось больше max-pending событий,
+ * подписка закрывается: переподключившись с Last-Event-ID, он дочитает пропущенное из БД. Закрывает
+ * emitter поток отправки, поэтому публикующий поток не ждет монитор зависшей записи.
+ * <p>
+ * Id события в потоке - его позиция в ленте, а не event_id: позиции растут в порядке записи, поэтому
+ * по ним досылаются пропущенные события и отсекаются уже досланные.
+ */
+@Slf4j
+@Component
+public class FeedHub {
+    private static final int REPLAY_PAGE_SIZE = 500;
+    private static final Object HEARTBEAT = new Object();
+    private static final int SENDER_THREADS = 16;
+
+    private final FeedStorage feedStorage;
+    private final ConcurrentMap<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    // простаивающие потоки завершаются, подписки без событий потоков не держат
+    private final ThreadPoolExecutor senders = new ThreadPoolExecutor(SENDER_THREADS, SENDER_THREADS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            Thread.ofPlatform().name("feed-stream-", 0).daemon().factory());
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("feed-stream-heartbeat").daemon().factory());
+
+    @Value("${filmorate.feed.stream.timeout-ms:1800000}")
+    private long timeoutMillis = 1_800_000;
+
+    @Value("${filmorate.feed.stream.heartbeat-ms:15000}")
+    private long heartbeatMillis = 15_000;
+
+    @Value("${filmorate.feed.stream.max-pending:1000}")
+    private int maxPending = 1000;
+
+    @Value("${filmorate.feed.stream.sender-threads:16}")
+    private int senderThreads = SENDER_THREADS;
+
+    public FeedHub(@Qualifier("feedDbStorage") FeedStorage feedStorage) {
+        this.feedStorage = feedStorage;
+        senders.allowCoreThreadTimeOut(true);
+    }
+
+    // комментарий раз в интервал не дает прокси закрыть тихое соединение и выявляет отключившихся клиентов
+    @PostConstruct
+    public void start() {
+        // ядро не может превысить максимум: при увеличении сначала растет максимум
+        if (senderThreads > senders.getMaximumPoolSize()) {
+            senders.setMaximumPoolSize(senderThreads);
+            senders.setCorePoolSize(senderThreads);
+        } else {
+            senders.setCorePoolSize(senderThreads);
+            senders.setMaximumPoolSize(senderThreads);
+        }
+        heartbeats.scheduleWithFixedDelay(() -> subscriptions.values()
+                        .forEach(users -> users.forEach(subscription -> subscription.enqueue(HEARTBEAT))),
+                heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        subscriptions.values().forEach(users -> users.forEach(Subscription::close));
+        subscriptions.clear();
+        senders.shutdown();
+    }
+
+    public SseEmitter subscribe(int userId, Integer lastPosition) {
+        return subscribe(userId, lastPosition, new SseEmitter(timeoutMillis));
+    }
+
+    /**
+     * Подписка через готовый emitter. Если lastPosition задана, сначала из БД досылаются события после нее,
+     * а пришедшие за это время живые события ждут в очереди и не повторяются.
+     */
+    public SseEmitter subscribe(int userId, Integer lastPosition, SseEmitter emitter) {
+        Subscription subscription = new Subscription(userId, emitter, lastPosition);
+        emitter.onCompletion(subscription::remove);
+        emitter.onTimeout(subscription::remove);
+        emitter.onError(error -> subscription.remove());
+
+        // сначала подписка, потом чтение из БД: событие, записанное между ними, придет хотя бы одним путем
+        subscriptions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+        if (lastPosition != null) subscription.schedule();
+        return emitter;
+    }
+
+    /**
+     * Рассылает записанное событие подписчикам его пользователя; без подписчиков - один поиск в карте.
+     */
+    public void publish(FeedEvent event) {
+        Set<Subscription> users = subscriptions.get(event.getUserId());
+        if (users == null) return;
+        for (Subscription subscription : users) {
+            subscription.enqueue(event);
+        }
+    }
+
+    public int subscribers() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private final class Subscription {
+        private final int userId;
+        private final SseEmitter emitter;
+        private final Queue<Object> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private Integer replayAfter;
+        private int replayedUpTo;
+        private volatile boolean closed;
+
+        Subscription(int userId, SseEmitter emitter, Integer replayAfter) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.replayAfter = replayAfter;
+        }
+
+        void enqueue(Object item) {
+            if (closed) return;
+            if (pending.incrementAndGet() > maxPending) {
+                log.info("Подписчик ленты пользователя {} не успевает читать, подписка закрыта.", userId);
+                close();
+                return;
+            }
+            outbox.add(item);
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            try {
+                if (!closed && replayAfter != null) {
+                    replay();
+                }
+                // событие с позицией не дальше досланных записано раньше последнего из них и уже ушло при досылке
+                Object item;
+                while (!closed && (item = outbox.poll()) != null) {
+                    pending.decrementAndGet();
+                    if (item == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else if (((FeedEvent) item).getPosition() > replayedUpTo) {
+                        sendEvent((FeedEvent) item);
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // клиент отключился или emitter уже завершен
+                closed = true;
+                remove();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка отправки ленты пользователя {}: {}", userId, e.getMessage());
+                closed = true;
+                remove();
+            } finally {
+                if (closed && completed.compareAndSet(false, true)) emitter.complete();
+                scheduled.set(false);
+            }
+            // событие или закрытие могли прийти после опустошения очереди, но до снятия флага
+            if (closed ? !completed.get() : !outbox.isEmpty()) schedule();
+        }
+
+        private void replay() throws IOException {
+            int after = replayAfter;
+            List<FeedEvent> page;
+            do {
+                page = feedStorage.getFeedPage(userId, after, REPLAY_PAGE_SIZE);
+                for (FeedEvent event : page) {
+                    sendEvent(event);
+                    after = event.getPosition();
+                }
+            } while (page.size() == REPLAY_PAGE_SIZE && !closed);
+            replayedUpTo = after;
+            replayAfter = null;
+        }
+
+        private void sendEvent(FeedEvent event) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.getPosition()))
+                    .name("feed")
+                    .data(event, MediaType.APPLICATION_JSON));
+        }
+
+        // emitter завершает поток отправки: идущая сейчас запись держит его монитор
+        private void close() {
+            if (closed) return;
+            closed = true;
+            remove();
+            schedule();
+        }
+
+        private void remove() {
+            closed = true;
+            subscriptions.computeIfPresent(userId, (id, users) -> {
+                users.remove(this);
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+}
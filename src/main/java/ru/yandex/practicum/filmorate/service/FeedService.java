@@ -1,13 +1,19 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.PageCursor;
+import ru.yandex.practicum.filmorate.util.TimelineCursor;
 
 import java.util.List;
 
@@ -16,21 +22,90 @@ public class FeedService {
 
     private final FeedStorage feedStorage;
     private final UserStorage userStorage;
+    private final FeedAppender feedAppender;
+    private final FeedHub feedHub;
+    private final FeedTimeline feedTimeline;
+    private final FriendGraph friendGraph;
+
+    @Value("${filmorate.feed.default-page-size:1000}")
+    private int defaultPageSize = 1000;
+
+    @Value("${filmorate.feed.max-page-size:1000}")
+    private int maxPageSize = 1000;
+
+    @Value("${filmorate.timeline.default-limit:20}")
+    private int defaultTimelineLimit = 20;
+
+    @Value("${filmorate.timeline.max-limit:100}")
+    private int maxTimelineLimit = 100;
 
     public FeedService(
             @Qualifier(value = "feedDbStorage") FeedStorage feedStorage,
-            @Qualifier(value = "userDbStorage") UserStorage userStorage) {
+            @Qualifier(value = "userDbStorage") UserStorage userStorage,
+            FeedAppender feedAppender,
+            FeedHub feedHub,
+            FeedTimeline feedTimeline,
+            FriendGraph friendGraph) {
         this.feedStorage = feedStorage;
         this.userStorage = userStorage;
+        this.feedAppender = feedAppender;
+        this.feedHub = feedHub;
+        this.feedTimeline = feedTimeline;
+        this.friendGraph = friendGraph;
     }
 
     public void addEvent(FeedEvent event) {
         validate(event);
-        feedStorage.addEvent(event);
+        feedAppender.append(event);
+    }
+
+    public Page<FeedEvent> getFeedPage(int userId, String after, Integer limit) {
+        // пользователь и его друзья не нужны, достаточно убедиться, что он есть
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        int pageSize = PageCursor.limit(limit, defaultPageSize, maxPageSize);
+        // события, принятые до запроса, должны попасть в ответ, даже если еще ждут записи в буфере
+        feedAppender.awaitFlushed();
+
+        // запрашиваем на одно событие больше, чтобы понять, есть ли следующая страница
+        List<FeedEvent> events = feedStorage.getFeedPage(userId, PageCursor.decode(after), pageSize + 1);
+        if (events.size() <= pageSize) {
+            return new Page<>(events, null);
+        }
+        List<FeedEvent> page = events.subList(0, pageSize);
+        return new Page<>(page, PageCursor.encode(page.getLast().getPosition()));
     }
 
-    public List<FeedEvent> getFeedByUserId(int userId) {
-        return feedStorage.getFeedByUserId(userStorage.getUserById(userId).getId());
+    /**
+     * События друзей пользователя от новых к старым. before - курсор предыдущей страницы или время в миллисекундах.
+     */
+    public Page<FeedEvent> getTimeline(int userId, String before, Integer limit) {
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        int pageSize = PageCursor.limit(limit, defaultTimelineLimit, maxTimelineLimit);
+        feedAppender.awaitFlushed();
+
+        List<FeedEvent> events = feedTimeline.merge(friendGraph.getFriends(userId).toIntArray(),
+                TimelineCursor.decode(before), pageSize + 1);
+        if (events.size() <= pageSize) {
+            return new Page<>(events, null);
+        }
+        List<FeedEvent> page = events.subList(0, pageSize);
+        FeedEvent last = page.getLast();
+        return new Page<>(page, new TimelineCursor(last.getTimestamp(), last.getEventId()).encode());
+    }
+
+    public void userRemoved(int userId) {
+        feedTimeline.userRemoved(userId);
+    }
+
+    public SseEmitter subscribe(int userId, Integer lastPosition) {
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        return feedHub.subscribe(userId, lastPosition);
     }
 
     private void validate(FeedEvent event) {
@@ -0,0 +1,271 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.util.SampledLru;
+import ru.yandex.practicum.filmorate.util.TimelineCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общая лента нескольких пользователей: слияние их лент кучей, от новых событий к старым.
+ * <p>
+ * Для каждого пользователя в памяти держится окно из window-size последних событий, записанные события
+ * добавляются в окно сразу. Первая страница общей ленты не длиннее окна собирается только из окон:
+ * от одного пользователя на страницу попадет не больше limit событий, а они все в окне.
+ * Дальше окна курсор пользователя один раз дочитывает из БД недостающее.
+ * <p>
+ * Окна вытесняются по давности обращения, когда их больше max-cached-users.
+ */
+@Component
+public class FeedTimeline {
+    private static final Comparator<UserCursor> NEWEST_FIRST =
+            Comparator.comparing((UserCursor cursor) -> cursor.position).reversed();
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    // столько окон в случайной выборке, по которой выбирается порог вытеснения
+    private static final int EVICTION_SAMPLE = 1024;
+
+    private final FeedStorage feedStorage;
+    private final ConcurrentMap<Integer, Window> windows = new ConcurrentHashMap<>();
+    private final SampledLru lru = new SampledLru(EVICTION_SAMPLE);
+    private final LongAdder windowHits = new LongAdder();
+    private final LongAdder windowLoads = new LongAdder();
+    private final LongAdder storageReads = new LongAdder();
+
+    @Value("${filmorate.timeline.window-size:128}")
+    private int windowSize = 128;
+
+    @Value("${filmorate.timeline.max-cached-users:50000}")
+    private int maxCachedUsers = 50_000;
+
+    public FeedTimeline(@Qualifier("feedDbStorage") FeedStorage feedStorage) {
+        this.feedStorage = feedStorage;
+    }
+
+    public void eventWritten(FeedEvent event) {
+        windows.computeIfPresent(event.getUserId(), (id, window) -> window.with(event, windowSize));
+    }
+
+    public void userRemoved(int userId) {
+        windows.remove(userId);
+    }
+
+    /**
+     * До limit самых новых событий пользователей строго раньше before, от новых к старым.
+     */
+    public List<FeedEvent> merge(int[] userIds, TimelineCursor before, int limit) {
+        PriorityQueue<UserCursor> heads = new PriorityQueue<>(Math.max(1, userIds.length), NEWEST_FIRST);
+        for (int userId : userIds) {
+            UserCursor cursor = new UserCursor(userId, window(userId), before, limit);
+            if (cursor.advance()) heads.add(cursor);
+        }
+
+        List<FeedEvent> events = new ArrayList<>(limit);
+        while (events.size() < limit && !heads.isEmpty()) {
+            UserCursor cursor = heads.poll();
+            events.add(cursor.head);
+            if (cursor.advance()) heads.add(cursor);
+        }
+        return events;
+    }
+
+    public Stats stats() {
+        return new Stats(windows.size(), windowHits.sum(), windowLoads.sum(), storageReads.sum());
+    }
+
+    /**
+     * Окна в памяти; попадания и загрузки окон; чтения БД вместе с загрузками окон.
+     */
+    public record Stats(int cachedUsers, long windowHits, long windowLoads, long storageReads) {
+    }
+
+    private Window window(int userId) {
+        Window window = windows.get(userId);
+        if (window != null && !window.loading) {
+            windowHits.increment();
+            window.lastUsed = lru.tick();
+            return window;
+        }
+
+        // метка ставится до чтения БД: события, записанные во время чтения, копятся в ней и не теряются
+        windows.putIfAbsent(userId, Window.LOADING);
+        windowLoads.increment();
+        storageReads.increment();
+        Window loaded = Window.of(feedStorage.getEventsBefore(userId, Long.MAX_VALUE, Integer.MAX_VALUE,
+                windowSize + 1), windowSize);
+        Window installed = windows.computeIfPresent(userId,
+                (id, current) -> current.loading ? loaded.withAll(current, windowSize) : current);
+        evictIfNeeded();
+
+        Window result = installed != null ? installed : loaded;
+        result.lastUsed = lru.tick();
+        return result;
+    }
+
+    private void evictIfNeeded() {
+        if (windows.size() <= maxCachedUsers) return;
+        // окно, которое сейчас загружается, копит события и не вытесняется
+        lru.evict(windows, window -> window.loading ? Long.MAX_VALUE : window.lastUsed, windows::remove);
+    }
+
+    /**
+     * Последние события пользователя от новых к старым, по столбцам. Окно неизменяемо, изменение
+     * дает новое окно. complete - в окне вся история пользователя.
+     */
+    private static final class Window {
+        static final Window LOADING = new Window(0, false, true);
+
+        final long[] timestamps;
+        final int[] eventIds;
+        final byte[] types;
+        final byte[] operations;
+        final int[] entityIds;
+        final boolean complete;
+        final boolean loading;
+        volatile long lastUsed;
+
+        Window(int size, boolean complete, boolean loading) {
+            timestamps = new long[size];
+            eventIds = new int[size];
+            types = new byte[size];
+            operations = new byte[size];
+            entityIds = new int[size];
+            this.complete = complete;
+            this.loading = loading;
+        }
+
+        // events - от новых к старым, на одно больше окна, если история длиннее
+        static Window of(List<FeedEvent> events, int capacity) {
+            int size = Math.min(events.size(), capacity);
+            Window window = new Window(size, events.size() <= capacity, false);
+            for (int i = 0; i < size; i++) {
+                window.set(i, events.get(i));
+            }
+            return window;
+        }
+
+        int size() {
+            return eventIds.length;
+        }
+
+        TimelineCursor key(int index) {
+            return new TimelineCursor(timestamps[index], eventIds[index]);
+        }
+
+        FeedEvent event(int index, int userId) {
+            return new FeedEvent(eventIds[index], timestamps[index], userId, EVENT_TYPES[types[index]],
+                    OPERATIONS[operations[index]], entityIds[index]);
+        }
+
+        // первое событие строго раньше before
+        int firstBefore(TimelineCursor before) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (key(middle).compareTo(before) >= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        Window with(FeedEvent event, int capacity) {
+            TimelineCursor key = new TimelineCursor(event.getTimestamp(), event.getEventId());
+            int position = firstBefore(key);
+            for (int i = position - 1; i >= 0 && timestamps[i] == event.getTimestamp(); i--) {
+                if (eventIds[i] == event.getEventId()) return this;
+            }
+            if (position >= capacity) return this; // старше всего полного окна
+
+            int size = Math.min(size() + 1, capacity);
+            Window updated = new Window(size, complete && size() < capacity, loading);
+            copy(this, 0, updated, 0, position);
+            updated.set(position, event);
+            copy(this, position, updated, position + 1, size - position - 1);
+            updated.lastUsed = lastUsed;
+            return updated;
+        }
+
+        Window withAll(Window other, int capacity) {
+            Window merged = this;
+            for (int i = 0; i < other.size(); i++) {
+                merged = merged.with(other.event(i, 0), capacity);
+            }
+            return merged;
+        }
+
+        private void set(int index, FeedEvent event) {
+            timestamps[index] = event.getTimestamp();
+            eventIds[index] = event.getEventId();
+            types[index] = (byte) event.getEventType().ordinal();
+            operations[index] = (byte) event.getOperation().ordinal();
+            entityIds[index] = event.getEntityId();
+        }
+
+        private static void copy(Window from, int fromIndex, Window to, int toIndex, int length) {
+            System.arraycopy(from.timestamps, fromIndex, to.timestamps, toIndex, length);
+            System.arraycopy(from.eventIds, fromIndex, to.eventIds, toIndex, length);
+            System.arraycopy(from.types, fromIndex, to.types, toIndex, length);
+            System.arraycopy(from.operations, fromIndex, to.operations, toIndex, length);
+            System.arraycopy(from.entityIds, fromIndex, to.entityIds, toIndex, length);
+        }
+    }
+
+    /**
+     * Чтение ленты одного пользователя: сначала окно, за ним - один запрос в БД, если окно неполное.
+     */
+    private final class UserCursor {
+        final int userId;
+        final Window window;
+        final int limit;
+        int windowIndex;
+        List<FeedEvent> fetched;
+        int fetchedIndex;
+        int taken;
+        FeedEvent head;
+        TimelineCursor position;
+
+        UserCursor(int userId, Window window, TimelineCursor before, int limit) {
+            this.userId = userId;
+            this.window = window;
+            this.limit = limit;
+            this.windowIndex = window.firstBefore(before);
+            this.position = before;
+        }
+
+        boolean advance() {
+            // больше limit событий одного пользователя на страницу не попадет
+            if (taken == limit) return false;
+            if (windowIndex < window.size()) {
+                head = window.event(windowIndex++, userId);
+            } else {
+                if (window.complete) return false;
+                if (fetched == null) {
+                    storageReads.increment();
+                    fetched = feedStorage.getEventsBefore(userId, position.timestamp(), position.eventId(),
+                            limit - taken);
+                }
+                if (fetchedIndex == fetched.size()) return false;
+                head = fetched.get(fetchedIndex++);
+            }
+            taken++;
+            position = new TimelineCursor(head.getTimestamp(), head.getEventId());
+            return true;
+        }
+    }
+}
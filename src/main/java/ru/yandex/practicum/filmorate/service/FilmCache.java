@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.FrequencySketch;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Собранные фильмы в памяти: GET /films/{id} и проверки фильма в лайках, удалении и отзывах без пяти запросов к БД.
+ * <p>
+ * Вытеснение W-TinyLFU: новый фильм попадает в маленькое окно (1% емкости), вытесненный из окна
+ * проходит в основную часть, только если обращений к нему по {@link FrequencySketch} больше, чем к ее
+ * кандидату на вытеснение. Основная часть - сегментный LRU: испытательный сегмент и защищенный (80%),
+ * куда фильм переходит при повторном обращении. Разовые обходы многих фильмов не вымывают популярные.
+ * <p>
+ * Изменение фильма, его лайков или режиссеров сбрасывает запись. Загрузка ставит фильм, только если
+ * за время чтения БД фильмы ее полосы не сбрасывались. Обращения учитываются под блокировкой; если она
+ * занята, порядок обращения не обновляется - фильм все равно отдается из памяти.
+ * Отдается копия: снаружи менять фильм можно.
+ */
+@Component
+public class FilmCache {
+    private static final int STRIPES = 64;
+
+    private final FilmStorage filmStorage;
+    private final ConcurrentMap<Integer, Node> films = new ConcurrentHashMap<>();
+    // сброс во время загрузки: прочитанный фильм устарел и не ставится
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final ReentrantLock lock = new ReentrantLock();
+    // очереди и частоты - только под lock
+    private final Queue window = new Queue(Segment.WINDOW);
+    private final Queue probation = new Queue(Segment.PROBATION);
+    private final Queue protectedQueue = new Queue(Segment.PROTECTED);
+    private FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @Value("${filmorate.films.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${filmorate.films.cache.max-size:10000}")
+    private int maxSize = 10_000;
+
+    public FilmCache(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    /**
+     * Фильм по id; нет фильма - NotFoundException из хранилища.
+     */
+    public Film get(int filmId) {
+        Node node = enabled ? films.get(filmId) : null;
+        if (node != null) {
+            hits.increment();
+            accessed(node);
+            return copy(node.film);
+        }
+        misses.increment();
+        long version = versions.get(stripe(filmId));
+        Film film = filmStorage.getFilmById(filmId);
+        if (enabled) put(filmId, film, version);
+        return copy(film);
+    }
+
+    public void invalidate(int filmId) {
+        versions.incrementAndGet(stripe(filmId));
+        lock.lock();
+        try {
+            Node node = films.remove(filmId);
+            if (node != null) {
+                unlink(node);
+                invalidations.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Режиссер переименован или удален: сбрасываются фильмы в памяти, где он есть.
+     */
+    public void directorChanged(long directorId) {
+        // фильм, читаемый сейчас, мог прочитать прежнего режиссера
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            versions.incrementAndGet(stripe);
+        }
+        for (Node node : films.values()) {
+            if (node.film.getDirectors().stream().map(Director::getId).anyMatch(id -> id == directorId)) {
+                invalidate(node.film.getId());
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(films.size(), hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    /**
+     * Фильмов в памяти; выдачи из памяти, загрузки из БД, вытеснения и сбросы при изменениях.
+     */
+    public record Stats(int size, long hits, long misses, long evictions, long invalidations) {
+    }
+
+    private void put(int filmId, Film film, long version) {
+        lock.lock();
+        try {
+            if (versions.get(stripe(filmId)) != version || films.containsKey(filmId)) return;
+            if (sketch == null) sketch = new FrequencySketch(maxSize);
+            sketch.increment(filmId);
+            Node node = new Node(film);
+            films.put(filmId, node);
+            window.addLast(node);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void accessed(Node node) {
+        if (!lock.tryLock()) return;
+        try {
+            if (node.segment == null) return;  // уже сброшен
+            sketch.increment(node.film.getId());
+            switch (node.segment) {
+                case WINDOW, PROTECTED -> {
+                    Queue queue = node.segment == Segment.WINDOW ? window : protectedQueue;
+                    queue.remove(node);
+                    queue.addLast(node);
+                }
+                case PROBATION -> {
+                    probation.remove(node);
+                    protectedQueue.addLast(node);
+                    if (protectedQueue.size > protectedMax()) {
+                        probation.addLast(protectedQueue.removeFirst());
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // лишние из окна соревнуются по частоте с первым на вытеснение из основной части
+    private void evict() {
+        int windowMax = windowMax();
+        int mainMax = maxSize - windowMax;
+        while (window.size > windowMax) {
+            Node candidate = window.removeFirst();
+            if (probation.size + protectedQueue.size < mainMax) {
+                probation.addLast(candidate);
+                continue;
+            }
+            Queue victims = probation.size > 0 ? probation : protectedQueue;
+            Node victim = victims.first;
+            if (victim != null && sketch.frequency(candidate.film.getId()) > sketch.frequency(victim.film.getId())) {
+                victims.remove(victim);
+                films.remove(victim.film.getId());
+                probation.addLast(candidate);
+            } else {
+                films.remove(candidate.film.getId());
+            }
+            evictions.increment();
+        }
+    }
+
+    private void unlink(Node node) {
+        if (node.segment == Segment.WINDOW) window.remove(node);
+        else if (node.segment == Segment.PROBATION) probation.remove(node);
+        else if (node.segment == Segment.PROTECTED) protectedQueue.remove(node);
+    }
+
+    private int windowMax() {
+        return Math.max(1, maxSize / 100);
+    }
+
+    private int protectedMax() {
+        return (maxSize - windowMax()) * 4 / 5;
+    }
+
+    private static int stripe(int filmId) {
+        return filmId & (STRIPES - 1);
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film();
+        copy.setId(film.getId());
+        copy.setName(film.getName());
+        copy.setDescription(film.getDescription());
+        copy.setReleaseDate(film.getReleaseDate());
+        copy.setDuration(film.getDuration());
+        copy.setMpa(film.getMpa());
+        copy.getLikes().addAll(film.getLikes());
+        copy.setGenres(new LinkedHashSet<>(film.getGenres()));
+        copy.setDirectors(new HashSet<>(film.getDirectors()));
+        return copy;
+    }
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED }
+
+    private static final class Node {
+        final Film film;
+        Segment segment;
+        Node previous;
+        Node next;
+
+        Node(Film film) {
+            this.film = film;
+        }
+    }
+
+    // двусвязная очередь от давних обращений к свежим
+    private static final class Queue {
+        final Segment segment;
+        Node first;
+        Node last;
+        int size;
+
+        Queue(Segment segment) {
+            this.segment = segment;
+        }
+
+        void addLast(Node node) {
+            node.segment = segment;
+            node.previous = last;
+            node.next = null;
+            if (last == null) first = node;
+            else last.next = node;
+            last = node;
+            size++;
+        }
+
+        Node removeFirst() {
+            Node node = first;
+            remove(node);
+            return node;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) first = node.next;
+            else node.previous.next = node.next;
+            if (node.next == null) last = node.previous;
+            else node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.segment = null;
+            size--;
+        }
+    }
+}
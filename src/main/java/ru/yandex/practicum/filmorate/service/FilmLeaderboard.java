@@ -0,0 +1,230 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Рейтинг популярности фильмов в памяти приложения.
+ * <p>
+ * Фильмы упорядочены по числу лайков в отдельных сортированных множествах для каждого сочетания
+ * "жанр (или любой) x год (или любой)", поэтому топ-K для /films/popular читается за O(K).
+ * Изменения одного фильма выполняются под его блокировкой, а перестановка внутри разреза - под
+ * блокировкой записи этого разреза, поэтому читатель видит каждый фильм ровно один раз.
+ * Чтение идет оптимистично без блокировки и повторяется под блокировкой, только если совпало с записью.
+ */
+@Slf4j
+@Component
+public class FilmLeaderboard {
+    private static final int ANY = -1;  // жанр или год не заданы
+
+    private static final Comparator<Rank> BY_LIKES_DESC = Comparator.comparingInt(Rank::likes).reversed()
+            .thenComparingInt(Rank::filmId);
+
+    private final FilmStorage filmStorage;
+    // перестройка подменяет обе таблицы целиком
+    private volatile Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Map<Long, Partition> partitions = new ConcurrentHashMap<>();
+    private final List<LikesListener> listeners = new CopyOnWriteArrayList<>();
+
+    public FilmLeaderboard(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    /**
+     * Строит рейтинг заново и подменяет им текущий; вызывается из {@link IndexRebuilder}.
+     */
+    public void rebuild() {
+        List<FilmPopularity> films = filmStorage.getFilmsPopularity();
+
+        Map<Integer, Entry> newEntries = new ConcurrentHashMap<>();
+        Map<Long, Partition> newPartitions = new ConcurrentHashMap<>();
+        for (FilmPopularity film : films) {
+            Entry entry = new Entry(film.filmId(), film.likes(), film.year(), film.genreIds());
+            newEntries.put(film.filmId(), entry);
+            for (long key : entry.keys()) {
+                newPartitions.computeIfAbsent(key, k -> new Partition()).move(null, entry.rank);
+            }
+        }
+        // до подмены /films/popular отдает прежний рейтинг целиком
+        partitions = newPartitions;
+        entries = newEntries;
+        log.info("Рейтинг популярности построен для {} фильмов.", films.size());
+    }
+
+    public List<Integer> top(Integer count, Integer genreId, Integer year) {
+        Partition partition = partitions.get(key(genreId == null ? ANY : genreId, year == null ? ANY : year));
+        if (partition == null) {
+            return List.of();
+        }
+        return partition.top(count == null ? Integer.MAX_VALUE : count);
+    }
+
+    public void addListener(LikesListener listener) {
+        listeners.add(listener);
+    }
+
+    public int getLikes(int filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.rank.likes();
+    }
+
+    public List<Integer> getFilmsLikedBy(int userId) {
+        return filmStorage.getLikedFilmIds(userId);
+    }
+
+    public void filmSaved(Film film) {
+        Set<Integer> genreIds = new HashSet<>();
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+        }
+        int year = film.getReleaseDate().getYear();
+
+        Entry entry = entries.computeIfAbsent(film.getId(), id -> new Entry(id, 0, year, genreIds));
+        synchronized (entry) {
+            if (entry.removed) return;
+            Set<Long> oldKeys = entry.keys();
+            entry.year = year;
+            entry.genreIds = genreIds;
+            Set<Long> newKeys = entry.keys();
+            for (long key : newKeys) {
+                partition(key).move(null, entry.rank);
+            }
+            for (long key : oldKeys) {
+                if (!newKeys.contains(key)) partition(key).move(entry.rank, null);
+            }
+        }
+    }
+
+    public void filmRemoved(int filmId) {
+        Entry entry = entries.remove(filmId);
+        if (entry == null) return;
+        synchronized (entry) {
+            entry.removed = true;
+            for (long key : entry.keys()) {
+                partition(key).move(entry.rank, null);
+            }
+        }
+    }
+
+    public void likeAdded(int filmId) {
+        changeLikes(filmId, 1);
+    }
+
+    public void likeRemoved(int filmId) {
+        changeLikes(filmId, -1);
+    }
+
+    private void changeLikes(int filmId, int delta) {
+        Entry entry = entries.get(filmId);
+        if (entry == null) return;
+        synchronized (entry) {
+            if (entry.removed) return;
+            Rank oldRank = entry.rank;
+            Rank newRank = new Rank(oldRank.likes() + delta, filmId);
+            for (long key : entry.keys()) {
+                partition(key).move(oldRank, newRank);
+            }
+            entry.rank = newRank;
+            for (LikesListener listener : listeners) {
+                listener.likesChanged(filmId, newRank.likes());
+            }
+        }
+    }
+
+    private Partition partition(long key) {
+        return partitions.computeIfAbsent(key, k -> new Partition());
+    }
+
+    private static long key(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Получает новое число лайков фильма. Вызывается под блокировкой фильма,
+     * поэтому изменения одного фильма приходят по порядку.
+     */
+    public interface LikesListener {
+        void likesChanged(int filmId, int likes);
+    }
+
+    private record Rank(int likes, int filmId) {
+    }
+
+    private static final class Partition {
+        private final NavigableSet<Rank> ranks = new ConcurrentSkipListSet<>(BY_LIKES_DESC);
+        private final StampedLock lock = new StampedLock();
+
+        // переставляет фильм с позиции from на позицию to (любая из них может отсутствовать)
+        private void move(Rank from, Rank to) {
+            long stamp = lock.writeLock();
+            try {
+                if (to != null) ranks.add(to);
+                if (from != null) ranks.remove(from);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private List<Integer> top(int limit) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                List<Integer> result = read(limit);
+                if (lock.validate(stamp)) return result;
+            }
+
+            stamp = lock.readLock();
+            try {
+                return read(limit);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private List<Integer> read(int limit) {
+            List<Integer> result = new ArrayList<>(Math.min(limit, 64));
+            for (Rank rank : ranks) {
+                if (result.size() >= limit) break;
+                result.add(rank.filmId());
+            }
+            return result;
+        }
+    }
+
+    private static final class Entry {
+        private volatile Rank rank;
+        private int year;
+        private Set<Integer> genreIds;
+        private boolean removed;
+
+        private Entry(int filmId, int likes, int year, Set<Integer> genreIds) {
+            this.rank = new Rank(likes, filmId);
+            this.year = year;
+            this.genreIds = genreIds;
+        }
+
+        // все разрезы рейтинга, в которых участвует фильм
+        private Set<Long> keys() {
+            Set<Long> keys = new HashSet<>();
+            keys.add(key(ANY, ANY));
+            keys.add(key(ANY, year));
+            for (int genreId : genreIds) {
+                keys.add(key(genreId, ANY));
+                keys.add(key(genreId, year));
+            }
+            return keys;
+        }
+    }
+}
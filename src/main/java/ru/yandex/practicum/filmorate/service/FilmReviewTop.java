@@ -0,0 +1,292 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
+import ru.yandex.practicum.filmorate.util.SampledLru;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Самые полезные отзывы фильмов в памяти: первая страница /reviews?filmId= отдается без БД.
+ * <p>
+ * Для фильма хранится до size отзывов по убыванию (полезность, id) и граница floor: у остальных отзывов
+ * фильма ключ меньше нее. Создание, изменение и удаление отзыва и голоса меняют список сразу. Голос за отзыв
+ * вне списка поднимает границу на свою прибавку: где теперь этот отзыв, неизвестно, поэтому отзывы списка
+ * ниже новой границы из него уходят. Когда в списке остается меньше запрошенного, он загружается заново.
+ * Полезность - с незаписанными голосами, как у GET /reviews/{id}.
+ * <p>
+ * Списки вытесняются по давности обращения, когда отзывов в них больше max-cached-reviews.
+ */
+@Component
+public class FilmReviewTop {
+    // полосы фильмов для меток изменений
+    private static final int STRIPES = 64;
+    // столько списков в случайной выборке, по которой выбирается порог вытеснения
+    private static final int EVICTION_SAMPLE = 1024;
+
+    private final ReviewStorage reviewStorage;
+    private final ConcurrentMap<Integer, Top> tops = new ConcurrentHashMap<>();
+    // загрузка ставит список, только если за время чтения БД отзывы фильмов ее полосы не менялись
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final AtomicIntegerArray changing = new AtomicIntegerArray(STRIPES);
+    private final AtomicLong cachedReviews = new AtomicLong();
+    private final SampledLru lru = new SampledLru(EVICTION_SAMPLE);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    @Value("${filmorate.reviews.top.size:20}")
+    private int size = 20;
+
+    @Value("${filmorate.reviews.top.max-cached-reviews:200000}")
+    private int maxCachedReviews = 200_000;
+
+    public FilmReviewTop(@Qualifier("reviewDbStorage") ReviewStorage reviewStorage) {
+        this.reviewStorage = reviewStorage;
+    }
+
+    /**
+     * Первые limit отзывов фильма или null, если столько в списке не держится.
+     */
+    public List<Review> top(int filmId, int limit) {
+        if (limit > size) return null;
+        Top top = tops.get(filmId);
+        if (top != null && top.covers(limit)) {
+            hits.increment();
+            top.lastUsed = lru.tick();
+            return top.first(limit);
+        }
+        Top loaded = load(filmId);
+        return loaded.covers(limit) ? loaded.first(limit) : null;
+    }
+
+    public Review create(int filmId, Supplier<Review> create) {
+        return change(filmId, create, Top::with);
+    }
+
+    public Review update(int filmId, Supplier<Review> update) {
+        return change(filmId, update, Top::withContent);
+    }
+
+    public void delete(int filmId, int reviewId, Runnable delete) {
+        change(filmId, () -> {
+            delete.run();
+            return reviewId;
+        }, Top::without);
+    }
+
+    /**
+     * vote - голос в БД, возвращает изменение полезности отзыва.
+     */
+    public void vote(int filmId, int reviewId, IntSupplier vote) {
+        change(filmId, vote::getAsInt, (top, delta) -> top.withDelta(reviewId, delta));
+    }
+
+    public void userRemoved(int userId) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            versions.incrementAndGet(stripe);
+        }
+        for (Integer filmId : tops.keySet()) {
+            tops.computeIfPresent(filmId, (id, top) -> resized(top, top.withoutUser(userId)));
+        }
+    }
+
+    public void filmRemoved(int filmId) {
+        versions.incrementAndGet(stripe(filmId));
+        tops.computeIfPresent(filmId, (id, top) -> resized(top, null));
+    }
+
+    public Stats stats() {
+        return new Stats(tops.size(), cachedReviews.get(), hits.sum(), loads.sum());
+    }
+
+    /**
+     * Фильмы и отзывы в памяти; выдачи из памяти и загрузки списков.
+     */
+    public record Stats(int cachedFilms, long cachedReviews, long hits, long loads) {
+    }
+
+    // метка ставится до записи в БД и снимается после правки списка: загрузка, прочитавшая БД в это время,
+    // не поставит список без этой записи
+    private <T> T change(int filmId, Supplier<T> write, BiFunction<Top, T, Top> update) {
+        int stripe = stripe(filmId);
+        changing.incrementAndGet(stripe);
+        versions.incrementAndGet(stripe);
+        try {
+            T result = write.get();
+            tops.computeIfPresent(filmId, (id, top) -> {
+                Top updated = resized(top, update.apply(top, result));
+                if (updated != null) updated.lastUsed = top.lastUsed;
+                return updated;
+            });
+            return result;
+        } catch (RuntimeException e) {
+            tops.computeIfPresent(filmId, (id, top) -> resized(top, null));
+            throw e;
+        } finally {
+            changing.decrementAndGet(stripe);
+        }
+    }
+
+    private Top load(int filmId) {
+        int stripe = stripe(filmId);
+        long version = versions.get(stripe);
+        boolean quiet = changing.get(stripe) == 0;
+        loads.increment();
+        ReviewStorage.TopReviews loaded = reviewStorage.getTopReviews(filmId, size);
+        Top top = new Top(loaded.reviews().stream().map(FilmReviewTop::copy).toArray(Review[]::new),
+                loaded.floor()).truncated(size);
+        top.lastUsed = lru.tick();
+        if (quiet) {
+            tops.compute(filmId, (id, current) -> versions.get(stripe) == version ? resized(current, top) : current);
+            evictIfNeeded();
+        }
+        return top;
+    }
+
+    private Top resized(Top previous, Top updated) {
+        if (updated != null) updated = updated.truncated(size);
+        cachedReviews.addAndGet((updated == null ? 0 : updated.reviews.length)
+                - (previous == null ? 0 : previous.reviews.length));
+        return updated;
+    }
+
+    private void evictIfNeeded() {
+        if (cachedReviews.get() <= maxCachedReviews) return;
+        lru.evict(tops, top -> top.lastUsed, (filmId, top) -> {
+            if (!tops.remove(filmId, top)) return false;
+            resized(top, null);
+            return true;
+        });
+    }
+
+    private static int stripe(int filmId) {
+        return filmId & (STRIPES - 1);
+    }
+
+    private static Review copy(Review review) {
+        return Review.builder()
+                .reviewId(review.getReviewId())
+                .content(review.getContent())
+                .isPositive(review.getIsPositive())
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .useful(review.getUseful())
+                .build();
+    }
+
+    /**
+     * Список отзывов фильма по убыванию ключа, все не ниже floor; floor == null - в списке все отзывы фильма.
+     * Список неизменяем, изменение дает новый.
+     */
+    private static final class Top {
+        final Review[] reviews;
+        final ReviewCursor floor;
+        volatile long lastUsed;
+
+        Top(Review[] reviews, ReviewCursor floor) {
+            this.reviews = reviews;
+            this.floor = floor;
+        }
+
+        boolean covers(int limit) {
+            return floor == null || reviews.length >= limit;
+        }
+
+        List<Review> first(int limit) {
+            List<Review> result = new ArrayList<>(Math.min(limit, reviews.length));
+            for (int i = 0; i < reviews.length && i < limit; i++) {
+                result.add(copy(reviews[i]));
+            }
+            return result;
+        }
+
+        // отзыв на своем месте; ниже границы он остается вне списка
+        Top with(Review review) {
+            Top others = without(review.getReviewId());
+            ReviewCursor key = ReviewCursor.of(review);
+            if (floor != null && key.compareTo(floor) < 0) return others;
+
+            int position = 0;
+            while (position < others.reviews.length && ReviewCursor.of(others.reviews[position]).compareTo(key) > 0) {
+                position++;
+            }
+            Review[] updated = new Review[others.reviews.length + 1];
+            System.arraycopy(others.reviews, 0, updated, 0, position);
+            updated[position] = copy(review);
+            System.arraycopy(others.reviews, position, updated, position + 1, others.reviews.length - position);
+            return new Top(updated, floor);
+        }
+
+        Top withContent(Review review) {
+            int index = indexOf(review.getReviewId());
+            if (index < 0) return this;
+            Review[] updated = reviews.clone();
+            updated[index] = copy(reviews[index]);
+            updated[index].setContent(review.getContent());
+            updated[index].setIsPositive(review.getIsPositive());
+            return new Top(updated, floor);
+        }
+
+        Top withDelta(int reviewId, int delta) {
+            if (delta == 0) return this;
+            int index = indexOf(reviewId);
+            if (index >= 0) {
+                Review review = copy(reviews[index]);
+                review.setUseful(review.getUseful() + delta);
+                return with(review);
+            }
+            // в полном списке есть все отзывы фильма; нет отзыва - список ему не верен
+            if (floor == null) return null;
+            if (delta < 0) return this;
+            ReviewCursor raised = new ReviewCursor(floor.useful() + delta, floor.reviewId());
+            return new Top(Arrays.stream(reviews)
+                    .filter(review -> ReviewCursor.of(review).compareTo(raised) >= 0)
+                    .toArray(Review[]::new), raised);
+        }
+
+        Top without(int reviewId) {
+            int index = indexOf(reviewId);
+            if (index < 0) return this;
+            Review[] updated = new Review[reviews.length - 1];
+            System.arraycopy(reviews, 0, updated, 0, index);
+            System.arraycopy(reviews, index + 1, updated, index, reviews.length - index - 1);
+            return new Top(updated, floor);
+        }
+
+        Top withoutUser(int userId) {
+            Review[] updated = Arrays.stream(reviews)
+                    .filter(review -> review.getUserId() != userId)
+                    .toArray(Review[]::new);
+            return updated.length == reviews.length ? this : new Top(updated, floor);
+        }
+
+        // лишние отзывы уходят за границу, она встает на последний оставшийся
+        Top truncated(int capacity) {
+            if (reviews.length <= capacity) return this;
+            Review[] kept = Arrays.copyOf(reviews, capacity);
+            return new Top(kept, ReviewCursor.of(kept[capacity - 1]));
+        }
+
+        private int indexOf(int reviewId) {
+            for (int i = 0; i < reviews.length; i++) {
+                if (reviews[i].getReviewId() == reviewId) return i;
+            }
+            return -1;
+        }
+    }
+}
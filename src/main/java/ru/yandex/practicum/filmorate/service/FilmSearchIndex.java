@@ -0,0 +1,245 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchEntry;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IntSet;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Триграммный индекс по наименованиям фильмов и именам режиссеров для /films/search.
+ * <p>
+ * Для каждой триграммы хранится отсортированный список id. Запрос разбивается на триграммы, их списки
+ * пересекаются начиная с самого короткого, а кандидаты проверяются на вхождение подстроки. Поэтому время
+ * поиска зависит от числа совпадений, а не от размера каталога. Сравнение без учета регистра, как ILIKE.
+ * Запросы короче трех символов триграмм не дают и проверяются перебором строк индекса.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private final FilmStorage filmStorage;
+    private final DirectorDbStorage directorDbStorage;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrigramIndex titles = new TrigramIndex();
+    private final TrigramIndex directorNames = new TrigramIndex();
+    private final Map<Integer, IntSet> filmsByDirector = new HashMap<>();
+    private final Map<Integer, IntSet> directorsByFilm = new HashMap<>();
+
+    public FilmSearchIndex(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                           DirectorDbStorage directorDbStorage) {
+        this.filmStorage = filmStorage;
+        this.directorDbStorage = directorDbStorage;
+    }
+
+    /**
+     * Строит индекс заново под блокировкой записи; вызывается из {@link IndexRebuilder}.
+     */
+    public void rebuild() {
+        Collection<Director> directors = directorDbStorage.findAll();
+        List<FilmSearchEntry> films = filmStorage.getFilmsSearchEntries();
+
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            filmsByDirector.clear();
+            directorsByFilm.clear();
+            for (Director director : directors) {
+                directorNames.put(Math.toIntExact(director.getId()), director.getName());
+            }
+            for (FilmSearchEntry film : films) {
+                putFilm(film.filmId(), film.name(), film.directorIds());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Поисковый индекс построен: {} фильмов, {} режиссеров.", films.size(), directors.size());
+    }
+
+    public IntSet searchInTitle(String query) {
+        lock.readLock().lock();
+        try {
+            return titles.search(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IntSet searchInDirectorName(String query) {
+        lock.readLock().lock();
+        try {
+            IntSet films = new IntSet();
+            for (int directorId : directorNames.search(query).toIntArray()) {
+                IntSet directorFilms = filmsByDirector.get(directorId);
+                if (directorFilms != null) films = films.union(directorFilms);
+            }
+            return films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void filmSaved(Film film) {
+        Set<Long> directorIds = new HashSet<>();
+        if (film.getDirectors() != null) {
+            for (Director director : film.getDirectors()) {
+                directorIds.add(director.getId());
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeFilm(film.getId());
+            putFilm(film.getId(), film.getName(), directorIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void filmRemoved(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void directorSaved(Director director) {
+        lock.writeLock().lock();
+        try {
+            int directorId = Math.toIntExact(director.getId());
+            directorNames.remove(directorId);
+            directorNames.put(directorId, director.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void directorRemoved(long id) {
+        lock.writeLock().lock();
+        try {
+            int directorId = Math.toIntExact(id);
+            directorNames.remove(directorId);
+            IntSet films = filmsByDirector.remove(directorId);
+            if (films != null) {
+                for (int filmId : films.toIntArray()) {
+                    IntSet directors = directorsByFilm.get(filmId);
+                    if (directors != null) directors.remove(directorId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putFilm(int filmId, String name, Set<Long> directorIds) {
+        titles.put(filmId, name);
+        IntSet directors = new IntSet();
+        for (long id : directorIds) {
+            int directorId = Math.toIntExact(id);
+            directors.add(directorId);
+            filmsByDirector.computeIfAbsent(directorId, k -> new IntSet()).add(filmId);
+        }
+        directorsByFilm.put(filmId, directors);
+    }
+
+    private void removeFilm(int filmId) {
+        titles.remove(filmId);
+        IntSet directors = directorsByFilm.remove(filmId);
+        if (directors == null) return;
+        for (int directorId : directors.toIntArray()) {
+            IntSet films = filmsByDirector.get(directorId);
+            if (films != null) films.remove(filmId);
+        }
+    }
+
+    /**
+     * Строки с id и списки id по триграммам этих строк. Синхронизация - на стороне FilmSearchIndex.
+     */
+    private static final class TrigramIndex {
+        private final Map<Integer, String> texts = new HashMap<>();
+        private final Map<Long, IntSet> postings = new HashMap<>();
+
+        private void put(int id, String text) {
+            String normalized = normalize(text);
+            texts.put(id, normalized);
+            for (long trigram : trigrams(normalized)) {
+                postings.computeIfAbsent(trigram, k -> new IntSet()).add(id);
+            }
+        }
+
+        private void remove(int id) {
+            String text = texts.remove(id);
+            if (text == null) return;
+            for (long trigram : trigrams(text)) {
+                IntSet ids = postings.get(trigram);
+                if (ids == null) continue;
+                ids.remove(id);
+                if (ids.isEmpty()) postings.remove(trigram);
+            }
+        }
+
+        private IntSet search(String query) {
+            String normalized = normalize(query);
+            long[] trigrams = trigrams(normalized);
+            if (trigrams.length == 0) {
+                // короткий запрос: триграмм нет, проверяем все строки
+                IntSet result = new IntSet();
+                texts.forEach((id, text) -> {
+                    if (text.contains(normalized)) result.add(id);
+                });
+                return result;
+            }
+
+            List<IntSet> lists = new ArrayList<>(trigrams.length);
+            for (long trigram : trigrams) {
+                IntSet ids = postings.get(trigram);
+                if (ids == null) return new IntSet();
+                lists.add(ids);
+            }
+            lists.sort(Comparator.comparingInt(IntSet::size));
+
+            IntSet candidates = lists.getFirst();
+            for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+                candidates = candidates.intersection(lists.get(i));
+            }
+
+            // совпадение всех триграмм еще не гарантирует вхождения подстроки целиком
+            IntSet result = new IntSet();
+            for (int id : candidates.toIntArray()) {
+                if (texts.get(id).contains(normalized)) result.add(id);
+            }
+            return result;
+        }
+
+        private void clear() {
+            texts.clear();
+            postings.clear();
+        }
+
+        private static String normalize(String text) {
+            return text == null ? "" : text.toLowerCase(Locale.ROOT);
+        }
+
+        // различные триграммы строки, каждая упакована в long по 16 бит на символ
+        private static long[] trigrams(String text) {
+            if (text.length() < 3) return new long[0];
+
+            long[] result = new long[text.length() - 2];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            }
+            return Arrays.stream(result).distinct().toArray();
+        }
+    }
+}
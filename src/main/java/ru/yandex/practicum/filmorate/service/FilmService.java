@@ -2,46 +2,114 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ServerException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IntSet;
+import ru.yandex.practicum.filmorate.util.PageCursor;
 
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserService userService;
     private final FeedService feedService;
+    private final FilmLeaderboard filmLeaderboard;
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmSuggestIndex filmSuggestIndex;
+    private final RecommendationService recommendationService;
+    private final UserLikesIndex userLikesIndex;
+    private final FilmReviewTop filmReviewTop;
+    private final FilmCache filmCache;
+    private final IndexRebuilder indexRebuilder;
 
     @Autowired
     private DirectorService directorService;
 
+    @Value("${filmorate.paging.default-page-size:100}")
+    private int defaultPageSize = 100;
+
+    @Value("${filmorate.paging.max-page-size:500}")
+    private int maxPageSize = 500;
+
+    @Value("${filmorate.suggest.default-limit:10}")
+    private int defaultSuggestLimit = 10;
+
+    @Value("${filmorate.suggest.max-limit:50}")
+    private int maxSuggestLimit = 50;
+
     public FilmService(@Qualifier(value = "filmDbStorage") FilmStorage filmStorage,
                        @Qualifier(value = "userService") UserService userService,
-                       @Qualifier(value = "feedService") FeedService feedService) {
+                       @Qualifier(value = "feedService") FeedService feedService,
+                       FilmLeaderboard filmLeaderboard,
+                       FilmSearchIndex filmSearchIndex,
+                       FilmSuggestIndex filmSuggestIndex,
+                       RecommendationService recommendationService,
+                       UserLikesIndex userLikesIndex,
+                       FilmReviewTop filmReviewTop,
+                       FilmCache filmCache,
+                       IndexRebuilder indexRebuilder) {
         this.filmStorage = filmStorage;
         this.userService = userService;
         this.feedService = feedService;
+        this.filmLeaderboard = filmLeaderboard;
+        this.filmSearchIndex = filmSearchIndex;
+        this.filmSuggestIndex = filmSuggestIndex;
+        this.recommendationService = recommendationService;
+        this.userLikesIndex = userLikesIndex;
+        this.filmReviewTop = filmReviewTop;
+        this.filmCache = filmCache;
+        this.indexRebuilder = indexRebuilder;
     }
 
     public Film createFilm(Film film) {
         validate(film);
-        return filmStorage.createFilm(film);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            Film created = filmStorage.createFilm(film);
+            filmLeaderboard.filmSaved(created);
+            filmSearchIndex.filmSaved(created);
+            filmSuggestIndex.filmSaved(created);
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public Film updateFilm(Film film) {
         validate(film);
-        return filmStorage.updateFilm(film);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            Film updated = filmStorage.updateFilm(film);
+            filmCache.invalidate(updated.getId());
+            filmLeaderboard.filmSaved(updated);
+            filmSearchIndex.filmSaved(updated);
+            filmSuggestIndex.filmSaved(updated);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public List<Film> getAllFilms() {
-        return filmStorage.getAllFilms();
+    public Page<Film> getFilmsPage(String after, Integer limit) {
+        int pageSize = PageCursor.limit(limit, defaultPageSize, maxPageSize);
+
+        // запрашиваем на один фильм больше, чтобы понять, есть ли следующая страница
+        List<Film> films = filmStorage.getFilmsPage(PageCursor.decode(after), pageSize + 1);
+        if (films.size() <= pageSize) {
+            return new Page<>(films, null);
+        }
+        List<Film> page = films.subList(0, pageSize);
+        return new Page<>(page, PageCursor.encode(page.getLast().getId()));
     }
 
     public List<Film> getFilmsByDirector(Long directorId, String sort) {
@@ -53,12 +121,23 @@ public class FilmService {
     }
 
     public List<Film> getFilmsBySearch(String query, String by) {
-        if (by.equals("director")) return filmStorage.getFilmsBySearchInNameDirector(query);
-        else if (by.equals("title")) return filmStorage.getFilmsBySearchInTitle(query);
+        // id совпадений берем из индекса в памяти, из БД догружаем только найденные фильмы
+        IntSet ids;
+        if (by.equals("director")) ids = filmSearchIndex.searchInDirectorName(query);
+        else if (by.equals("title")) ids = filmSearchIndex.searchInTitle(query);
         else if (by.equals("director,title") || by.equals("title,director"))
-            return filmStorage.getFilmsBySearchInTitleAndNameDirector(query);
+            ids = filmSearchIndex.searchInTitle(query).union(filmSearchIndex.searchInDirectorName(query));
         else
             throw new ValidationException("Не верное значение параметра поиска фильма по наименованию и/или режиссеру.");
+
+        return filmStorage.getFilmsByIdsOrderByLikes(ids);
+    }
+
+    public List<Suggestion> getSuggestions(String prefix, Integer limit) {
+        int size = PageCursor.limit(limit, defaultSuggestLimit, maxSuggestLimit);
+        if (prefix == null || prefix.isBlank()) return List.of();
+
+        return filmSuggestIndex.suggest(prefix.stripLeading(), size);
     }
 
     private void validate(Film film) {
@@ -87,7 +166,23 @@ public class FilmService {
                     EventType.LIKE, Operation.ADD, filmId));
             return;
         }
-        filmStorage.addLike(filmId, user.getId());
+        // лайки пользователя попадают в индексы в том же порядке, что и в БД
+        Lock writeLock = indexRebuilder.writeLock();
+        Lock userLock = userLikesIndex.lockFor(user.getId());
+        writeLock.lock();
+        userLock.lock();
+        try {
+            if (filmStorage.addLike(filmId, user.getId())) {
+                filmCache.invalidate(filmId);
+                filmLeaderboard.likeAdded(filmId);
+                // стратегия рекомендаций читает лайки пользователя из UserLikesIndex, он обновляется первым
+                userLikesIndex.likeAdded(user.getId(), filmId);
+                recommendationService.likeAdded(user.getId(), filmId);
+            }
+        } finally {
+            userLock.unlock();
+            writeLock.unlock();
+        }
         feedService.addEvent(new FeedEvent(null, null, user.getId(),
                 EventType.LIKE, Operation.ADD, filmId));
     }
@@ -99,7 +194,21 @@ public class FilmService {
             throw new NotFoundException("Like by user with id" + userId +
                     " for film with filmId" + filmId + " was not found");
         }
-        filmStorage.removeLike(filmId, user.getId());
+        Lock writeLock = indexRebuilder.writeLock();
+        Lock userLock = userLikesIndex.lockFor(user.getId());
+        writeLock.lock();
+        userLock.lock();
+        try {
+            if (filmStorage.removeLike(filmId, user.getId())) {
+                filmCache.invalidate(filmId);
+                filmLeaderboard.likeRemoved(filmId);
+                userLikesIndex.likeRemoved(user.getId(), filmId);
+                recommendationService.likeRemoved(user.getId(), filmId);
+            }
+        } finally {
+            userLock.unlock();
+            writeLock.unlock();
+        }
         feedService.addEvent(new FeedEvent(null, null, user.getId(),
                 EventType.LIKE, Operation.REMOVE, filmId));
     }
@@ -115,28 +224,58 @@ public class FilmService {
                 throw new ValidationException("Год выпуска фильма не может быть больше текущего года.");
         }
 
-        return filmStorage.getPopularFilms(count, genreId, year);
+        // порядок берем из рейтинга в памяти, из БД догружаем только сами фильмы
+        return filmStorage.getFilmsInOrder(filmLeaderboard.top(count, genreId, year));
     }
 
     public Film getFilmById(int id) {
-        return filmStorage.getFilmById(id);
+        return filmCache.get(id);
     }
 
     public Film delete(Integer filmIdRequest) {
-        Film removeFilm = filmStorage.getFilmById(filmIdRequest);
+        Film removeFilm = getFilmById(filmIdRequest);
 
-        removeFilm = filmStorage.delete(removeFilm);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            removeFilm = filmStorage.delete(removeFilm);
+            filmCache.invalidate(filmIdRequest);
+            filmLeaderboard.filmRemoved(filmIdRequest);
+            filmSearchIndex.filmRemoved(filmIdRequest);
+            filmSuggestIndex.filmRemoved(filmIdRequest);
+            // стратегии рекомендаций нужны лайки удаленного фильма, они снимаются из UserLikesIndex после
+            recommendationService.filmRemoved(filmIdRequest);
+            userLikesIndex.filmRemoved(filmIdRequest);
+        } finally {
+            writeLock.unlock();
+        }
+        filmReviewTop.filmRemoved(filmIdRequest);
 
         return removeFilm;
     }
 
-    public List<Film> getCommonFilms(int userId, int friendId) {
-        if (userId == friendId) {
+    public List<Film> getCommonFilms(Integer userId, Integer friendId) {
+        if (userId == null || friendId == null) {
+            throw new ValidationException("Нужно указать userIds или пару userId и friendId");
+        }
+        if (userId.equals(friendId)) {
             throw new IllegalArgumentException("Пользователь и друг не могут быть одним и тем же человеком");
         }
-        userService.getUserById(userId);
-        userService.getUserById(friendId);
-        List<Film> commonFilms = filmStorage.getCommonFilms(userId, friendId);
-        return commonFilms != null ? commonFilms : Collections.emptyList();
+        return getCommonFilms(List.of(userId, friendId));
+    }
+
+    public List<Film> getCommonFilms(Collection<Integer> userIds) {
+        Set<Integer> distinctIds = new LinkedHashSet<>(userIds);
+        if (distinctIds.size() < 2) {
+            throw new ValidationException("Для поиска общих фильмов нужны хотя бы два разных пользователя");
+        }
+        distinctIds.forEach(userService::getUserById);
+
+        // пересечение и порядок по популярности считаются в памяти, из БД загружаются только общие фильмы
+        List<Integer> filmIds = userLikesIndex.getCommonFilms(distinctIds).stream()
+                .sorted(Comparator.<Integer>comparingInt(filmLeaderboard::getLikes).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .toList();
+        return filmStorage.getFilmsInOrder(filmIds);
     }
 }
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.IntIntMap;
+import ru.yandex.practicum.filmorate.util.SparseBitmap;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации item-item: разреженная матрица совместных лайков фильмов.
+ * <p>
+ * Для каждой пары фильмов хранится число пользователей, лайкнувших оба. Лайк пользователя, у которого
+ * уже есть n лайков, обновляет n ячеек матрицы, поэтому изменения применяются сразу, без пересчета.
+ * Близость фильмов - косинусная: co(f, g) / sqrt(likes(f) * likes(g)). Оценка фильма для пользователя -
+ * сумма близостей к фильмам, которые он уже лайкнул. Сами лайки пользователей берутся из {@link UserLikesIndex}.
+ */
+@Slf4j
+@Component
+public class FilmSimilarityIndex implements RecommendationEngine {
+    private final UserLikesIndex userLikesIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, IntIntMap> coLikes = new HashMap<>();
+    private IntIntMap likeCounts = new IntIntMap();
+
+    public FilmSimilarityIndex(UserLikesIndex userLikesIndex) {
+        this.userLikesIndex = userLikesIndex;
+    }
+
+    @Override
+    public void rebuild() {
+        Map<Integer, IntIntMap> newCoLikes = new HashMap<>();
+        IntIntMap newCounts = new IntIntMap();
+        int users = userLikesIndex.read(likes -> {
+            for (int slot = 0; slot < likes.count(); slot++) {
+                int[] films = toArray(likes.likes(slot));
+                for (int filmId : films) {
+                    newCounts.addTo(filmId, 1);
+                    IntIntMap row = newCoLikes.computeIfAbsent(filmId, id -> new IntIntMap());
+                    for (int otherId : films) {
+                        if (otherId != filmId) row.addTo(otherId, 1);
+                    }
+                }
+            }
+            return likes.count();
+        });
+
+        lock.writeLock().lock();
+        try {
+            coLikes = newCoLikes;
+            likeCounts = newCounts;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Матрица совместных лайков построена: {} пользователей, {} фильмов.", users, newCoLikes.size());
+    }
+
+    // к этому моменту лайк уже есть в карте пользователя
+    @Override
+    public void likeAdded(int userId, int filmId) {
+        SparseBitmap films = userLikesIndex.likes(userId);
+        lock.writeLock().lock();
+        try {
+            likeCounts.addTo(filmId, 1);
+            IntIntMap row = coLikes.computeIfAbsent(filmId, id -> new IntIntMap());
+            films.forEach(otherId -> {
+                if (otherId == filmId) return;
+                row.addTo(otherId, 1);
+                coLikes.computeIfAbsent(otherId, id -> new IntIntMap()).addTo(filmId, 1);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // к этому моменту лайка в карте пользователя уже нет
+    @Override
+    public void likeRemoved(int userId, int filmId) {
+        SparseBitmap films = userLikesIndex.likes(userId);
+        lock.writeLock().lock();
+        try {
+            likeCounts.addTo(filmId, -1);
+            IntIntMap row = coLikes.get(filmId);
+            films.forEach(otherId -> {
+                if (row != null) row.addTo(otherId, -1);
+                IntIntMap other = coLikes.get(otherId);
+                if (other != null) other.addTo(filmId, -1);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // лайки пользователя еще в карте: снимаются все пары его фильмов
+    @Override
+    public void userRemoved(int userId) {
+        int[] films = toArray(userLikesIndex.likes(userId));
+        lock.writeLock().lock();
+        try {
+            for (int filmId : films) {
+                likeCounts.addTo(filmId, -1);
+                IntIntMap row = coLikes.get(filmId);
+                if (row == null) continue;
+                for (int otherId : films) {
+                    if (otherId != filmId) row.addTo(otherId, -1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // фильм еще в картах лайкнувших его пользователей
+    @Override
+    public void filmRemoved(int filmId) {
+        lock.writeLock().lock();
+        try {
+            userLikesIndex.read(likes -> {
+                for (int slot = 0; slot < likes.count(); slot++) {
+                    SparseBitmap films = likes.likes(slot);
+                    if (!films.contains(filmId)) continue;
+                    films.forEach(otherId -> {
+                        IntIntMap other = coLikes.get(otherId);
+                        if (other != null) other.addTo(filmId, -1);
+                    });
+                }
+                return null;
+            });
+            coLikes.remove(filmId);
+            likeCounts.addTo(filmId, -likeCounts.get(filmId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // по убыванию суммарной близости к лайкам пользователя
+    @Override
+    public List<Integer> recommend(int userId, int limit) {
+        SparseBitmap liked = userLikesIndex.likes(userId);
+        if (liked.cardinality() == 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Double> scores = new HashMap<>();
+            liked.forEach(filmId -> {
+                IntIntMap row = coLikes.get(filmId);
+                if (row == null) return;
+                double filmLikes = likeCounts.get(filmId);
+                row.forEach((otherId, together) -> {
+                    int otherLikes = likeCounts.get(otherId);
+                    if (together > 0 && otherLikes > 0 && !liked.contains(otherId)) {
+                        double similarity = together / Math.sqrt(filmLikes * otherLikes);
+                        scores.merge(otherId, similarity, Double::sum);
+                    }
+                });
+            });
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int[] toArray(SparseBitmap bitmap) {
+        int[] bits = new int[bitmap.cardinality()];
+        int[] length = {0};
+        bitmap.forEach(bit -> bits[length[0]++] = bit);
+        return bits;
+    }
+}
@@ -0,0 +1,402 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Автодополнение наименований фильмов и имен режиссеров для /films/suggest.
+ * <p>
+ * Подсказки лежат в сжатом префиксном дереве (radix tree) под каждым словом наименования, поэтому
+ * префикс "nol" находит "Christopher Nolan". Каждый узел помнит наибольший рейтинг в своем поддереве,
+ * и поиск обходит узлы в порядке убывания этого рейтинга, останавливаясь после limit подсказок.
+ * Рейтинг фильма - число лайков из {@link FilmLeaderboard}, рейтинг режиссера - число его фильмов.
+ * БД на пути запроса не используется.
+ * <p>
+ * Лайк только отмечает фильм без блокировки. Отмеченные фильмы пересчитываются одной пачкой под блокировкой
+ * записи перед ближайшим поиском, с числом лайков на этот момент: частые лайки популярного фильма
+ * не выстраиваются в очередь за блокировкой дерева.
+ */
+@Slf4j
+@Component
+public class FilmSuggestIndex implements FilmLeaderboard.LikesListener {
+    private final FilmStorage filmStorage;
+    private final DirectorDbStorage directorDbStorage;
+    private final FilmLeaderboard filmLeaderboard;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RadixTree tree = new RadixTree();
+    private final Map<Integer, Entry> films = new HashMap<>();
+    private final Map<Long, Entry> directors = new HashMap<>();
+    private final Map<Integer, Set<Long>> directorsByFilm = new HashMap<>();
+    // фильмы, у которых изменилось число лайков после последнего пересчета
+    private final Set<Integer> rescored = ConcurrentHashMap.newKeySet();
+
+    public FilmSuggestIndex(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                            DirectorDbStorage directorDbStorage,
+                            FilmLeaderboard filmLeaderboard) {
+        this.filmStorage = filmStorage;
+        this.directorDbStorage = directorDbStorage;
+        this.filmLeaderboard = filmLeaderboard;
+    }
+
+    @PostConstruct
+    public void start() {
+        filmLeaderboard.addListener(this);
+    }
+
+    /**
+     * Строит индекс заново под блокировкой записи; вызывается из {@link IndexRebuilder}
+     * после рейтинга популярности, из которого берется число лайков.
+     */
+    public void rebuild() {
+        Collection<Director> allDirectors = directorDbStorage.findAll();
+        List<FilmSearchEntry> allFilms = filmStorage.getFilmsSearchEntries();
+
+        lock.writeLock().lock();
+        try {
+            tree.clear();
+            films.clear();
+            directors.clear();
+            directorsByFilm.clear();
+            for (Director director : allDirectors) {
+                putDirector(director, 0);
+            }
+            for (FilmSearchEntry film : allFilms) {
+                putFilm(film.filmId(), film.name(), film.directorIds(), filmLeaderboard.getLikes(film.filmId()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс подсказок построен: {} фильмов, {} режиссеров.", allFilms.size(), allDirectors.size());
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        if (rescored.isEmpty()) {
+            lock.readLock().lock();
+        } else {
+            lock.writeLock().lock();
+            try {
+                applyRescores();
+                lock.readLock().lock();   // понижение до чтения: пересчитанное не изменится до конца поиска
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        try {
+            return tree.top(normalize(prefix), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void filmSaved(Film film) {
+        Set<Long> directorIds = new HashSet<>();
+        if (film.getDirectors() != null) {
+            for (Director director : film.getDirectors()) {
+                directorIds.add(director.getId());
+            }
+        }
+        int likes = filmLeaderboard.getLikes(film.getId());
+
+        lock.writeLock().lock();
+        try {
+            removeFilm(film.getId());
+            putFilm(film.getId(), film.getName(), directorIds, likes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void filmRemoved(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void directorSaved(Director director) {
+        lock.writeLock().lock();
+        try {
+            Entry old = directors.remove(director.getId());
+            if (old != null) tree.remove(old);
+            putDirector(director, old == null ? 0 : old.score);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void directorRemoved(long directorId) {
+        lock.writeLock().lock();
+        try {
+            Entry old = directors.remove(directorId);
+            if (old != null) tree.remove(old);
+            for (Set<Long> filmDirectors : directorsByFilm.values()) {
+                filmDirectors.remove(directorId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void likesChanged(int filmId, int likes) {
+        rescored.add(filmId);
+    }
+
+    // под блокировкой записи; отметка снимается до чтения лайков: лайк, пришедший после, поставит ее снова
+    private void applyRescores() {
+        for (Iterator<Integer> iterator = rescored.iterator(); iterator.hasNext(); ) {
+            int filmId = iterator.next();
+            iterator.remove();
+            Entry entry = films.get(filmId);
+            if (entry != null) tree.rescore(entry, filmLeaderboard.getLikes(filmId));
+        }
+    }
+
+    private void putDirector(Director director, int score) {
+        Entry entry = new Entry(new Suggestion(director.getId(), director.getName(), SuggestionType.DIRECTOR), score);
+        directors.put(director.getId(), entry);
+        tree.add(entry);
+    }
+
+    private void putFilm(int filmId, String name, Set<Long> directorIds, int likes) {
+        Entry entry = new Entry(new Suggestion(filmId, name, SuggestionType.FILM), likes);
+        films.put(filmId, entry);
+        tree.add(entry);
+
+        directorsByFilm.put(filmId, new HashSet<>(directorIds));
+        for (long directorId : directorIds) {
+            Entry director = directors.get(directorId);
+            if (director != null) tree.rescore(director, director.score + 1);
+        }
+    }
+
+    private void removeFilm(int filmId) {
+        Entry entry = films.remove(filmId);
+        if (entry != null) tree.remove(entry);
+
+        Set<Long> directorIds = directorsByFilm.remove(filmId);
+        if (directorIds == null) return;
+        for (long directorId : directorIds) {
+            Entry director = directors.get(directorId);
+            if (director != null) tree.rescore(director, director.score - 1);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        private final Suggestion suggestion;
+        private final String sortName;
+        private final Set<String> keys;
+        private int score;
+
+        private Entry(Suggestion suggestion, int score) {
+            this.suggestion = suggestion;
+            this.sortName = normalize(suggestion.name());
+            this.keys = keys(sortName);
+            this.score = score;
+        }
+
+        // наименование целиком и его окончания, начинающиеся с каждого слова
+        private static Set<String> keys(String name) {
+            Set<String> keys = new HashSet<>();
+            keys.add(name);
+            for (int i = 1; i < name.length(); i++) {
+                if (Character.isLetterOrDigit(name.charAt(i)) && !Character.isLetterOrDigit(name.charAt(i - 1))) {
+                    keys.add(name.substring(i));
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Сжатое префиксное дерево подсказок. Синхронизация - на стороне FilmSuggestIndex.
+     */
+    private static final class RadixTree {
+        // при равном рейтинге подсказки выдаются раньше узлов, чтобы не обходить поддеревья без нужды
+        private static final Comparator<Candidate> BEST_FIRST = Comparator.comparingInt(Candidate::score).reversed()
+                .thenComparing(candidate -> candidate.entry() == null)
+                .thenComparing(candidate -> candidate.entry() == null ? "" : candidate.entry().sortName)
+                .thenComparingLong(candidate -> candidate.entry() == null ? 0 : candidate.entry().suggestion.id());
+
+        private Node root = new Node("");
+
+        private void add(Entry entry) {
+            for (String key : entry.keys) {
+                insert(key, entry);
+            }
+        }
+
+        private void remove(Entry entry) {
+            for (String key : entry.keys) {
+                List<Node> path = path(key);
+                if (path == null) continue;
+                path.getLast().entries.remove(entry);
+                refresh(path);
+            }
+        }
+
+        private void rescore(Entry entry, int score) {
+            entry.score = score;
+            for (String key : entry.keys) {
+                List<Node> path = path(key);
+                if (path != null) refresh(path);
+            }
+        }
+
+        private void clear() {
+            root = new Node("");
+        }
+
+        private List<Suggestion> top(String prefix, int limit) {
+            Node node = root;
+            int i = 0;
+            while (i < prefix.length()) {
+                Node child = node.children.get(prefix.charAt(i));
+                if (child == null) return List.of();
+                int common = commonPrefix(child.label, prefix, i);
+                if (i + common < prefix.length() && common < child.label.length()) return List.of();
+                i += common;
+                node = child;   // префикс мог закончиться и посреди ребра
+            }
+            if (node.best < 0) return List.of();
+
+            PriorityQueue<Candidate> queue = new PriorityQueue<>(BEST_FIRST);
+            queue.add(new Candidate(node.best, node, null));
+            Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Suggestion> result = new ArrayList<>(Math.min(limit, 16));
+            while (!queue.isEmpty() && result.size() < limit) {
+                Candidate candidate = queue.poll();
+                if (candidate.entry() != null) {
+                    // одна подсказка может лежать под несколькими словами префикса
+                    if (seen.add(candidate.entry())) result.add(candidate.entry().suggestion);
+                    continue;
+                }
+                for (Entry entry : candidate.node().entries) {
+                    queue.add(new Candidate(entry.score, null, entry));
+                }
+                for (Node child : candidate.node().children.values()) {
+                    if (child.best >= 0) queue.add(new Candidate(child.best, child, null));
+                }
+            }
+            return result;
+        }
+
+        private void insert(String key, Entry entry) {
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            path.add(node);
+            int i = 0;
+            while (i < key.length()) {
+                Node child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    child = new Node(key.substring(i));
+                    node.children.put(key.charAt(i), child);
+                    i = key.length();
+                } else {
+                    int common = commonPrefix(child.label, key, i);
+                    if (common < child.label.length()) {
+                        // ключ расходится с ребром посередине: делим ребро
+                        Node middle = new Node(child.label.substring(0, common));
+                        child.label = child.label.substring(common);
+                        middle.children.put(child.label.charAt(0), child);
+                        middle.best = child.best;
+                        node.children.put(middle.label.charAt(0), middle);
+                        child = middle;
+                    }
+                    i += common;
+                }
+                node = child;
+                path.add(node);
+            }
+            node.entries.add(entry);
+            for (Node visited : path) {
+                visited.best = Math.max(visited.best, entry.score);
+            }
+        }
+
+        // узлы от корня до узла, в котором заканчивается ключ, или null, если ключа в дереве нет
+        private List<Node> path(String key) {
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            path.add(node);
+            int i = 0;
+            while (i < key.length()) {
+                Node child = node.children.get(key.charAt(i));
+                if (child == null || !key.startsWith(child.label, i)) return null;
+                i += child.label.length();
+                node = child;
+                path.add(node);
+            }
+            return path;
+        }
+
+        // пересчитывает рейтинги снизу вверх, удаляет пустые узлы и склеивает узлы с одним потомком
+        private void refresh(List<Node> path) {
+            for (int i = path.size() - 1; i > 0; i--) {
+                Node node = path.get(i);
+                Node parent = path.get(i - 1);
+                if (node.entries.isEmpty() && node.children.isEmpty()) {
+                    parent.children.remove(node.label.charAt(0));
+                } else if (node.entries.isEmpty() && node.children.size() == 1) {
+                    Node child = node.children.values().iterator().next();
+                    node.label = node.label + child.label;
+                    node.children = child.children;
+                    node.entries = child.entries;
+                    node.best = child.best;
+                } else {
+                    node.recompute();
+                }
+            }
+            root.recompute();
+        }
+
+        private static int commonPrefix(String label, String key, int from) {
+            int max = Math.min(label.length(), key.length() - from);
+            int i = 0;
+            while (i < max && label.charAt(i) == key.charAt(from + i)) i++;
+            return i;
+        }
+    }
+
+    private static final class Node {
+        private String label;   // часть ключа на ребре от родителя
+        private Map<Character, Node> children = new HashMap<>(4);
+        private List<Entry> entries = new ArrayList<>(1);
+        private int best = -1;  // наибольший рейтинг в поддереве, -1 - поддерево пусто
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private void recompute() {
+            int max = -1;
+            for (Entry entry : entries) {
+                max = Math.max(max, entry.score);
+            }
+            for (Node child : children.values()) {
+                max = Math.max(max, child.best);
+            }
+            best = max;
+        }
+    }
+
+    private record Candidate(int score, Node node, Entry entry) {
+    }
+}
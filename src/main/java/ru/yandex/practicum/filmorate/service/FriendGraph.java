@@ -0,0 +1,289 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.CsrGraph;
+import ru.yandex.practicum.filmorate.util.IntSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Граф дружбы в памяти: прямой граф (кого пользователь добавил в друзья) и обратный к нему (кто добавил
+ * пользователя), оба - {@link CsrGraph}. Обратный нужен встречному поиску пути и удалению пользователя.
+ * <p>
+ * Рабочие массивы поисков размером с диапазон id берутся из пула, а не из ThreadLocal:
+ * потоков у веб-сервера сотни, а одновременных поисков обычно единицы.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+    private final UserStorage userStorage;
+
+    private final CsrGraph friends = new CsrGraph();
+    private final CsrGraph followers = new CsrGraph();
+    private final Queue<MutualCounts> mutualCounts = new ConcurrentLinkedQueue<>();
+    private final Queue<PathSearch> pathSearches = new ConcurrentLinkedQueue<>();
+
+    public FriendGraph(@Qualifier("userDbStorage") UserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
+
+    /**
+     * Строит оба графа заново; вызывается из {@link IndexRebuilder}.
+     */
+    public synchronized void rebuild() {
+        Map<Integer, IntSet> friendIds = userStorage.getFriendIdsByUser();
+
+        // пользователи по возрастанию id, чтобы строки обратного графа дописывались в конец
+        Map<Integer, IntSet> followerIds = new HashMap<>();
+        friendIds.keySet().stream().sorted().forEach(userId -> friendIds.get(userId).intStream()
+                .forEach(friendId -> followerIds.computeIfAbsent(friendId, id -> new IntSet()).add(userId)));
+
+        friends.rebuild(friendIds);
+        followers.rebuild(followerIds);
+        log.info("Граф дружбы построен: {} пользователей с друзьями, {} связей.", friendIds.size(),
+                friends.edges());
+    }
+
+    public synchronized void friendAdded(int userId, int friendId) {
+        if (friends.add(userId, friendId)) followers.add(friendId, userId);
+    }
+
+    public synchronized void friendRemoved(int userId, int friendId) {
+        if (friends.remove(userId, friendId)) followers.remove(friendId, userId);
+    }
+
+    public synchronized void userRemoved(int userId) {
+        for (int followerId : followers.row(userId)) {
+            friends.remove(followerId, userId);
+        }
+        for (int friendId : friends.row(userId)) {
+            followers.remove(friendId, userId);
+        }
+        friends.clear(userId);
+        followers.clear(userId);
+    }
+
+    public IntSet getFriends(int userId) {
+        return IntSet.of(friends.row(userId));
+    }
+
+    public IntSet getCommonFriends(int userId, int otherUserId) {
+        return getFriends(userId).intersection(getFriends(otherUserId));
+    }
+
+    public boolean isFriend(int userId, int friendId) {
+        return friends.contains(userId, friendId);
+    }
+
+    /**
+     * Друзья друзей, которых нет среди друзей пользователя, по убыванию числа общих друзей, затем по id.
+     */
+    public List<Integer> suggestFriends(int userId, int limit) {
+        int[] friendIds = friends.row(userId);
+        MutualCounts counts = Objects.requireNonNullElseGet(mutualCounts.poll(), MutualCounts::new);
+        try {
+            // сам пользователь и его друзья помечаются заранее, их счетчики остаются отрицательными
+            counts.exclude(userId);
+            for (int friendId : friendIds) {
+                counts.exclude(friendId);
+            }
+            for (int friendId : friendIds) {
+                friends.forEach(friendId, counts::increment);
+            }
+
+            // (число общих друзей, MAX_VALUE - id) в одном long: чем больше ключ, тем лучше кандидат;
+            // в куче держим только limit лучших, полная сортировка всех кандидатов не нужна
+            PriorityQueue<Long> best = new PriorityQueue<>(limit + 1);
+            for (int i = 0; i < counts.touchedCount; i++) {
+                int candidate = counts.touched[i];
+                if (counts.counts[candidate] <= 0) continue;
+                long key = ((long) counts.counts[candidate] << 32) | (Integer.MAX_VALUE - candidate);
+                if (best.size() < limit) {
+                    best.add(key);
+                } else if (limit > 0 && key > best.peek()) {
+                    best.poll();
+                    best.add(key);
+                }
+            }
+
+            Integer[] suggestions = new Integer[best.size()];
+            for (int i = suggestions.length - 1; i >= 0; i--) {
+                suggestions[i] = Integer.MAX_VALUE - (int) (long) best.poll();
+            }
+            return Arrays.asList(suggestions);
+        } finally {
+            counts.reset();
+            mutualCounts.offer(counts);
+        }
+    }
+
+    /**
+     * Кратчайшая цепочка дружбы от пользователя до другого пользователя длиной не больше maxDepth связей:
+     * id по порядку, включая обоих; пустой список, если такой цепочки нет.
+     * <p>
+     * Поиск встречный: от первого пользователя по его друзьям, от второго - по тем, кто добавил его в друзья.
+     * Каждый раз на уровень расширяется меньший фронт. Первая же вершина, до которой дошли оба поиска,
+     * дает кратчайший путь: до этого уровня фронты не пересекались, значит короче пути нет.
+     */
+    public List<Integer> findPath(int userId, int otherUserId, int maxDepth) {
+        if (userId == otherUserId) return List.of(userId);
+
+        PathSearch search = Objects.requireNonNullElseGet(pathSearches.poll(), PathSearch::new);
+        try {
+            Frontier forward = search.forward;
+            Frontier backward = search.backward;
+            CsrGraph.Cursor cursor = search.cursor;
+            forward.start(userId);
+            backward.start(otherUserId);
+
+            for (int depth = 0; depth < maxDepth && forward.levelSize() > 0 && backward.levelSize() > 0; depth++) {
+                boolean forwardTurn = forward.levelSize() <= backward.levelSize();
+                Frontier side = forwardTurn ? forward : backward;
+                Frontier other = forwardTurn ? backward : forward;
+                CsrGraph edges = forwardTurn ? friends : followers;
+
+                for (int i = side.levelStart; i < side.levelEnd; i++) {
+                    int node = side.queue[i];
+                    edges.load(node, cursor);
+                    for (int j = cursor.from; j < cursor.to; j++) {
+                        int next = cursor.values[j];
+                        if (side.isVisited(next)) continue;
+                        side.visit(next, node);
+                        if (other.isVisited(next)) return search.path(next);
+                    }
+                }
+                side.nextLevel();
+            }
+            return List.of();
+        } finally {
+            search.reset();
+            pathSearches.offer(search);
+        }
+    }
+
+    /**
+     * Счетчики общих друзей плотным массивом по id: кандидаты разбросаны по всему диапазону id,
+     * и хеш-таблица на сотни тысяч ключей промахивается мимо кеша чаще, чем массив.
+     * Массив возвращается в пул после поиска, обнуляются только затронутые ячейки.
+     */
+    private static final class MutualCounts {
+        static final int EXCLUDED = Integer.MIN_VALUE / 2;
+
+        int[] counts = new int[1024];
+        int[] touched = new int[1024];
+        int touchedCount;
+
+        void increment(int candidate) {
+            if (candidate < 0) return;
+            ensureCapacity(candidate);
+            if (counts[candidate]++ == 0) touch(candidate);
+        }
+
+        void exclude(int userId) {
+            if (userId < 0) return;
+            ensureCapacity(userId);
+            if (counts[userId] == 0) touch(userId);
+            counts[userId] = EXCLUDED;
+        }
+
+        private void ensureCapacity(int id) {
+            if (id >= counts.length) counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+        }
+
+        private void touch(int id) {
+            if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+            touched[touchedCount++] = id;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    /**
+     * Рабочие массивы встречного поиска: два фронта и курсор по строкам графа.
+     */
+    private static final class PathSearch {
+        final Frontier forward = new Frontier();
+        final Frontier backward = new Frontier();
+        final CsrGraph.Cursor cursor = new CsrGraph.Cursor();
+
+        // от первого пользователя до встречи по родителям прямого поиска, дальше по родителям обратного
+        List<Integer> path(int meeting) {
+            List<Integer> path = new ArrayList<>();
+            for (int id = meeting; id >= 0; id = forward.parents[id]) {
+                path.add(id);
+            }
+            Collections.reverse(path);
+            for (int id = backward.parents[meeting]; id >= 0; id = backward.parents[id]) {
+                path.add(id);
+            }
+            return path;
+        }
+
+        void reset() {
+            forward.reset();
+            backward.reset();
+        }
+    }
+
+    /**
+     * Один поиск в ширину: битовая карта посещенных, родитель каждой посещенной вершины плотным массивом по id
+     * и очередь массивом, в котором текущий уровень - отрезок [levelStart, levelEnd).
+     * Очередь хранит все посещенные вершины, по ней же и обнуляется карта.
+     */
+    private static final class Frontier {
+        long[] visited = new long[16];
+        int[] parents = new int[1024];
+        int[] queue = new int[1024];
+        int size;
+        int levelStart;
+        int levelEnd;
+
+        void start(int root) {
+            visit(root, -1);
+            nextLevel();
+        }
+
+        boolean isVisited(int id) {
+            int word = id >>> 6;
+            return word < visited.length && (visited[word] & (1L << id)) != 0;
+        }
+
+        void visit(int id, int parent) {
+            int word = id >>> 6;
+            if (word >= visited.length) visited = Arrays.copyOf(visited, Math.max(word + 1, visited.length * 2));
+            if (id >= parents.length) parents = Arrays.copyOf(parents, Math.max(id + 1, parents.length * 2));
+            if (size == queue.length) queue = Arrays.copyOf(queue, size * 2);
+
+            visited[word] |= 1L << id;
+            parents[id] = parent;
+            queue[size++] = id;
+        }
+
+        int levelSize() {
+            return levelEnd - levelStart;
+        }
+
+        void nextLevel() {
+            levelStart = levelEnd;
+            levelEnd = size;
+        }
+
+        void reset() {
+            for (int i = 0; i < size; i++) {
+                visited[queue[i] >>> 6] = 0;
+            }
+            size = 0;
+            levelStart = 0;
+            levelEnd = 0;
+        }
+    }
+}
@@ -1,25 +1,29 @@
 package ru.yandex.practicum.filmorate.service;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
 
 import java.util.List;
 
 @Service
 public class GenreService {
-    private final GenreStorage genreStorage;
+    private final ReferenceData referenceData;
 
-    public GenreService(@Qualifier("genreDbStorage") GenreStorage genreStorage) {
-        this.genreStorage = genreStorage;
+    public GenreService(ReferenceData referenceData) {
+        this.referenceData = referenceData;
     }
 
     public List<Genre> getAllGenres() {
-        return genreStorage.findAll();
+        return referenceData.genres();
     }
 
     public Genre getGenreById(int id) {
-        return genreStorage.findById(id);
+        Genre genre = referenceData.genre(id);
+        if (genre == null) {
+            throw new NotFoundException("Genre with id " + id + " does not exist");
+        }
+        return genre;
     }
 }
\ No newline at end of file
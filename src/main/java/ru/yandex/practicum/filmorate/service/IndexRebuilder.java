@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Полная перестройка индексов в памяти по БД и ее порядок относительно записей, которые меняют и БД, и индексы.
+ * <p>
+ * Перестройка читает БД и подменяет индекс целиком. Изменение, записанное в БД после чтения,
+ * но примененное к индексу до подмены, потерялось бы; записанное до чтения, но примененное после
+ * подмены, - применилось бы дважды. Поэтому запись в БД вместе с обновлением индексов идет под
+ * {@link #writeLock()} (такие записи друг другу не мешают), а перестройка - под исключительной блокировкой:
+ * она дожидается начатых записей, новые ждут ее окончания. Чтение индексов блокировку не берет.
+ */
+@Component
+public class IndexRebuilder {
+    private final FilmLeaderboard filmLeaderboard;
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmSuggestIndex filmSuggestIndex;
+    private final UserLikesIndex userLikesIndex;
+    private final RecommendationService recommendationService;
+    private final FriendGraph friendGraph;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public IndexRebuilder(FilmLeaderboard filmLeaderboard,
+                          FilmSearchIndex filmSearchIndex,
+                          FilmSuggestIndex filmSuggestIndex,
+                          UserLikesIndex userLikesIndex,
+                          RecommendationService recommendationService,
+                          FriendGraph friendGraph) {
+        this.filmLeaderboard = filmLeaderboard;
+        this.filmSearchIndex = filmSearchIndex;
+        this.filmSuggestIndex = filmSuggestIndex;
+        this.userLikesIndex = userLikesIndex;
+        this.recommendationService = recommendationService;
+        this.friendGraph = friendGraph;
+    }
+
+    /**
+     * Блокировка, под которой изменение записывается в БД и применяется к индексам.
+     */
+    public Lock writeLock() {
+        return lock.readLock();
+    }
+
+    @Order(10)  // после пересчета счетчиков лайков в FilmDbStorage
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            filmLeaderboard.rebuild();
+            filmSearchIndex.rebuild();
+            // число лайков фильма берется из рейтинга популярности
+            filmSuggestIndex.rebuild();
+            userLikesIndex.rebuild();
+            // стратегия рекомендаций читает лайки из UserLikesIndex
+            recommendationService.rebuild();
+            friendGraph.rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,25 +1,29 @@
 package ru.yandex.practicum.filmorate.service;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MpaRating;
-import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
 
 import java.util.List;
 
 @Service
 public class MpaService {
-    private final MpaStorage mpaStorage;
+    private final ReferenceData referenceData;
 
-    public MpaService(@Qualifier("mpaDbStorage") MpaStorage mpaStorage) {
-        this.mpaStorage = mpaStorage;
+    public MpaService(ReferenceData referenceData) {
+        this.referenceData = referenceData;
     }
 
     public List<MpaRating> getAllRatings() {
-        return mpaStorage.findAll();
+        return referenceData.ratings();
     }
 
     public MpaRating getRatingById(int id) {
-        return mpaStorage.findById(id);
+        MpaRating rating = referenceData.rating(id);
+        if (rating == null) {
+            throw new NotFoundException("mpa with id " + id + " not found");
+        }
+        return rating;
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.List;
+
+/**
+ * Стратегия, по которой {@link RecommendationService} подбирает фильмы.
+ * <p>
+ * Лайки пользователей стратегия читает из {@link UserLikesIndex}. Методы изменений нужны только стратегии,
+ * которая хранит что-то свое поверх лайков: лайк и его снятие приходят после того, как они применены
+ * к {@link UserLikesIndex}, удаление пользователя или фильма - до того.
+ */
+public interface RecommendationEngine {
+
+    /**
+     * Полная перестройка по уже построенному {@link UserLikesIndex}.
+     */
+    default void rebuild() {
+    }
+
+    default void likeAdded(int userId, int filmId) {
+    }
+
+    default void likeRemoved(int userId, int filmId) {
+    }
+
+    default void userRemoved(int userId) {
+    }
+
+    default void filmRemoved(int filmId) {
+    }
+
+    /**
+     * Идентификаторы фильмов, которых нет среди лайков пользователя, от лучшей рекомендации к худшей.
+     */
+    List<Integer> recommend(int userId, int limit);
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -13,15 +14,55 @@ import java.util.Collection;
 public class RecommendationService {
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
+    private final FilmSimilarityIndex filmSimilarityIndex;
+    private final UserNeighbourIndex userNeighbourIndex;
+
+    @Value("${filmorate.recommendations.top-n:20}")
+    private int topN = 20;
+
+    @Value("${filmorate.recommendations.strategy:ITEM_ITEM}")
+    private RecommendationStrategy strategy = RecommendationStrategy.ITEM_ITEM;
 
     public RecommendationService(@Qualifier("userDbStorage") UserStorage userStorage,
-                                 @Qualifier("filmDbStorage") FilmStorage filmStorage) {
+                                 @Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                 FilmSimilarityIndex filmSimilarityIndex,
+                                 UserNeighbourIndex userNeighbourIndex) {
         this.userStorage = userStorage;
         this.filmStorage = filmStorage;
+        this.filmSimilarityIndex = filmSimilarityIndex;
+        this.userNeighbourIndex = userNeighbourIndex;
+    }
+
+    // в памяти держится только индекс выбранной стратегии; вызывается из IndexRebuilder
+    public void rebuild() {
+        engine().rebuild();
     }
 
     public Collection<Film> getFilmsRecommendations(@PathVariable int userId) {
-        return filmStorage.getFilmsRecommendations(userStorage.getUserById(userId).getId());
+        int id = userStorage.getUserById(userId).getId();
+
+        // оценки считаются по индексу в памяти, из БД загружаются только рекомендованные фильмы
+        return filmStorage.getFilmsInOrder(engine().recommend(id, topN));
+    }
+
+    public void likeAdded(int userId, int filmId) {
+        engine().likeAdded(userId, filmId);
+    }
+
+    public void likeRemoved(int userId, int filmId) {
+        engine().likeRemoved(userId, filmId);
+    }
+
+    public void userRemoved(int userId) {
+        engine().userRemoved(userId);
+    }
+
+    public void filmRemoved(int filmId) {
+        engine().filmRemoved(filmId);
+    }
+
+    private RecommendationEngine engine() {
+        return strategy == RecommendationStrategy.USER_NEIGHBOURS ? userNeighbourIndex : filmSimilarityIndex;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.service;
+
+/**
+ * Способ построения рекомендаций в {@link RecommendationService}.
+ */
+public enum RecommendationStrategy {
+    ITEM_ITEM,       // близость фильмов по совместным лайкам (FilmSimilarityIndex)
+    USER_NEIGHBOURS  // лайки ближайших по вкусу пользователей (UserNeighbourIndex)
+}
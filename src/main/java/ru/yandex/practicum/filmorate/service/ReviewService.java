@@ -2,16 +2,19 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.Review;
-import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.PageCursor;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
 
 import java.util.List;
 
@@ -19,22 +22,31 @@ import java.util.List;
 public class ReviewService {
     private final ReviewStorage reviewStorage;
     private final UserStorage userStorage;
-    private final FilmStorage filmStorage;
+    private final FilmCache filmCache;
     private final FeedService feedService;
+    private final FilmReviewTop filmReviewTop;
+
+    @Value("${filmorate.reviews.default-page-size:10}")
+    private int defaultPageSize = 10;
+
+    @Value("${filmorate.reviews.max-page-size:1000}")
+    private int maxPageSize = 1000;
 
     public ReviewService(@Qualifier(value = "reviewDbStorage") ReviewStorage reviewStorage,
-                         @Qualifier(value = "filmDbStorage") FilmStorage filmStorage,
+                         FilmCache filmCache,
                          @Qualifier(value = "userDbStorage") UserStorage userStorage,
-                         @Qualifier(value = "feedService") FeedService feedService) {
+                         @Qualifier(value = "feedService") FeedService feedService,
+                         FilmReviewTop filmReviewTop) {
         this.reviewStorage = reviewStorage;
-        this.filmStorage = filmStorage;
+        this.filmCache = filmCache;
         this.userStorage = userStorage;
         this.feedService = feedService;
+        this.filmReviewTop = filmReviewTop;
     }
 
     public Review createReview(Review review) {
         validateReview(review);
-        Review savedReview = reviewStorage.createReview(review);
+        Review savedReview = filmReviewTop.create(review.getFilmId(), () -> reviewStorage.createReview(review));
         feedService.addEvent(new FeedEvent(null, null, savedReview.getUserId(),
                 EventType.REVIEW, Operation.ADD, savedReview.getReviewId()));
         return savedReview;
@@ -42,7 +54,9 @@ public class ReviewService {
 
     public Review updateReview(Review review) {
         validateReview(review);
-        Review updatedReview = reviewStorage.updateReview(review);
+        // фильм отзыва не меняется, в запросе он может быть указан неверно
+        int filmId = getReviewById(review.getReviewId()).getFilmId();
+        Review updatedReview = filmReviewTop.update(filmId, () -> reviewStorage.updateReview(review));
         feedService.addEvent(new FeedEvent(null, null, updatedReview.getUserId(),
                 EventType.REVIEW, Operation.UPDATE, updatedReview.getReviewId()));
         return updatedReview;
@@ -50,7 +64,7 @@ public class ReviewService {
 
     public void deleteReview(int id) {
         Review review = getReviewById(id);
-        reviewStorage.deleteReview(id);
+        filmReviewTop.delete(review.getFilmId(), id, () -> reviewStorage.deleteReview(id));
         feedService.addEvent(new FeedEvent(null, null,
                 review.getUserId(), EventType.REVIEW, Operation.REMOVE, id));
     }
@@ -59,32 +73,47 @@ public class ReviewService {
         return reviewStorage.getReviewById(id);
     }
 
-    public List<Review> getAllReviews(Integer filmId, int count) {
-        return reviewStorage.getAllReviews(filmId, count);
+    /**
+     * Отзывы по убыванию полезности. after - курсор предыдущей страницы или пара "полезность,id" последнего отзыва.
+     */
+    public Page<Review> getReviewsPage(Integer filmId, String after, Integer limit) {
+        int pageSize = PageCursor.limit(limit, defaultPageSize, maxPageSize);
+        ReviewCursor cursor = ReviewCursor.decode(after);
+        // первая страница отзывов фильма - из памяти, с еще не записанными голосами
+        List<Review> reviews = filmId != null && cursor == null ? filmReviewTop.top(filmId, pageSize + 1) : null;
+        if (reviews == null) {
+            reviews = reviewStorage.getReviewsPage(filmId, cursor, pageSize + 1);
+        }
+        if (reviews.size() <= pageSize) {
+            return new Page<>(reviews, null);
+        }
+        List<Review> page = reviews.subList(0, pageSize);
+        Review last = page.getLast();
+        return new Page<>(page, ReviewCursor.of(last).encode());
     }
 
     public void addLike(int reviewId, int userId) {
         Review review = getReviewById(reviewId);
         checkUserExists(userId);
-        reviewStorage.addLike(review.getReviewId(), userId);
+        filmReviewTop.vote(review.getFilmId(), reviewId, () -> reviewStorage.addLike(reviewId, userId));
     }
 
     public void addDislike(int reviewId, int userId) {
         Review review = getReviewById(reviewId);
         checkUserExists(userId);
-        reviewStorage.addDislike(review.getReviewId(), userId);
+        filmReviewTop.vote(review.getFilmId(), reviewId, () -> reviewStorage.addDislike(reviewId, userId));
     }
 
     public void removeLike(int reviewId, int userId) {
         Review review = getReviewById(reviewId);
         checkUserExists(userId);
-        reviewStorage.removeLike(review.getReviewId(), userId);
+        filmReviewTop.vote(review.getFilmId(), reviewId, () -> reviewStorage.removeLike(reviewId, userId));
     }
 
     public void removeDislike(int reviewId, int userId) {
         Review review = getReviewById(reviewId);
         checkUserExists(userId);
-        reviewStorage.removeDislike(review.getReviewId(), userId);
+        filmReviewTop.vote(review.getFilmId(), reviewId, () -> reviewStorage.removeDislike(reviewId, userId));
     }
 
     private void validateReview(Review review) {
@@ -97,7 +126,7 @@ public class ReviewService {
         if (review.getFilmId() == null) {
             throw new ValidationException("Film not found");
         }
-        if (filmStorage.getFilmById(review.getFilmId()) == null) {
+        if (filmCache.get(review.getFilmId()) == null) {
             throw new ValidationException("Film with id " + review.getFilmId() + " not found");
         }
     }
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+import ru.yandex.practicum.filmorate.storage.ReviewUsefulnessBuffer;
+import ru.yandex.practicum.filmorate.storage.archive.FeedArchive;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Раз в log-interval пишет в лог счетчики кэшей и буферов в памяти одной строкой.
+ */
+@Slf4j
+@Component
+public class StatsReporter {
+    private final FilmCache filmCache;
+    private final ReferenceData referenceData;
+    private final FilmReviewTop filmReviewTop;
+    private final ReviewUsefulnessBuffer usefulnessBuffer;
+    private final FeedTimeline feedTimeline;
+    private final FeedAppender feedAppender;
+    private final FeedArchive feedArchive;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("stats-reporter").daemon().factory());
+
+    @Value("${filmorate.stats.log-interval-ms:60000}")
+    private long logIntervalMillis = 60_000;
+
+    public StatsReporter(FilmCache filmCache, ReferenceData referenceData, FilmReviewTop filmReviewTop,
+                         ReviewUsefulnessBuffer usefulnessBuffer, FeedTimeline feedTimeline,
+                         FeedAppender feedAppender, FeedArchive feedArchive) {
+        this.filmCache = filmCache;
+        this.referenceData = referenceData;
+        this.filmReviewTop = filmReviewTop;
+        this.usefulnessBuffer = usefulnessBuffer;
+        this.feedTimeline = feedTimeline;
+        this.feedAppender = feedAppender;
+        this.feedArchive = feedArchive;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (logIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::report, logIntervalMillis, logIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Текущие счетчики по компонентам.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("filmCache", filmCache.stats());
+        stats.put("referenceData", referenceData.stats());
+        stats.put("reviewTop", filmReviewTop.stats());
+        stats.put("reviewUsefulness", usefulnessBuffer.stats());
+        stats.put("timeline", feedTimeline.stats());
+        // глубина очереди и время записи пачек ленты
+        stats.put("feedAppender", feedAppender.stats());
+        stats.put("feedArchive", feedArchive.stats());
+        return stats;
+    }
+
+    private void report() {
+        try {
+            log.info("Счетчики: {}", snapshot());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось собрать счетчики.", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IntIntMap;
+import ru.yandex.practicum.filmorate.util.IntSet;
+import ru.yandex.practicum.filmorate.util.SparseBitmap;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Лайки каждого пользователя битовой картой по id фильмов - единственная копия в памяти:
+ * по ней ищутся общие фильмы группы пользователей и считаются рекомендации обеих стратегий.
+ * <p>
+ * Карты неизменяемые, изменение подменяет карту пользователя целиком. Пересечение идет от самой
+ * маленькой карты пословно и обрывается, как только становится пустым.
+ * <p>
+ * Лайки одного пользователя записываются в БД и применяются к индексам под его блокировкой
+ * из {@link #lockFor(int)}, поэтому индексы видят изменения в том же порядке, что и БД.
+ */
+@Slf4j
+@Component
+public class UserLikesIndex {
+    // число блокировок, между которыми делятся пользователи
+    private static final int USER_LOCKS = 64;
+
+    private final FilmStorage filmStorage;
+    private final Lock[] userLocks = new Lock[USER_LOCKS];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Users users = new Users();
+    // позиция пользователя в массивах + 1; позиция удаленного пользователя остается за ним с пустой картой
+    private IntIntMap slotsByUser = new IntIntMap();
+    private int[] userIds = new int[16];
+    private SparseBitmap[] likes = new SparseBitmap[16];
+    private int userCount;
+    private int maxFilmId;
+
+    public UserLikesIndex(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+        for (int i = 0; i < USER_LOCKS; i++) {
+            userLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Строит карты заново и подменяет ими текущие; вызывается из {@link IndexRebuilder}.
+     */
+    public void rebuild() {
+        Map<Integer, IntSet> likesByUser = filmStorage.getLikedFilmIdsByUser();
+
+        IntIntMap newSlots = new IntIntMap(likesByUser.size());
+        int[] newUserIds = new int[Math.max(16, likesByUser.size())];
+        SparseBitmap[] newLikes = new SparseBitmap[newUserIds.length];
+        int count = 0;
+        int maxId = 0;
+        for (Map.Entry<Integer, IntSet> user : likesByUser.entrySet()) {
+            int[] films = user.getValue().toIntArray();
+            newUserIds[count] = user.getKey();
+            newLikes[count] = SparseBitmap.of(films);
+            newSlots.addTo(user.getKey(), ++count);
+            for (int filmId : films) {
+                maxId = Math.max(maxId, filmId);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            slotsByUser = newSlots;
+            userIds = newUserIds;
+            likes = newLikes;
+            userCount = count;
+            maxFilmId = maxId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Битовые карты лайков построены: {} пользователей, наибольший id фильма {}.", count, maxId);
+    }
+
+    /**
+     * Блокировка, под которой лайк пользователя записывается в БД и применяется к индексам.
+     */
+    public Lock lockFor(int userId) {
+        return userLocks[Math.floorMod(userId, USER_LOCKS)];
+    }
+
+    public void likeAdded(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(userId);
+            likes[slot] = likes[slot].with(filmId);
+            maxFilmId = Math.max(maxFilmId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void likeRemoved(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsByUser.get(userId) - 1;
+            if (slot >= 0) likes[slot] = likes[slot].without(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void userRemoved(int userId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsByUser.get(userId) - 1;
+            if (slot >= 0) likes[slot] = SparseBitmap.EMPTY;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void filmRemoved(int filmId) {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < userCount; slot++) {
+                likes[slot] = likes[slot].without(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Лайки пользователя; пустая карта, если их нет.
+     */
+    public SparseBitmap likes(int userId) {
+        lock.readLock().lock();
+        try {
+            return users.likesOf(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет reader над всеми пользователями под блокировкой чтения: пока он работает, лайки не меняются.
+     */
+    public <T> T read(Function<Users, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(users);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, которые лайкнул каждый из пользователей.
+     */
+    public IntSet getCommonFilms(Collection<Integer> userIds) {
+        List<SparseBitmap> bitmaps = userIds.stream()
+                .map(this::likes)
+                .sorted(Comparator.comparingInt(SparseBitmap::cardinality))
+                .toList();
+        if (bitmaps.isEmpty()) return new IntSet();
+
+        SparseBitmap common = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && common.cardinality() > 0; i++) {
+            common = common.and(bitmaps.get(i));
+        }
+
+        // биты идут по возрастанию, IntSet дописывает их в конец без сдвигов
+        IntSet filmIds = new IntSet();
+        common.forEach(filmIds::add);
+        return filmIds;
+    }
+
+    /**
+     * Пользователи по позициям [0, count()). Годится только внутри {@link #read(Function)}.
+     */
+    public final class Users {
+        public int count() {
+            return userCount;
+        }
+
+        public int userId(int slot) {
+            return userIds[slot];
+        }
+
+        public SparseBitmap likes(int slot) {
+            return likes[slot];
+        }
+
+        /**
+         * Позиция пользователя или -1, если лайков у него не было.
+         */
+        public int slotOf(int userId) {
+            return slotsByUser.get(userId) - 1;
+        }
+
+        public SparseBitmap likesOf(int userId) {
+            int slot = slotOf(userId);
+            return slot < 0 ? SparseBitmap.EMPTY : likes[slot];
+        }
+
+        /**
+         * Наибольший id лайкнутого фильма: столько бит нужно плотной копии карты.
+         */
+        public int maxFilmId() {
+            return maxFilmId;
+        }
+    }
+
+    private int slotOf(int userId) {
+        int slot = slotsByUser.get(userId) - 1;
+        if (slot >= 0) return slot;
+
+        if (userCount == userIds.length) {
+            userIds = Arrays.copyOf(userIds, userCount * 2);
+            likes = Arrays.copyOf(likes, userCount * 2);
+        }
+        userIds[userCount] = userId;
+        likes[userCount] = SparseBitmap.EMPTY;
+        slotsByUser.addTo(userId, userCount + 1);
+        return userCount++;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.SparseBitmap;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Рекомендации user-user по битовым картам лайков из {@link UserLikesIndex}, своего состояния у индекса нет.
+ * <p>
+ * Пользователь сравнивается со всеми остальными (размер пересечения карт через popcount),
+ * сравнение делится на части и идет параллельно в собственном {@link ForkJoinPool}.
+ * Из k ближайших соседей берутся фильмы, которых пользователь еще не лайкал, с весом,
+ * равным близости соседа.
+ */
+@Component
+public class UserNeighbourIndex implements RecommendationEngine {
+    // столько пользователей одна задача сравнивает без дальнейшего деления
+    private static final int CHUNK_SIZE = 16_384;
+
+    private final UserLikesIndex userLikesIndex;
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    @Value("${filmorate.recommendations.neighbours:20}")
+    private int neighbours = 20;
+
+    @Value("${filmorate.recommendations.similarity:JACCARD}")
+    private Similarity similarity = Similarity.JACCARD;
+
+    public UserNeighbourIndex(UserLikesIndex userLikesIndex) {
+        this.userLikesIndex = userLikesIndex;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // по убыванию суммарной близости соседей, лайкнувших фильм
+    @Override
+    public List<Integer> recommend(int userId, int limit) {
+        // задачи пула читают карты лайков, пока этот поток держит блокировку чтения индекса лайков
+        return userLikesIndex.read(users -> {
+            int slot = users.slotOf(userId);
+            if (slot < 0 || users.likes(slot).cardinality() == 0) return List.of();
+
+            SparseBitmap target = users.likes(slot);
+            // карта пользователя разворачивается целиком, остальные сравниваются с ней пословно
+            long[] dense = target.toDense((users.maxFilmId() >>> 6) + 1);
+            NeighbourSearch search = new NeighbourSearch(users, dense, target.cardinality(), slot, 0, users.count());
+            PriorityQueue<Neighbour> nearest = users.count() <= CHUNK_SIZE ? search.compute() : pool.invoke(search);
+
+            // порядок суммирования не должен зависеть от устройства очереди
+            List<Neighbour> sorted = new ArrayList<>(nearest);
+            sorted.sort(Neighbour.WORST_FIRST.reversed());
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (Neighbour neighbour : sorted) {
+                users.likes(neighbour.slot()).forEach(filmId -> {
+                    if (!target.contains(filmId)) scores.merge(filmId, neighbour.similarity(), Double::sum);
+                });
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        });
+    }
+
+    /**
+     * Мера близости двух множеств лайков по размеру пересечения.
+     */
+    public enum Similarity {
+        JACCARD {
+            @Override
+            double of(int common, int size, int otherSize) {
+                return (double) common / (size + otherSize - common);
+            }
+        },
+        OVERLAP {
+            @Override
+            double of(int common, int size, int otherSize) {
+                return (double) common / Math.min(size, otherSize);
+            }
+        };
+
+        abstract double of(int common, int size, int otherSize);
+    }
+
+    private record Neighbour(double similarity, int userId, int slot) {
+        // в голове очереди худший сосед; при равной близости хуже тот, у кого больше id
+        static final Comparator<Neighbour> WORST_FIRST = Comparator.comparingDouble(Neighbour::similarity)
+                .thenComparing(Neighbour::userId, Comparator.reverseOrder());
+    }
+
+    /**
+     * k ближайших соседей среди пользователей [from, to).
+     */
+    private class NeighbourSearch extends RecursiveTask<PriorityQueue<Neighbour>> {
+        private final UserLikesIndex.Users users;
+        private final long[] target;
+        private final int targetSize;
+        private final int self;
+        private final int from;
+        private final int to;
+
+        NeighbourSearch(UserLikesIndex.Users users, long[] target, int targetSize, int self, int from, int to) {
+            this.users = users;
+            this.target = target;
+            this.targetSize = targetSize;
+            this.self = self;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PriorityQueue<Neighbour> compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                NeighbourSearch left = new NeighbourSearch(users, target, targetSize, self, from, middle);
+                left.fork();
+                PriorityQueue<Neighbour> nearest =
+                        new NeighbourSearch(users, target, targetSize, self, middle, to).compute();
+                left.join().forEach(neighbour -> offer(nearest, neighbour));
+                return nearest;
+            }
+
+            PriorityQueue<Neighbour> nearest = new PriorityQueue<>(neighbours + 1, Neighbour.WORST_FIRST);
+            for (int slot = from; slot < to; slot++) {
+                if (slot == self) continue;
+                SparseBitmap other = users.likes(slot);
+                int common = other.andCardinality(target);
+                // сосед, у которого все лайки общие, ничего нового не посоветует
+                if (common == 0 || common == other.cardinality()) continue;
+
+                double value = similarity.of(common, targetSize, other.cardinality());
+                if (nearest.size() < neighbours || value >= nearest.peek().similarity()) {
+                    offer(nearest, new Neighbour(value, users.userId(slot), slot));
+                }
+            }
+            return nearest;
+        }
+
+        private void offer(PriorityQueue<Neighbour> nearest, Neighbour neighbour) {
+            nearest.add(neighbour);
+            if (nearest.size() > neighbours) nearest.poll();
+        }
+    }
+}
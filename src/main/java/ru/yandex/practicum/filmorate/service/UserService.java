@@ -1,30 +1,68 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.PageCursor;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class UserService {
 
     private final UserStorage userStorage;
     private final FeedService feedService;
+    private final FilmLeaderboard filmLeaderboard;
+    private final RecommendationService recommendationService;
+    private final UserLikesIndex userLikesIndex;
+    private final FriendGraph friendGraph;
+    private final FilmReviewTop filmReviewTop;
+    private final FilmCache filmCache;
+    private final IndexRebuilder indexRebuilder;
+
+    @Value("${filmorate.paging.default-page-size:100}")
+    private int defaultPageSize = 100;
+
+    @Value("${filmorate.paging.max-page-size:500}")
+    private int maxPageSize = 500;
+
+    @Value("${filmorate.friends.suggestions.default-limit:10}")
+    private int defaultSuggestionsLimit = 10;
+
+    @Value("${filmorate.friends.suggestions.max-limit:100}")
+    private int maxSuggestionsLimit = 100;
+
+    @Value("${filmorate.friends.path.max-depth:6}")
+    private int maxPathDepth = 6;
 
     public UserService(@Qualifier(value = "userDbStorage") UserStorage userStorage,
-                       @Qualifier(value = "feedService") FeedService feedService) {
+                       @Qualifier(value = "feedService") FeedService feedService,
+                       FilmLeaderboard filmLeaderboard,
+                       RecommendationService recommendationService,
+                       UserLikesIndex userLikesIndex,
+                       FriendGraph friendGraph,
+                       FilmReviewTop filmReviewTop,
+                       FilmCache filmCache,
+                       IndexRebuilder indexRebuilder) {
         this.userStorage = userStorage;
         this.feedService = feedService;
+        this.filmLeaderboard = filmLeaderboard;
+        this.recommendationService = recommendationService;
+        this.userLikesIndex = userLikesIndex;
+        this.friendGraph = friendGraph;
+        this.filmReviewTop = filmReviewTop;
+        this.filmCache = filmCache;
+        this.indexRebuilder = indexRebuilder;
     }
 
     public User createUser(User user) {
@@ -43,42 +81,91 @@ public class UserService {
         return new ArrayList<>(userStorage.getAllUsers());
     }
 
+    public Page<User> getUsersPage(String after, Integer limit) {
+        int pageSize = PageCursor.limit(limit, defaultPageSize, maxPageSize);
+
+        // запрашиваем на одного пользователя больше, чтобы понять, есть ли следующая страница
+        List<User> users = userStorage.getUsersPage(PageCursor.decode(after), pageSize + 1);
+        if (users.size() <= pageSize) {
+            return new Page<>(users, null);
+        }
+        List<User> page = users.subList(0, pageSize);
+        return new Page<>(page, PageCursor.encode(page.getLast().getId()));
+    }
+
     public void addFriend(int userId, int friendId) {
-        checkUser(userId);
-        checkUser(friendId);
-        userStorage.addFriend(userId, friendId);
+        loadUsers(List.of(), userId, friendId);
+        // повторное добавление не трогает БД, где связь уже есть
+        if (!friendGraph.isFriend(userId, friendId)) {
+            Lock writeLock = indexRebuilder.writeLock();
+            writeLock.lock();
+            try {
+                userStorage.addFriend(userId, friendId);
+                friendGraph.friendAdded(userId, friendId);
+            } finally {
+                writeLock.unlock();
+            }
+        }
         feedService.addEvent(new FeedEvent(null, null, userId,
                 EventType.FRIEND, Operation.ADD, friendId));
     }
 
     public void removeFriend(int userId, int friendId) {
-        checkUser(userId);
-        checkUser(friendId);
-        userStorage.removeFriend(userId, friendId);
+        loadUsers(List.of(), userId, friendId);
+        Lock writeLock = indexRebuilder.writeLock();
+        writeLock.lock();
+        try {
+            userStorage.removeFriend(userId, friendId);
+            friendGraph.friendRemoved(userId, friendId);
+        } finally {
+            writeLock.unlock();
+        }
         feedService.addEvent(new FeedEvent(null, null, userId,
                 EventType.FRIEND, Operation.REMOVE, friendId));
     }
 
     public List<User> getFriends(int userId) {
-        User user = getUserById(userId);
-        return user.getFriends().stream()
-                .map(this::getUserById)
-                .collect(Collectors.toList());
+        return loadUsers(friendGraph.getFriends(userId), userId);
     }
 
     public List<User> getCommonFriends(int userId, int otherUserId) {
-        User user = getUserById(userId);
-        User other = getUserById(otherUserId);
-        return user.getFriends().stream()
-                .filter(other.getFriends()::contains)
-                .map(this::getUserById)
-                .collect(Collectors.toList());
+        return loadUsers(friendGraph.getCommonFriends(userId, otherUserId), userId, otherUserId);
+    }
+
+    public List<User> getFriendSuggestions(int userId, Integer limit) {
+        int count = PageCursor.limit(limit, defaultSuggestionsLimit, maxSuggestionsLimit);
+        return loadUsers(friendGraph.suggestFriends(userId, count), userId);
+    }
+
+    // пустой список, если цепочки дружбы не длиннее maxPathDepth нет
+    public List<User> getFriendshipPath(int userId, int otherUserId) {
+        return loadUsers(friendGraph.findPath(userId, otherUserId, maxPathDepth), userId, otherUserId);
     }
 
     public User delete(Integer userIdRequest) {
         User removeUser = userStorage.getUserById(userIdRequest);
-
-        removeUser = userStorage.delete(removeUser);
+        // вместе с пользователем удаляются его лайки: под той же блокировкой, что и лайки в FilmService
+        Lock writeLock = indexRebuilder.writeLock();
+        Lock userLock = userLikesIndex.lockFor(removeUser.getId());
+        writeLock.lock();
+        userLock.lock();
+        try {
+            // их нужно снять и в рейтинге популярности
+            List<Integer> likedFilmIds = filmLeaderboard.getFilmsLikedBy(removeUser.getId());
+
+            removeUser = userStorage.delete(removeUser);
+            likedFilmIds.forEach(filmLeaderboard::likeRemoved);
+            likedFilmIds.forEach(filmCache::invalidate);
+            // стратегии рекомендаций нужны лайки пользователя, они снимаются из UserLikesIndex после
+            recommendationService.userRemoved(userIdRequest);
+            userLikesIndex.userRemoved(userIdRequest);
+            friendGraph.userRemoved(userIdRequest);
+        } finally {
+            userLock.unlock();
+            writeLock.unlock();
+        }
+        feedService.userRemoved(userIdRequest);
+        filmReviewTop.userRemoved(userIdRequest);
 
         return removeUser;
     }
@@ -102,12 +189,32 @@ public class UserService {
     }
 
     public User getUserById(int id) {
-        return userStorage.getUserById(id);
+        // один запрос к БД: друзья берутся из графа
+        return loadUsers(List.of(id), id).getFirst();
     }
 
-    private void checkUser(int userId) {
-        if (userStorage.getUserById(userId) == null) {
-            throw new NotFoundException("User with id " + userId + " not found");
+    /**
+     * Пользователи из ids в том же порядке одним запросом, списки друзей берутся из графа.
+     * Заодно проверяет, что существуют пользователи из requiredIds.
+     */
+    private List<User> loadUsers(Collection<Integer> ids, int... requiredIds) {
+        Set<Integer> allIds = new HashSet<>(ids);
+        for (int id : requiredIds) {
+            allIds.add(id);
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        for (User user : userStorage.getUsersByIds(allIds)) {
+            user.getFriends().addAll(friendGraph.getFriends(user.getId()));
+            usersById.put(user.getId(), user);
+        }
+        for (int id : requiredIds) {
+            if (!usersById.containsKey(id)) {
+                throw new NotFoundException("User with id " + id + " not found");
+            }
         }
+        return ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 }
@@ -3,51 +3,163 @@ package ru.yandex.practicum.filmorate.storage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.archive.FeedArchive;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.ids.IdSequence;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Лента в таблице feed; события старше срока архивации читаются из сегментов {@link FeedArchive}.
+ */
 @Repository
 public class FeedDbStorage implements FeedStorage {
+    private static final Comparator<FeedEvent> BY_POSITION = Comparator.comparing(FeedEvent::getPosition);
+    private static final Comparator<FeedEvent> NEWEST_FIRST = Comparator
+            .comparing(FeedEvent::getTimestamp)
+            .thenComparing(FeedEvent::getEventId)
+            .reversed();
+    private static final String INSERT_EVENT_QUERY = "INSERT INTO feed" +
+            " (event_id, timestamp, user_id, event_type, operation, entity_id, position) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String ADVANCE_POSITION_QUERY = "UPDATE feed_position SET position = position + ? WHERE id = 1";
+    private static final String LAST_POSITION_QUERY = "SELECT position FROM feed_position WHERE id = 1";
+
     private final JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private FeedArchive feedArchive;
+
     @Autowired
     public FeedDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
+    @Transactional
     public void addEvent(FeedEvent event) {
-        Integer nextId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(EVENT_ID), 0) + 1 FROM FEED", Integer.class
-        );
-        event.setEventId(nextId);
-
-        event.setTimestamp(Instant.now().toEpochMilli());
-        String sql = "INSERT INTO feed (event_id, timestamp, user_id, event_type, operation, entity_id)" +
-                " VALUES (?, ?, ?, ?, ?, ?)";
-        jdbcTemplate.update(sql,
+        assignIdentity(event);
+        event.setPosition(reservePositions(1));
+        jdbcTemplate.update(INSERT_EVENT_QUERY,
                 event.getEventId(),
                 event.getTimestamp(),
                 event.getUserId(),
                 event.getEventType().name(),
                 event.getOperation().name(),
-                event.getEntityId());
+                event.getEntityId(),
+                event.getPosition());
     }
 
     @Override
-    public List<FeedEvent> getFeedByUserId(Integer userId) {
-        if (!userExistsById(userId)) {
-            throw new NotFoundException("User with id " + userId + " does not exist");
+    @Transactional
+    public void addEvents(List<FeedEvent> events) {
+        events.forEach(this::assignIdentity);
+        int position = reservePositions(events.size());
+        for (FeedEvent event : events) {
+            event.setPosition(position++);
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT_QUERY, events, events.size(), (ps, event) -> {
+            ps.setInt(1, event.getEventId());
+            ps.setLong(2, event.getTimestamp());
+            ps.setInt(3, event.getUserId());
+            ps.setString(4, event.getEventType().name());
+            ps.setString(5, event.getOperation().name());
+            ps.setInt(6, event.getEntityId());
+            ps.setInt(7, event.getPosition());
+        });
+    }
+
+    // первая из count позиций; строка счетчика остается заблокированной до конца транзакции, поэтому
+    // следующая вставка, в том числе другого экземпляра, получит большие позиции и зафиксируется позже.
+    // Позиция выдается заново при каждой записи: откаченная пачка вернула и свои позиции
+    private int reservePositions(int count) {
+        jdbcTemplate.update(ADVANCE_POSITION_QUERY, count);
+        Integer last = jdbcTemplate.queryForObject(LAST_POSITION_QUERY, Integer.class);
+        return last - count + 1;
+    }
+
+    // время ставит тот, кто принял событие, - при отложенной записи оно раньше момента вставки;
+    // повторная запись того же события сохраняет его id
+    private void assignIdentity(FeedEvent event) {
+        if (event.getEventId() == null) {
+            event.setEventId(idAllocator.nextId(IdSequence.FEED));
+        }
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(Instant.now().toEpochMilli());
         }
-        String sql = "SELECT * FROM feed WHERE user_id = ? ORDER BY timestamp ASC";
-        return jdbcTemplate.query(sql, this::mapRowToFeedEvent, userId);
+    }
+
+    @Override
+    public List<FeedEvent> getFeedPage(int userId, Integer afterPosition, int limit) {
+        // event_id не годится: экземпляры и прямая запись мимо буфера берут id блоками и фиксируют вставки
+        // не по порядку id, и событие с меньшим id появилось бы позади уже выданного курсора.
+        // Позиции видны в порядке фиксации, страница читается диапазоном индекса feed (user_id, position)
+        String sql = "SELECT * FROM feed WHERE user_id = ? AND position > ? ORDER BY position LIMIT ?";
+        List<FeedEvent> hot = jdbcTemplate.query(sql, this::mapRowToFeedEvent, userId,
+                afterPosition == null ? 0 : afterPosition, limit);
+        return merge(hot, feedArchive.getFeedPage(userId, afterPosition, limit), BY_POSITION, limit);
+    }
+
+    @Override
+    public List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+        // читается с конца диапазона индекса feed (user_id, timestamp, event_id)
+        String sql = "SELECT * FROM feed WHERE user_id = ?" +
+                " AND (timestamp < ? OR (timestamp = ? AND event_id < ?))" +
+                " ORDER BY timestamp DESC, event_id DESC LIMIT ?";
+        List<FeedEvent> hot = jdbcTemplate.query(sql, this::mapRowToFeedEvent, userId, beforeTimestamp,
+                beforeTimestamp, beforeEventId, limit);
+        return merge(hot, feedArchive.getEventsBefore(userId, beforeTimestamp, beforeEventId, limit), NEWEST_FIRST,
+                limit);
+    }
+
+    /**
+     * Самые старые события раньше timestamp - следующая порция для архива.
+     */
+    public List<FeedEvent> getEventsOlderThan(long timestamp, int limit) {
+        // выполняется редко и по таблице, которую архиватор держит маленькой, - отдельный индекс по времени
+        // замедлил бы каждую вставку ради этого запроса
+        String sql = "SELECT * FROM feed WHERE timestamp < ? ORDER BY timestamp, event_id LIMIT ?";
+        return jdbcTemplate.query(sql, this::mapRowToFeedEvent, timestamp, limit);
+    }
+
+    public void deleteEvents(int[] eventIds) {
+        String sql = "DELETE FROM feed WHERE event_id = ?";
+        List<Integer> ids = new ArrayList<>(eventIds.length);
+        for (int eventId : eventIds) {
+            ids.add(eventId);
+        }
+        jdbcTemplate.batchUpdate(sql, ids, 1000, (ps, eventId) -> ps.setInt(1, eventId));
+    }
+
+    // архив читается после таблицы: архиватор удаляет строки, только когда их сегмент уже виден,
+    // поэтому событие, ушедшее из таблицы во время чтения, найдется в архиве; попавшее в оба - берется один раз
+    private static List<FeedEvent> merge(List<FeedEvent> hot, List<FeedEvent> cold, Comparator<FeedEvent> order,
+                                         int limit) {
+        if (cold.isEmpty()) return hot;
+        List<FeedEvent> events = new ArrayList<>(Math.min(limit, hot.size() + cold.size()));
+        int h = 0;
+        int c = 0;
+        while (events.size() < limit && (h < hot.size() || c < cold.size())) {
+            int compared = h == hot.size() ? 1 : c == cold.size() ? -1 : order.compare(hot.get(h), cold.get(c));
+            if (compared <= 0) {
+                if (compared == 0) c++;
+                events.add(hot.get(h++));
+            } else {
+                events.add(cold.get(c++));
+            }
+        }
+        return events;
     }
 
     private FeedEvent mapRowToFeedEvent(ResultSet rs, int rowNum) throws SQLException {
@@ -58,12 +170,7 @@ public class FeedDbStorage implements FeedStorage {
         event.setEventType(EventType.valueOf(rs.getString("event_type")));
         event.setOperation(Operation.valueOf(rs.getString("operation")));
         event.setEntityId(rs.getInt("entity_id"));
+        event.setPosition(rs.getInt("position"));
         return event;
     }
-
-    private boolean userExistsById(Integer userId) {
-        String sql = "SELECT COUNT(*) FROM USERS WHERE id = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-        return count > 0;
-    }
 }
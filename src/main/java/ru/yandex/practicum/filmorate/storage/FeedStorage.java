@@ -7,5 +7,19 @@ import java.util.List;
 public interface FeedStorage {
     void addEvent(FeedEvent event);
 
-    List<FeedEvent> getFeedByUserId(Integer userId);
+    /**
+     * Пачка событий одним пакетным запросом и одной транзакцией: либо записаны все, либо ни одно.
+     */
+    void addEvents(List<FeedEvent> events);
+
+    /**
+     * События пользователя в порядке записи, начиная со следующего после позиции afterPosition (null - с начала).
+     * Событие, записанное позже, всегда получает большую позицию, поэтому не окажется позади курсора.
+     */
+    List<FeedEvent> getFeedPage(int userId, Integer afterPosition, int limit);
+
+    /**
+     * События пользователя строго раньше (beforeTimestamp, beforeEventId), от новых к старым.
+     */
+    List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit);
 }
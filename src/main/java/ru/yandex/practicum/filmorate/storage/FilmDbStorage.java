@@ -2,6 +2,11 @@ package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -12,12 +17,17 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.model.FilmSearchEntry;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.ids.IdSequence;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 
@@ -38,137 +48,35 @@ public class FilmDbStorage implements FilmStorage {
             "tt_fg.GENRE_ID AS genre_id,\n" +
             "tt_g.NAME AS genre_name\n";
     private static final String TABLE_PARTS_QUERY_FILMS = "\n" +
+            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
             "LEFT JOIN MPA_RATINGS tt_mr ON tt_mr.ID = tt_f.MPA_ID\n" +
             "LEFT JOIN DIRECTORS tt_d ON tt_d.ID = tt_fd.DIRECTOR_ID\n" +
             "LEFT JOIN LIKES tt_l ON tt_l.FILM_ID = tt_f.ID\n" +
             "LEFT JOIN FILM_GENRES tt_fg ON tt_fg.FILM_ID = tt_f.ID\n" +
             "LEFT JOIN GENRES tt_g ON tt_g.ID = tt_fg.GENRE_ID\n";
-    private static final String FIND_BY_DIRECTOR_SORT_BY_YEAR = TOP_PART_QUERY_FILMS +
+    // для двухфазной загрузки: только скалярные поля фильма и рейтинг, без размножения строк на лайки,
+    // жанры и режиссеров (их догружает FilmDetailsLoader)
+    private static final String TOP_PART_QUERY_FILM_SCALARS = "SELECT\n" +
+            "tt_f.ID AS f_id,\n" +
+            "tt_f.NAME AS f_name,\n" +
+            "tt_f.DESCRIPTION AS f_description,\n" +
+            "tt_f.RELEASE_DATE AS f_release_date,\n" +
+            "tt_f.DURATION AS f_duration,\n" +
+            "tt_f.MPA_ID AS mpa_id,\n" +
+            "tt_mr.NAME AS mr_name\n";
+    private static final String TABLE_PARTS_QUERY_FILM_SCALARS = "\n" +
+            "LEFT JOIN MPA_RATINGS tt_mr ON tt_mr.ID = tt_f.MPA_ID\n";
+    private static final FilmsQuery FIND_BY_DIRECTOR_SORT_BY_YEAR = FilmsQuery.of(
             "FROM FILMS tt_f\n" +
-            "INNER JOIN FILM_DIRECTOR tt_fd ON tt_fd.FILM_ID  = tt_f.ID AND tt_fd.director_id = :director_id\n" +
-            TABLE_PARTS_QUERY_FILMS +
+            "INNER JOIN FILM_DIRECTOR fd_filter ON fd_filter.FILM_ID = tt_f.ID AND fd_filter.director_id = :director_id",
             "ORDER BY\n" +
             "tt_f.RELEASE_DATE,\n" +
-            "tt_f.ID;\n";
-    private static final String FIND_BY_DIRECTOR_SORT_BY_LIKES = "--запрос с несколькими with не сработал в jdbc\n" +
-            TOP_PART_QUERY_FILMS +
-            "FROM films tt_f\n" +
-            "INNER JOIN\n" +
-            "(\n" +
-            "\tSELECT film_isLike.id AS film_id, sum(film_isLike.isLike) AS sumLike\n" +
-            "\tFROM\n" +
-            "\t(\n" +
-            "\t\tSELECT f.id,\n" +
-            "\t\t\tCASE\n" +
-            "\t\t\t\tWHEN l.film_id IS NULL THEN 0\n" +
-            "\t\t\t\tELSE 1\n" +
-            "\t\t\tEND AS isLike\n" +
-            "\t\tFROM FILMS f\n" +
-            "\t\tINNER JOIN FILM_DIRECTOR fd ON fd.film_id = f.id AND fd.director_id = :director_id\n" +
-            "\t\tLEFT JOIN LIKES l ON l.film_id = f.id\n" +
-            "\t) AS film_isLike\n" +
-            "\tGROUP BY film_isLike.id) AS film_sumLike\n" +
-            "ON film_sumLike.film_id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY film_sumLike.sumLike DESC;\n";    //в задании сортировать по годам, в тестах обратный порядок
-    private static final String FIND_BY_SEARCH_IN_TITLE = "--запрос с несколькими with не сработал в jdbc\n" +
-            TOP_PART_QUERY_FILMS +
-            "FROM films tt_f\n" +
-            "INNER JOIN\n" +
-            "(\n" +
-            "\tSELECT film_isLike.film_id AS film_id, sum(film_isLike.isLike) AS sumLike\n" +
-            "\tFROM\n" +
-            "\t(\n" +
-            "\t\tSELECT f_search.film_id,\n" +
-            "\t\tCASE\n" +
-            "\t\t\tWHEN l.film_id IS NULL THEN 0\n" +
-            "\t\t\tELSE 1\n" +
-            "\t\tEND AS isLike\n" +
-            "\t\tFROM\n" +
-            "\t\t(\n" +
-            "\t\t\tSELECT f.id AS film_id\n" +
-            "\t\t\tFROM FILMS f\n" +
-            "\t\t\tWHERE f.name ILIKE concat('%', :searchQuery, '%')\n" +
-            "\t\t) AS f_search\n" +
-            "\t\tLEFT JOIN LIKES l ON l.film_id = f_search.film_id\n" +
-            "\t) AS film_isLike\n" +
-            "\tGROUP BY film_isLike.film_id\n" +
-            ") AS film_sumLike\n" +
-            "ON film_sumLike.film_id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY film_sumLike.sumLike DESC;\n";
-    private static final String FIND_BY_SEARCH_IN_DIRECTOR_NAME = "--запрос с несколькими with не сработал в jdbc\n" +
-            TOP_PART_QUERY_FILMS +
+            "tt_f.ID;\n");
+    // сортировка по лайкам идет по счетчику films.like_count (индекс films_like_count_idx)
+    private static final FilmsQuery FIND_BY_DIRECTOR_SORT_BY_LIKES = FilmsQuery.of(
             "FROM films tt_f\n" +
-            "INNER JOIN\n" +
-            "(\n" +
-            "\tSELECT film_isLike.film_id AS film_id, sum(film_isLike.isLike) AS sumLike\n" +
-            "\tFROM\n" +
-            "\t(\n" +
-            "\t\tSELECT fd.film_id,\n" +
-            "\t\tCASE\n" +
-            "\t\t\tWHEN l.film_id IS NULL THEN 0\n" +
-            "\t\t\tELSE 1\n" +
-            "\t\tEND AS isLike\n" +
-            "\t\tFROM\n" +
-            "\t\t(\n" +
-            "\t\t\tSELECT d.id AS director_id\n" +
-            "\t\t\tFROM DIRECTORS AS d\n" +
-            "\t\t\tWHERE d.name ILIKE concat('%', :searchQuery, '%')\n" +
-            "\t\t) AS d_search\n" +
-            "\t\tINNER JOIN FILM_DIRECTOR AS fd ON fd.director_id = d_search.director_id\n" +
-            "\t\tLEFT JOIN LIKES l ON l.film_id = fd.film_id\n" +
-            "\t) AS film_isLike\n" +
-            "\tGROUP BY film_isLike.film_id\n" +
-            ") AS film_sumLike\n" +
-            "ON film_sumLike.film_id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY film_sumLike.sumLike DESC;\n";
-    private static final String FIND_BY_SEARCH_IN_TITLE_AND_DIRECTOR_NAME = "--запрос с несколькими with не сработал в jdbc\n" +
-            TOP_PART_QUERY_FILMS +
-            "FROM films tt_f\n" +
-            "INNER JOIN\n" +
-            "(\n" +
-            "\tSELECT film_isLike.film_id AS film_id, sum(film_isLike.isLike) AS sumLike\n" +
-            "\tFROM\n" +
-            "\t(\n" +
-            "\t\tSELECT f_search.film_id,\n" +
-            "\t\tCASE\n" +
-            "\t\t\tWHEN l.film_id IS NULL THEN 0\n" +
-            "\t\t\tELSE 1\n" +
-            "\t\tEND AS isLike\n" +
-            "\t\tFROM\n" +
-            "\t\t(\n" +
-            "\t\t\tSELECT fd.film_id\n" +
-            "\t\t\tFROM\n" +
-            "\t\t\t(\n" +
-            "\t\t\t\tSELECT d.id AS director_id\n" +
-            "\t\t\t\tFROM DIRECTORS AS d\n" +
-            "\t\t\t\tWHERE d.name ILIKE concat('%', :searchQuery, '%')\n" +
-            "\t\t\t) AS d_search\n" +
-            "\t\t\tINNER JOIN FILM_DIRECTOR AS fd ON fd.director_id = d_search.director_id\n" +
-            "\t\t\t\n" +
-            "\t\t\tUNION\n" +
-            "\t\t\t\n" +
-            "\t\t\tSELECT f_search.film_id\n" +
-            "\t\t\tFROM\n" +
-            "\t\t\t(\n" +
-            "\t\t\t\tSELECT f.id AS film_id\n" +
-            "\t\t\t\tFROM FILMS f\n" +
-            "\t\t\t\tWHERE f.name ILIKE concat('%', :searchQuery, '%')\n" +
-            "\t\t\t) AS f_search\n" +
-            "\t\t) AS f_search\n" +
-            "\t\tLEFT JOIN LIKES l ON l.film_id = f_search.film_id\n" +
-            "\t) AS film_isLike\n" +
-            "\tGROUP BY film_isLike.film_id\n" +
-            ") AS film_sumLike\n" +
-            "ON film_sumLike.film_id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY film_sumLike.sumLike DESC;\n";
+            "INNER JOIN FILM_DIRECTOR fd_filter ON fd_filter.film_id = tt_f.id AND fd_filter.director_id = :director_id",
+            "ORDER BY tt_f.like_count DESC, tt_f.id;\n");    //в задании сортировать по годам, в тестах обратный порядок
     private static final String DELETE_FILM_IN_DIRECTORS_QUERY = "DELETE FROM film_director WHERE film_id = :film_id;";
     private static final String DELETE_FILM_GENRES_QUERY = "DELETE FROM film_genres WHERE film_id = :film_id;";
     private static final String DELETE_FILM_LIKES_QUERY = "DELETE FROM likes WHERE film_id = :film_id;";
@@ -177,71 +85,44 @@ public class FilmDbStorage implements FilmStorage {
             "\t(SELECT id FROM Reviews WHERE film_id = :film_id);\t--удаляем оценки отзывов к фильму\n";
     private static final String DELETE_FILM_IN_REVIEWS = "DELETE FROM REVIEWS WHERE film_id = :film_id;";
     private static final String DELETE_FILM_QUERY = "DELETE FROM films WHERE id = :film_id;";
-    private static final String FIND_COMMON = "\n" +
-            TOP_PART_QUERY_FILMS +
-            "FROM films tt_f\n" +
-            "INNER JOIN\n" +
-            "(\n" +
-            "SELECT f.id,\n" +
-            "COUNT(DISTINCT fl.user_id) AS popularity\n" +
-            "FROM films f\n" +
-            "JOIN likes fl ON f.id = fl.film_id\n" +
-            "WHERE fl.user_id IN (?, ?)\n" +
-            "GROUP BY f.id\n" +
-            "HAVING COUNT(DISTINCT fl.user_id) = 2) AS filmPopularity\n" +
-            "ON filmPopularity.id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY popularity DESC\n";
-    private static final String FIND_RECOMMENDATIONS = TOP_PART_QUERY_FILMS + """
-            FROM films tt_f
-            JOIN (
-                SELECT l.film_id
-                FROM likes l
-                JOIN (
-                    SELECT l.user_id
-                    FROM likes l
-                    JOIN (
-                        SELECT film_id
-                        FROM likes
-                        WHERE user_id = :user_id
-                    ) ulf ON l.film_id = ulf.film_id
-                    WHERE l.user_id <> :user_id
-                    GROUP BY l.user_id
-                    ORDER BY COUNT(*) DESC
-                    LIMIT 1
-                ) su ON l.user_id = su.user_id
-                WHERE l.film_id NOT IN (
-                    SELECT film_id
-                    FROM likes
-                    WHERE user_id = :user_id
-                )
-            ) recommended_film_ids ON tt_f.id = recommended_film_ids.film_id
-            LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id
-            """ + TABLE_PARTS_QUERY_FILMS + ";";
-    private static final String FIND_POPULAR = TOP_PART_QUERY_FILMS +
+    private static final FilmsQuery FIND_BY_IDS = FilmsQuery.of(
+            "FROM films tt_f",
+            "WHERE tt_f.id IN (:ids)\n" +
+            "ORDER BY tt_f.id;\n");
+    private static final FilmsQuery FIND_BY_IDS_ORDER_BY_LIKES = FilmsQuery.of(
+            "FROM films tt_f",
+            "WHERE tt_f.id IN (:ids)\n" +
+            "ORDER BY tt_f.like_count DESC, tt_f.id;\n");
+    // LIMIT во вложенном запросе: в режиме JOIN строк на фильм столько, сколько у него лайков, жанров и режиссеров
+    private static final FilmsQuery FIND_PAGE = FilmsQuery.of(
             "FROM films AS tt_f\n" +
             "INNER JOIN\n" +
             "(\n" +
-            "\tSELECT selectionFilms.id, COUNT(l.user_id) AS countLikes \n" +
-            "\tFROM\n" +
-            "\t(\n" +
-            "\t\tSELECT f.id\n" +
-            "\t\tFROM films f\n" +
-            "\t\ttt_SELECT_GENRE\n" +
-            "\t\tWHERE TRUE\n" +
-            "\t\ttt_SELECT_YEAR\n" +
-            "\t\tGROUP BY f.ID\n" +
-            "\t) AS selectionFilms\n" +
-            "\tLEFT JOIN LIKES l ON l.FILM_ID = selectionFilms.ID\n" +
-            "\tGROUP BY selectionFilms.id\n" +
-            "\tORDER BY COUNT(l.user_id) DESC\n" +
-            "\tLIMIT :nc\n" +
-            ") AS resultFilms ON resultFilms.id = tt_f.id\n" +
-            "LEFT JOIN FILM_DIRECTOR tt_fd ON tt_fd.film_id = tt_f.id\n" +
-            TABLE_PARTS_QUERY_FILMS +
-            "ORDER BY resultFilms.countLikes DESC\n" +
-            ";\n";
+            "\tSELECT f.id\n" +
+            "\tFROM films f\n" +
+            "\tWHERE f.id > :after_id\n" +
+            "\tORDER BY f.id\n" +
+            "\tLIMIT :limit\n" +
+            ") AS pageFilms ON pageFilms.id = tt_f.id",
+            "ORDER BY tt_f.id;\n");
+    private static final String INSERT_LIKE_QUERY = "MERGE INTO likes l\n" +
+            "USING (VALUES (:film_id, :user_id)) AS v (film_id, user_id)\n" +
+            "ON l.film_id = v.film_id AND l.user_id = v.user_id\n" +
+            "WHEN NOT MATCHED THEN INSERT (film_id, user_id) VALUES (v.film_id, v.user_id);";
+    private static final String DELETE_LIKE_QUERY = "DELETE FROM likes WHERE film_id = :film_id AND user_id = :user_id;";
+    private static final String INCREMENT_LIKE_COUNT_QUERY = "UPDATE films SET like_count = like_count + 1" +
+            " WHERE id = :film_id;";
+    private static final String DECREMENT_LIKE_COUNT_QUERY = "UPDATE films SET like_count = like_count - 1" +
+            " WHERE id = :film_id;";
+    private static final String RECONCILE_LIKE_COUNTS_QUERY = "UPDATE films f\n" +
+            "SET like_count = (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.id)\n" +
+            "WHERE like_count <> (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.id);";
+    private static final String FIND_LIKED_FILM_IDS_QUERY = "SELECT film_id FROM likes WHERE user_id = ?";
+    private static final String FIND_LIKES_BY_USER_QUERY = "SELECT user_id, film_id FROM likes ORDER BY user_id, film_id";
+    private static final String FIND_FILMS_POPULARITY_QUERY = "SELECT id, release_date, like_count FROM films";
+    private static final String FIND_FILM_GENRE_IDS_QUERY = "SELECT film_id, genre_id FROM film_genres";
+    private static final String FIND_FILM_NAMES_QUERY = "SELECT id, name FROM films";
+    private static final String FIND_FILM_DIRECTOR_IDS_QUERY = "SELECT film_id, director_id FROM film_director";
 
     private final JdbcTemplate jdbcTemplate;
 
@@ -249,10 +130,22 @@ public class FilmDbStorage implements FilmStorage {
     protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     @Autowired
-    private DirectorDbStorage directorDbStorage;
+    FilmsResultSetExtractor filmsResultSetExtractor;
+
+    @Autowired
+    private FilmRowMapper filmRowMapper;
 
     @Autowired
-    FilmsResultSetExtractor filmsResultSetExtractor;
+    private FilmDetailsLoader filmDetailsLoader;
+
+    @Value("${filmorate.films.hydration:TWO_PHASE}")
+    private FilmsHydration hydration = FilmsHydration.TWO_PHASE;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private ReferenceData referenceData;
 
     @Autowired
     public FilmDbStorage(JdbcTemplate jdbcTemplate) {
@@ -261,39 +154,20 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public Film createFilm(Film film) {
-        if (film.getMpa() != null && film.getMpa().getId() != null && !mpaExistsById(film.getMpa().getId())) {
-            throw new NotFoundException("Mpa does not exist");
-        }
-
-        if (!film.getGenres().isEmpty() && !genresExistById(film.getGenres())) {
-            throw new NotFoundException("Genres do not exist");
+        if (film.getMpa() != null && film.getMpa().getId() != null) {
+            film.setMpa(resolveMpa(film.getMpa()));
         }
+        film.setGenres(resolveGenres(film.getGenres()));
+        film.setDirectors(new HashSet<>(resolveDirectors(film.getDirectors())));
 
-        List<Long> longListDirectors = film.getDirectors().stream()
-                .map(Director::getId)
-                .filter(id -> id != 0)
-                .toList();
-        Collection<Director> directorCollection = directorDbStorage.getAllByParameterId(longListDirectors);
-        if (longListDirectors.size() != directorCollection.size())
-            throw new NotFoundException("Не найдены режиссеры по списку.");
-        film.setDirectors(new HashSet<>(directorCollection));
-
-        Integer nextId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(id), 0) + 1 FROM films", Integer.class
-        );
-        film.setId(nextId);
+        film.setId(idAllocator.nextId(IdSequence.FILMS));
 
         String sql = "INSERT INTO films (id, name, description, release_date, duration, mpa_id)" +
                 " VALUES (?, ?, ?, ?, ?, ?)";
         jdbcTemplate.update(sql, film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
                 film.getDuration(), film.getMpa() == null ? 1 : film.getMpa().getId());
 
-        for (Genre genre : film.getGenres()) {
-            jdbcTemplate.update("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)",
-                    film.getId(), genre.getId());
-        }
-        List<Genre> newGenres = film.getGenres().stream().sorted(Comparator.comparing(Genre::getId)).toList();
-        film.setGenres(new LinkedHashSet<>(newGenres));
+        insertGenres(film);
 
         // установим режиссеров фильма
         final String insertFilmDirectorsQuery = "INSERT INTO film_director (film_id, director_id) VALUES (?, ?);";
@@ -326,21 +200,11 @@ public class FilmDbStorage implements FilmStorage {
             throw new NotFoundException("Film does not exist");
         }
 
-        if (film.getMpa() != null && !mpaExistsById(film.getMpa().getId())) {
-            throw new NotFoundException("Mpa does not exist");
-        }
-
-        if (!genresExistById(film.getGenres())) {
-            throw new NotFoundException("Genres do not exist");
+        if (film.getMpa() != null) {
+            film.setMpa(resolveMpa(film.getMpa()));
         }
-
-        List<Long> longListDirectors = film.getDirectors().stream()
-                .map(Director::getId)
-                .filter(id -> id != 0)
-                .toList();
-        Collection<Director> directorCollection = directorDbStorage.getAllByParameterId(longListDirectors);
-        if (longListDirectors.size() != directorCollection.size())
-            throw new NotFoundException("Не найдены режиссеры по списку.");
+        film.setGenres(resolveGenres(film.getGenres()));
+        List<Director> directorCollection = resolveDirectors(film.getDirectors());
 
         String sql = "UPDATE films SET name = ?, description = ?, release_date = ?," +
                 " duration = ?, mpa_id = ? WHERE id = ?";
@@ -348,10 +212,7 @@ public class FilmDbStorage implements FilmStorage {
                 film.getDuration(), film.getMpa().getId(), film.getId());
 
         jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", film.getId());
-        for (Genre genre : film.getGenres()) {
-            jdbcTemplate.update("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)",
-                    film.getId(), genre.getId());
-        }
+        insertGenres(film);
 
         // обновляем данные о режиссерах
         final String deleteFilmGenresQuery = "DELETE FROM film_director WHERE film_id = ?;";
@@ -359,49 +220,17 @@ public class FilmDbStorage implements FilmStorage {
         jdbcTemplate.update(deleteFilmGenresQuery, film.getId());   // удаляем записи о текущих режиссерах фильма
         film.setDirectors(new HashSet<>(directorCollection));
         jdbcTemplate.batchUpdate(insertFilmGenresQuery, getBatchPreparedStatementSetter(film)); // вставляем записи о новых режиссерах
-        List<Genre> newGenres = film.getGenres().stream().sorted(Comparator.comparing(Genre::getId)).toList();
-        film.setGenres(new LinkedHashSet<>(newGenres));
 
         return film;
     }
 
-    public List<Film> getAllFilms() {
-        String filmSql = """
-                    SELECT f.*, m.name AS mpa_name
-                    FROM films f
-                    JOIN mpa_ratings m ON f.mpa_id = m.id
-                """;
-
-        List<Film> films = jdbcTemplate.query(filmSql, (rs, rowNum) -> {
-            Film film = new Film();
-            film.setId(rs.getInt("id"));
-            film.setName(rs.getString("name"));
-            film.setDescription(rs.getString("description"));
-            film.setReleaseDate(rs.getDate("release_date").toLocalDate());
-            film.setDuration(rs.getInt("duration"));
-            film.setMpa(new MpaRating(rs.getInt("mpa_id"), rs.getString("mpa_name")));
-            film.setDirectors(new HashSet<>(directorDbStorage.getDirectorsByFilm(film)));   // режиссеры фильма
-            return film;
-        });
-
-        Map<Integer, Set<Genre>> genresMap = getGenresForFilms();
-        Map<Integer, Set<Integer>> likesMap = getLikesForFilms();
-
-        for (Film film : films) {
-            film.setGenres(genresMap.getOrDefault(film.getId(), Set.of()));
-            film.getLikes().addAll(likesMap.getOrDefault(film.getId(), Set.of()));
-        }
-
-        return films;
-    }
-
     @Override
-    public Collection<Film> getFilmsRecommendations(int userId) {
-        log.info("searching for recommendations for user with id = {}", userId);
-
-        SqlParameterSource parameters = new MapSqlParameterSource("user_id", userId);
+    public List<Film> getFilmsPage(Integer afterId, int limit) {
+        // keyset-пагинация: ищем по первичному ключу вместо OFFSET, поэтому дальние страницы не дороже первой
+        SqlParameterSource parameters = new MapSqlParameterSource("after_id", afterId == null ? 0 : afterId)
+                .addValue("limit", limit);
 
-        return namedParameterJdbcTemplate.query(FIND_RECOMMENDATIONS, parameters, filmsResultSetExtractor);
+        return findFilms(FIND_PAGE, parameters);
     }
 
     @Override
@@ -410,7 +239,7 @@ public class FilmDbStorage implements FilmStorage {
 
         SqlParameterSource parameters = new MapSqlParameterSource("director_id", director.getId());
 
-        return namedParameterJdbcTemplate.query(FIND_BY_DIRECTOR_SORT_BY_YEAR, parameters, filmsResultSetExtractor);
+        return findFilms(FIND_BY_DIRECTOR_SORT_BY_YEAR, parameters);
     }
 
     @Override
@@ -419,147 +248,129 @@ public class FilmDbStorage implements FilmStorage {
 
         SqlParameterSource parameters = new MapSqlParameterSource("director_id", director.getId());
 
-        return namedParameterJdbcTemplate.query(FIND_BY_DIRECTOR_SORT_BY_LIKES, parameters, filmsResultSetExtractor);
+        return findFilms(FIND_BY_DIRECTOR_SORT_BY_LIKES, parameters);
     }
 
     @Override
-    public List<Film> getFilmsBySearchInTitle(String query) {
-        log.info("Запрошены фильмы в наименовании которых есть {}.", query);
-
-        SqlParameterSource parameters = new MapSqlParameterSource("searchQuery", query);
-
-        return namedParameterJdbcTemplate.query(FIND_BY_SEARCH_IN_TITLE, parameters, filmsResultSetExtractor);
+    public Film getFilmById(Integer id) {
+        // фильм вместе с рейтингом, жанрами, лайками и режиссерами получаем одним запросом
+        List<Film> films = getFilmsByIds(List.of(id));
+        if (films.isEmpty()) {
+            throw new NotFoundException("Film with id " + id + " not found");
+        }
+        return films.getFirst();
     }
 
     @Override
-    public List<Film> getFilmsBySearchInNameDirector(String query) {
-        log.info("Запрошены фильмы, у которых в имени режиссеров есть {}.", query);
+    public List<Film> getFilmsByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
 
-        SqlParameterSource parameters = new MapSqlParameterSource("searchQuery", query);
+        SqlParameterSource parameters = new MapSqlParameterSource("ids", ids);
 
-        return namedParameterJdbcTemplate.query(FIND_BY_SEARCH_IN_DIRECTOR_NAME, parameters, filmsResultSetExtractor);
+        return findFilms(FIND_BY_IDS, parameters);
     }
 
     @Override
-    public List<Film> getFilmsBySearchInTitleAndNameDirector(String query) {
-        log.info("Запрошены фильмы, у которых в наименовании или имени режиссеров есть {}.", query);
+    public List<Film> getFilmsByIdsOrderByLikes(Collection<Integer> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
 
-        SqlParameterSource parameters = new MapSqlParameterSource("searchQuery", query);
+        SqlParameterSource parameters = new MapSqlParameterSource("ids", ids);
 
-        return namedParameterJdbcTemplate.query(FIND_BY_SEARCH_IN_TITLE_AND_DIRECTOR_NAME, parameters, filmsResultSetExtractor);
+        return findFilms(FIND_BY_IDS_ORDER_BY_LIKES, parameters);
     }
 
     @Override
-    public Film getFilmById(Integer id) {
-        if (!filmExistsById(id)) {
-            throw new NotFoundException("Film with id " + id + " not found");
+    @Transactional
+    public boolean addLike(int filmId, int userId) {
+        SqlParameterSource parameters = new MapSqlParameterSource("film_id", filmId)
+                .addValue("user_id", userId);
+
+        // MERGE вставляет строку только если лайка еще нет, поэтому повторный лайк счетчик не меняет
+        int inserted;
+        try {
+            inserted = namedParameterJdbcTemplate.update(INSERT_LIKE_QUERY, parameters);
+        } catch (DuplicateKeyException e) {
+            inserted = 0;   // тот же лайк параллельно вставил другой запрос
+        }
+        if (inserted > 0) {
+            namedParameterJdbcTemplate.update(INCREMENT_LIKE_COUNT_QUERY, parameters);
         }
-        return jdbcTemplate.queryForObject("SELECT * FROM films WHERE id = ?", this::mapRowToFilm, id);
+        return inserted > 0;
     }
 
     @Override
-    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
-        MapSqlParameterSource parameters = new MapSqlParameterSource("nc",
-                count != null ? count : Integer.MAX_VALUE);
-
-        String query = FIND_POPULAR;
-
-        if (genreId != null) {
-            query = query.replaceFirst("tt_SELECT_GENRE",
-                    "\t\tINNER JOIN film_genres fg ON fg.film_id = f.id AND fg.genre_id = :genreId --строка при условии передачи параметра жанра\n");
-
-            parameters.addValue("genreId", genreId);
-        } else query = query.replaceFirst("tt_SELECT_GENRE", "");
-
-        if (year != null) {
-            query = query.replaceFirst("tt_SELECT_YEAR", "\t\t\tAND EXTRACT(YEAR FROM f.release_date) = :year --строка при условии передачи параметра года\n");
-
-            parameters.addValue("year", year);
-        } else query = query.replaceFirst("tt_SELECT_YEAR", "");
+    @Transactional
+    public boolean removeLike(int filmId, int userId) {
+        SqlParameterSource parameters = new MapSqlParameterSource("film_id", filmId)
+                .addValue("user_id", userId);
 
-        return namedParameterJdbcTemplate.query(query, parameters, filmsResultSetExtractor);
+        if (namedParameterJdbcTemplate.update(DELETE_LIKE_QUERY, parameters) > 0) {
+            namedParameterJdbcTemplate.update(DECREMENT_LIKE_COUNT_QUERY, parameters);
+            return true;
+        }
+        return false;
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
-        String sql = "MERGE INTO likes (film_id, user_id) VALUES (?, ?)";
-        jdbcTemplate.update(sql, filmId, userId);
+    public List<Integer> getLikedFilmIds(int userId) {
+        return jdbcTemplate.queryForList(FIND_LIKED_FILM_IDS_QUERY, Integer.class, userId);
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
-        String sql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
+    public Map<Integer, IntSet> getLikedFilmIdsByUser() {
+        Map<Integer, IntSet> likes = new HashMap<>();
+        jdbcTemplate.query(FIND_LIKES_BY_USER_QUERY, rs -> {
+            likes.computeIfAbsent(rs.getInt("user_id"), id -> new IntSet()).add(rs.getInt("film_id"));
+        });
+        return likes;
     }
 
-    private Map<Integer, Set<Genre>> getGenresForFilms() {
-        return jdbcTemplate.query("""
-                    SELECT fg.film_id, g.id, g.name
-                    FROM film_genres fg
-                    JOIN genres g ON fg.genre_id = g.id
-                """, rs -> {
-            Map<Integer, Set<Genre>> map = new HashMap<>();
-            while (rs.next()) {
-                int filmId = rs.getInt("film_id");
-                Genre genre = new Genre(rs.getInt("id"), rs.getString("name"));
-                map.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
-            }
-            return map;
+    @Override
+    public List<FilmSearchEntry> getFilmsSearchEntries() {
+        Map<Integer, Set<Long>> directorIds = new HashMap<>();
+        jdbcTemplate.query(FIND_FILM_DIRECTOR_IDS_QUERY, rs -> {
+            directorIds.computeIfAbsent(rs.getInt("film_id"), id -> new HashSet<>()).add(rs.getLong("director_id"));
+        });
+
+        return jdbcTemplate.query(FIND_FILM_NAMES_QUERY, (rs, rowNum) -> {
+            int filmId = rs.getInt("id");
+            return new FilmSearchEntry(filmId, rs.getString("name"), directorIds.getOrDefault(filmId, Set.of()));
         });
     }
 
-    private Map<Integer, Set<Integer>> getLikesForFilms() {
-        return jdbcTemplate.query("""
-                    SELECT film_id, user_id
-                    FROM likes
-                """, rs -> {
-            Map<Integer, Set<Integer>> map = new HashMap<>();
-            while (rs.next()) {
-                int filmId = rs.getInt("film_id");
-                int userId = rs.getInt("user_id");
-                map.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-            }
-            return map;
+    @Override
+    public List<FilmPopularity> getFilmsPopularity() {
+        Map<Integer, Set<Integer>> genreIds = new HashMap<>();
+        jdbcTemplate.query(FIND_FILM_GENRE_IDS_QUERY, rs -> {
+            genreIds.computeIfAbsent(rs.getInt("film_id"), id -> new HashSet<>()).add(rs.getInt("genre_id"));
+        });
+
+        return jdbcTemplate.query(FIND_FILMS_POPULARITY_QUERY, (rs, rowNum) -> {
+            int filmId = rs.getInt("id");
+            return new FilmPopularity(filmId, rs.getInt("like_count"),
+                    rs.getDate("release_date").toLocalDate().getYear(),
+                    genreIds.getOrDefault(filmId, Set.of()));
         });
     }
 
-    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
-        Film film = new Film();
-        log.info("setting id");
-        film.setId(rs.getInt("id"));
-        film.setName(rs.getString("name"));
-        film.setDescription(rs.getString("description"));
-        film.setReleaseDate(rs.getDate("release_date").toLocalDate());
-        film.setDuration(rs.getInt("duration"));
-
-        log.info("searching for mpa with id = {}", rs.getInt("mpa_id"));
-
-        MpaRating mpa = jdbcTemplate.queryForObject(
-                "SELECT * FROM mpa_ratings WHERE id = ?",
-                (mprs, i) -> new MpaRating(mprs.getInt("id"), mprs.getString("name")),
-                rs.getInt("mpa_id")
-        );
-        film.setMpa(mpa);
-
-        List<Genre> genres = jdbcTemplate.query(
-                "SELECT g.* FROM genres g " +
-                        "JOIN film_genres fg ON g.id = fg.genre_id " +
-                        "WHERE fg.film_id = ?",
-                (grs, i) -> new Genre(grs.getInt("id"), grs.getString("name")),
-                film.getId()
-        );
-        film.setGenres(new HashSet<>(genres));
-
-        List<Integer> likes = jdbcTemplate.query(
-                "SELECT user_id FROM likes WHERE film_id = ?",
-                (lrs, i) -> lrs.getInt("user_id"),
-                film.getId()
-        );
-        film.getLikes().addAll(likes);
-
-        film.setDirectors(new HashSet<>(directorDbStorage.getDirectorsByFilm(film)));   // режиссеры фильма
+    /**
+     * Пересчитывает films.like_count по таблице likes.
+     *
+     * @return количество фильмов, у которых счетчик расходился с таблицей лайков
+     */
+    @Order(0)   // до построения рейтинга популярности
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileLikeCountsOnStartup() {
+        // лайки могли попасть в БД мимо addLike (скрипты, ручные правки)
+        reconcileLikeCounts();
+    }
 
-        return film;
+    @Transactional
+    public int reconcileLikeCounts() {
+        int fixed = jdbcTemplate.update(RECONCILE_LIKE_COUNTS_QUERY);
+        if (fixed > 0) log.warn("Счетчики лайков пересчитаны у {} фильмов.", fixed);
+
+        return fixed;
     }
 
     private boolean filmExistsById(Integer id) {
@@ -568,44 +379,48 @@ public class FilmDbStorage implements FilmStorage {
         return count > 0;
     }
 
-    private boolean mpaExistsById(Integer id) {
-        String sql = "SELECT COUNT(*) FROM MPA_RATINGS WHERE id = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
-        return count > 0;
+    // справочники проверяются по памяти, в фильм ставятся их общие экземпляры
+    private MpaRating resolveMpa(MpaRating mpa) {
+        MpaRating rating = mpa.getId() == null ? null : referenceData.rating(mpa.getId());
+        if (rating == null) {
+            throw new NotFoundException("Mpa does not exist");
+        }
+        return rating;
     }
 
-    private boolean genresExistById(Set<Genre> genres) {
+    private Set<Genre> resolveGenres(Set<Genre> genres) {
+        List<Genre> resolved = new ArrayList<>(genres.size());
         for (Genre genre : genres) {
             if (genre.getId() == 0) {
+                resolved.add(genre);
                 continue;
             }
-            String sql = "SELECT COUNT(*) FROM GENRES WHERE id = ?";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, genre.getId());
-            if (count <= 0) {
-                return false;
+            Genre known = referenceData.genre(genre.getId());
+            if (known == null) {
+                throw new NotFoundException("Genres do not exist");
             }
+            resolved.add(known);
         }
-        return true;
+        resolved.sort(Comparator.comparing(Genre::getId));
+        return new LinkedHashSet<>(resolved);
     }
 
-    @Override
-    public List<Film> getCommonFilms(int userId, int friendId) {
-        return jdbcTemplate.query(FIND_COMMON, filmsResultSetExtractor, userId, friendId);
+    private List<Director> resolveDirectors(Set<Director> directors) {
+        List<Long> ids = directors.stream()
+                .map(Director::getId)
+                .filter(id -> id != 0)
+                .toList();
+        List<Director> found = referenceData.directors(ids);
+        if (ids.size() != found.size())
+            throw new NotFoundException("Не найдены режиссеры по списку.");
+        return found;
     }
 
-    public Collection<Film> getLikedFilms(int userId) {
-        String sql = "SELECT film_id FROM likes WHERE user_id = ?";
-        List<Integer> filmIds = jdbcTemplate.queryForList(sql, Integer.class, userId);
-        Collection<Film> likedFilms = new HashSet<>();
-        for (Integer filmId : filmIds) {
-            try {
-                Film film = getFilmById(filmId);
-                likedFilms.add(film);
-            } catch (NotFoundException e) {
-                log.warn("Фильм с ID {} был лайкнут, но не найден в БД", filmId);
-            }
-        }
-        return likedFilms;
+    private void insertGenres(Film film) {
+        List<Object[]> rows = film.getGenres().stream()
+                .map(genre -> new Object[]{film.getId(), genre.getId()})
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", rows);
     }
 
     @Override
@@ -633,4 +448,26 @@ public class FilmDbStorage implements FilmStorage {
 
         return film;
     }
+
+    private List<Film> findFilms(FilmsQuery query, SqlParameterSource parameters) {
+        if (hydration == FilmsHydration.JOIN) {
+            return namedParameterJdbcTemplate.query(query.joined(), parameters, filmsResultSetExtractor);
+        }
+
+        // сначала упорядоченный список фильмов без дочерних связей, затем по запросу на каждую связь
+        List<Film> films = namedParameterJdbcTemplate.query(query.scalars(), parameters, filmRowMapper);
+        return filmDetailsLoader.load(films);
+    }
+
+    /**
+     * Запрос списка фильмов в двух формах: с соединением всех дочерних таблиц (для FilmsResultSetExtractor)
+     * и только со скалярными полями (для двухфазной загрузки).
+     */
+    private record FilmsQuery(String joined, String scalars) {
+        static FilmsQuery of(String from, String tail) {
+            return new FilmsQuery(
+                    TOP_PART_QUERY_FILMS + from + TABLE_PARTS_QUERY_FILMS + tail,
+                    TOP_PART_QUERY_FILM_SCALARS + from + TABLE_PARTS_QUERY_FILM_SCALARS + tail);
+        }
+    }
 }
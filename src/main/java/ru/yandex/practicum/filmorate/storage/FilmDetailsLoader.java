@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.*;
+
+/**
+ * Вторая фаза загрузки фильмов: жанры, режиссеры и лайки для набора фильмов,
+ * по одному запросу на связь (на каждые {@value #CHUNK_SIZE} фильмов).
+ * Жанры и режиссеры берутся общими экземплярами из {@link ReferenceData}.
+ */
+@Component
+public class FilmDetailsLoader {
+    private static final int CHUNK_SIZE = 1000;
+    private static final String FIND_GENRES_QUERY = "SELECT fg.film_id, g.id, g.name\n" +
+            "FROM film_genres fg\n" +
+            "JOIN genres g ON g.id = fg.genre_id\n" +
+            "WHERE fg.film_id IN (:ids)\n" +
+            "ORDER BY g.id;";
+    private static final String FIND_DIRECTORS_QUERY = "SELECT fd.film_id, d.id, d.name\n" +
+            "FROM film_director fd\n" +
+            "JOIN directors d ON d.id = fd.director_id\n" +
+            "WHERE fd.film_id IN (:ids);";
+    // по возрастанию, чтобы IntSet лайков заполнялся добавлением в конец
+    private static final String FIND_LIKES_QUERY = "SELECT film_id, user_id FROM likes WHERE film_id IN (:ids)" +
+            " ORDER BY film_id, user_id;";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final ReferenceData referenceData;
+
+    @Autowired
+    public FilmDetailsLoader(NamedParameterJdbcTemplate namedParameterJdbcTemplate, ReferenceData referenceData) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.referenceData = referenceData;
+    }
+
+    public List<Film> load(List<Film> films) {
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+
+        List<Integer> ids = new ArrayList<>(filmsById.keySet());
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("ids",
+                    ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())));
+            loadGenres(filmsById, parameters);
+            loadDirectors(filmsById, parameters);
+            loadLikes(filmsById, parameters);
+        }
+
+        return films;
+    }
+
+    private void loadGenres(Map<Integer, Film> filmsById, MapSqlParameterSource parameters) {
+        namedParameterJdbcTemplate.query(FIND_GENRES_QUERY, parameters, rs -> {
+            Genre genre = referenceData.genre(rs.getInt("id"), rs.getString("name"));
+            filmsById.get(rs.getInt("film_id")).getGenres().add(genre);
+        });
+    }
+
+    private void loadDirectors(Map<Integer, Film> filmsById, MapSqlParameterSource parameters) {
+        namedParameterJdbcTemplate.query(FIND_DIRECTORS_QUERY, parameters, rs -> {
+            Director director = referenceData.director(rs.getLong("id"), rs.getString("name"));
+            filmsById.get(rs.getInt("film_id")).getDirectors().add(director);
+        });
+    }
+
+    private void loadLikes(Map<Integer, Film> filmsById, MapSqlParameterSource parameters) {
+        namedParameterJdbcTemplate.query(FIND_LIKES_QUERY, parameters, rs -> {
+            filmsById.get(rs.getInt("film_id")).getLikes().add(rs.getInt("user_id"));
+        });
+    }
+}
@@ -2,40 +2,54 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.model.FilmSearchEntry;
 
-import java.util.Collection;
-import java.util.List;
+import ru.yandex.practicum.filmorate.util.IntSet;
+
+import java.util.*;
+import java.util.stream.Collectors;
 
 public interface FilmStorage {
     Film createFilm(Film film);
 
     Film updateFilm(Film film);
 
-    List<Film> getAllFilms();
+    List<Film> getFilmsPage(Integer afterId, int limit);
 
     Film getFilmById(Integer id);
 
-    List<Film> getPopularFilms(Integer count, Integer genreId, Integer year);
+    List<Film> getFilmsByIds(Collection<Integer> ids);
 
-    void addLike(int filmId, int userId);
+    List<Film> getFilmsByIdsOrderByLikes(Collection<Integer> ids);
 
-    void removeLike(int filmId, int userId);
+    // фильмы в порядке переданных id; id удаленных фильмов пропускаются
+    default List<Film> getFilmsInOrder(List<Integer> ids) {
+        Map<Integer, Film> films = new HashMap<>();
+        for (Film film : getFilmsByIds(ids)) {
+            films.put(film.getId(), film);
+        }
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-    List<Film> getCommonFilms(int userId, int friendId);
+    boolean addLike(int filmId, int userId);
 
-    Collection<Film> getLikedFilms(int userId);
+    boolean removeLike(int filmId, int userId);
 
-    Collection<Film> getFilmsRecommendations(int userId);
+    List<Integer> getLikedFilmIds(int userId);
 
-    List<Film> getFilmsByDirectorSortByYear(Director director);
+    Map<Integer, IntSet> getLikedFilmIdsByUser();
 
-    List<Film> getFilmsByDirectorSortByLikes(Director director);
+    List<FilmPopularity> getFilmsPopularity();
 
-    List<Film> getFilmsBySearchInTitle(String query);
+    List<FilmSearchEntry> getFilmsSearchEntries();
 
-    List<Film> getFilmsBySearchInNameDirector(String query);
+    List<Film> getFilmsByDirectorSortByYear(Director director);
 
-    List<Film> getFilmsBySearchInTitleAndNameDirector(String query);
+    List<Film> getFilmsByDirectorSortByLikes(Director director);
 
     Film delete(Film film);
 }
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.storage;
+
+/**
+ * Способ сборки списков фильмов в {@link FilmDbStorage}.
+ */
+public enum FilmsHydration {
+    JOIN,       // один запрос с соединением лайков, жанров и режиссеров (FilmsResultSetExtractor)
+    TWO_PHASE   // фильмы отдельно, затем по одному запросу на каждую дочернюю связь (FilmDetailsLoader)
+}
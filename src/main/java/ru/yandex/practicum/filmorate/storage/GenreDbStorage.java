@@ -24,19 +24,14 @@ public class GenreDbStorage implements GenreStorage {
 
     @Override
     public Genre findById(int id) {
-        if (!existsById(id)) {
+        List<Genre> genres = jdbcTemplate.query("SELECT * FROM genres WHERE id = ?", this::mapRowToGenre, id);
+        if (genres.isEmpty()) {
             throw new NotFoundException("Genre with id " + id + " does not exist");
         }
-        return jdbcTemplate.queryForObject("SELECT * FROM genres WHERE id = ?", this::mapRowToGenre, id);
+        return genres.getFirst();
     }
 
     private Genre mapRowToGenre(ResultSet rs, int rowNum) throws SQLException {
         return new Genre(rs.getInt("id"), rs.getString("name"));
     }
-
-    private boolean existsById(Integer id) {
-        String sql = "SELECT COUNT(*) FROM GENRES WHERE id = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
-        return count > 0;
-    }
 }
\ No newline at end of file
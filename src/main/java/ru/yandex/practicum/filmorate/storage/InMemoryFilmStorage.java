@@ -1,10 +1,13 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.PathVariable;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.model.FilmSearchEntry;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -12,7 +15,7 @@ import java.util.stream.Collectors;
 @Component
 public class InMemoryFilmStorage implements FilmStorage {
 
-    private final Map<Integer, Film> films = new HashMap<>();
+    private final NavigableMap<Integer, Film> films = new TreeMap<>();
     private int nextId = 1;
 
     private int getNextId() {
@@ -36,8 +39,11 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public List<Film> getAllFilms() {
-        return new ArrayList<>(films.values());
+    public List<Film> getFilmsPage(Integer afterId, int limit) {
+        Map<Integer, Film> tail = afterId == null ? films : films.tailMap(afterId, false);
+        return tail.values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -46,62 +52,76 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
-        return films.values().stream()
-                .filter(film -> genreId == null || film.getGenres().stream().anyMatch(g -> g.getId().equals(genreId)))
-                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
-                .sorted(Comparator.comparingInt((Film f) -> f.getLikes().size()).reversed())
-                .limit(count != null ? count : Integer.MAX_VALUE)
+    public List<Film> getFilmsByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .distinct()
+                .sorted()
+                .map(films::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
-        getFilmById(filmId).getLikes().add(userId);
-    }
-
-    @Override
-    public void removeLike(int filmId, int userId) {
-        getFilmById(filmId).getLikes().remove(userId);
+    public List<Film> getFilmsByIdsOrderByLikes(Collection<Integer> ids) {
+        return getFilmsByIds(ids).stream()
+                .sorted(Comparator.comparingInt((Film f) -> f.getLikes().size()).reversed()
+                        .thenComparing(Film::getId))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public List<Film> getCommonFilms(int userId, int friendId) {
-        return List.of();
+    public boolean addLike(int filmId, int userId) {
+        return getFilmById(filmId).getLikes().add(userId);
     }
 
     @Override
-    public Collection<Film> getLikedFilms(int userId) {
-        return List.of();
+    public boolean removeLike(int filmId, int userId) {
+        return getFilmById(filmId).getLikes().remove(userId);
     }
 
     @Override
-    public Collection<Film> getFilmsRecommendations(@PathVariable int userId) {
-        return List.of();
+    public List<Integer> getLikedFilmIds(int userId) {
+        return films.values().stream()
+                .filter(film -> film.getLikes().contains(userId))
+                .map(Film::getId)
+                .collect(Collectors.toList());
     }
 
     @Override
-    public List<Film> getFilmsByDirectorSortByYear(Director director) {
-        return List.of();   // в этом хранилище метод не используется
+    public Map<Integer, IntSet> getLikedFilmIdsByUser() {
+        Map<Integer, IntSet> likes = new HashMap<>();
+        for (Film film : films.values()) {
+            for (int userId : film.getLikes()) {
+                likes.computeIfAbsent(userId, id -> new IntSet()).add(film.getId());
+            }
+        }
+        return likes;
     }
 
     @Override
-    public List<Film> getFilmsByDirectorSortByLikes(Director director) {
-        return List.of();   // в этом хранилище метод не используется
+    public List<FilmSearchEntry> getFilmsSearchEntries() {
+        return films.values().stream()
+                .map(film -> new FilmSearchEntry(film.getId(), film.getName(),
+                        film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet())))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public List<Film> getFilmsBySearchInTitle(String query) {
-        return List.of();   // в этом хранилище метод не используется
+    public List<FilmPopularity> getFilmsPopularity() {
+        return films.values().stream()
+                .map(film -> new FilmPopularity(film.getId(), film.getLikes().size(),
+                        film.getReleaseDate().getYear(),
+                        film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet())))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public List<Film> getFilmsBySearchInNameDirector(String query) {
+    public List<Film> getFilmsByDirectorSortByYear(Director director) {
         return List.of();   // в этом хранилище метод не используется
     }
 
     @Override
-    public List<Film> getFilmsBySearchInTitleAndNameDirector(String query) {
+    public List<Film> getFilmsByDirectorSortByLikes(Director director) {
         return List.of();   // в этом хранилище метод не используется
     }
 
@@ -3,15 +3,13 @@ package ru.yandex.practicum.filmorate.storage;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @Component
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Integer, User> users = new HashMap<>();
+    private final NavigableMap<Integer, User> users = new TreeMap<>();
     private int nextId = 1;
 
     private int getNextId() {
@@ -39,11 +37,51 @@ public class InMemoryUserStorage implements UserStorage {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> getUsersPage(Integer afterId, int limit) {
+        Map<Integer, User> tail = afterId == null ? users : users.tailMap(afterId, false);
+        return tail.values().stream()
+                .limit(limit)
+                .toList();
+    }
+
     @Override
     public User getUserById(Integer id) {
         return users.get(id);
     }
 
+    @Override
+    public boolean existsById(Integer id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        // копии без друзей, как и в БД-хранилище
+        return new TreeSet<>(ids).stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(user -> {
+                    User copy = new User();
+                    copy.setId(user.getId());
+                    copy.setEmail(user.getEmail());
+                    copy.setLogin(user.getLogin());
+                    copy.setName(user.getName());
+                    copy.setBirthday(user.getBirthday());
+                    return copy;
+                })
+                .toList();
+    }
+
+    @Override
+    public Map<Integer, IntSet> getFriendIdsByUser() {
+        Map<Integer, IntSet> friends = new HashMap<>();
+        users.forEach((id, user) -> {
+            if (!user.getFriends().isEmpty()) friends.put(id, IntSet.of(user.getFriends().toIntArray()));
+        });
+        return friends;
+    }
+
     @Override
     public void addFriend(Integer userId, Integer friendId) {
         User user = getUserById(userId);
@@ -64,4 +102,5 @@ public class InMemoryUserStorage implements UserStorage {
     public User delete(User user) {
         return null;    // в этом хранилище метод не используется
     }
+
 }
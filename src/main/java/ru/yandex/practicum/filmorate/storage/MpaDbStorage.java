@@ -24,19 +24,14 @@ public class MpaDbStorage implements MpaStorage {
 
     @Override
     public MpaRating findById(int id) {
-        if (!existsById(id)) {
+        List<MpaRating> ratings = jdbcTemplate.query("SELECT * FROM mpa_ratings WHERE id = ?", this::mapRowToMpa, id);
+        if (ratings.isEmpty()) {
             throw new NotFoundException("mpa with id " + id + " not found");
         }
-        return jdbcTemplate.queryForObject("SELECT * FROM mpa_ratings WHERE id = ?", this::mapRowToMpa, id);
+        return ratings.getFirst();
     }
 
     private MpaRating mapRowToMpa(ResultSet rs, int rowNum) throws SQLException {
         return new MpaRating(rs.getInt("id"), rs.getString("name"));
     }
-
-    private boolean existsById(Integer id) {
-        String sql = "SELECT COUNT(*) FROM MPA_RATINGS WHERE id = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
-        return count > 0;
-    }
 }
\ No newline at end of file
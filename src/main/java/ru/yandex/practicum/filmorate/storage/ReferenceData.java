@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Справочники в памяти: жанры, рейтинги MPA и режиссеры, по одному общему экземпляру на запись.
+ * <p>
+ * Жанры и рейтинги меняются только скриптами схемы и читаются из БД один раз, поэтому неизвестный id
+ * означает, что записи нет. Режиссеров меняет DirectorService и сбрасывает их через
+ * {@link #directorsChanged()}. Неизвестный id режиссера дочитывается из БД, поэтому запись, добавленная мимо
+ * сервиса, тоже находится. Экземпляры общие для всех фильмов - менять их нельзя.
+ */
+@Component
+public class ReferenceData {
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final DirectorDbStorage directorDbStorage;
+    // null - справочник еще не прочитан или сброшен
+    private volatile Map<Integer, Genre> genres;
+    private volatile Map<Integer, MpaRating> ratings;
+    private volatile Map<Long, Director> directors;
+    // сброс режиссеров во время чтения из БД: прочитанное устарело и не ставится
+    private long directorsVersion;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    public ReferenceData(GenreStorage genreStorage, MpaStorage mpaStorage, DirectorDbStorage directorDbStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorDbStorage = directorDbStorage;
+    }
+
+    public List<Genre> genres() {
+        return new ArrayList<>(genreMap().values());
+    }
+
+    /**
+     * Жанр по id или null, если его нет.
+     */
+    public Genre genre(int id) {
+        return genreMap().get(id);
+    }
+
+    /**
+     * Общий экземпляр жанра из строки запроса; если в БД имя уже другое - новый.
+     */
+    public Genre genre(int id, String name) {
+        Genre genre = genreMap().get(id);
+        return genre != null && Objects.equals(genre.getName(), name) ? counted(genre) : new Genre(id, name);
+    }
+
+    public List<MpaRating> ratings() {
+        return new ArrayList<>(ratingMap().values());
+    }
+
+    public MpaRating rating(int id) {
+        return ratingMap().get(id);
+    }
+
+    public MpaRating rating(int id, String name) {
+        MpaRating rating = ratingMap().get(id);
+        return rating != null && Objects.equals(rating.getName(), name) ? counted(rating) : new MpaRating(id, name);
+    }
+
+    /**
+     * Найденные режиссеры с указанными id, по возрастанию id.
+     */
+    public List<Director> directors(Collection<Long> ids) {
+        Map<Long, Director> known = directorMap();
+        List<Long> missing = ids.stream().filter(id -> !known.containsKey(id)).distinct().toList();
+        Map<Long, Director> found = missing.isEmpty() ? known : loadDirectors(missing);
+        return ids.stream()
+                .distinct()
+                .sorted()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public Director director(long id, String name) {
+        Director director = directorMap().get(id);
+        if (director != null && Objects.equals(director.getName(), name)) return counted(director);
+        Director fresh = new Director();
+        fresh.setId(id);
+        fresh.setName(name);
+        return fresh;
+    }
+
+    public synchronized void directorsChanged() {
+        directorsVersion++;
+        directors = null;
+    }
+
+    public Stats stats() {
+        Map<Long, Director> directorsNow = directors;
+        return new Stats(genreMap().size(), ratingMap().size(), directorsNow == null ? 0 : directorsNow.size(),
+                hits.sum(), loads.sum());
+    }
+
+    /**
+     * Записи в памяти; выдачи общих экземпляров и чтения справочников из БД.
+     */
+    public record Stats(int genres, int ratings, int directors, long hits, long loads) {
+    }
+
+    private Map<Integer, Genre> genreMap() {
+        Map<Integer, Genre> current = genres;
+        return current != null ? current : loadGenres();
+    }
+
+    private Map<Integer, MpaRating> ratingMap() {
+        Map<Integer, MpaRating> current = ratings;
+        return current != null ? current : loadRatings();
+    }
+
+    private Map<Long, Director> directorMap() {
+        Map<Long, Director> current = directors;
+        return current != null ? current : loadDirectors(null);
+    }
+
+    private Map<Integer, Genre> loadGenres() {
+        loads.increment();
+        Map<Integer, Genre> loaded = byId(genreStorage.findAll(), Genre::getId);
+        genres = loaded;
+        return loaded;
+    }
+
+    private Map<Integer, MpaRating> loadRatings() {
+        loads.increment();
+        Map<Integer, MpaRating> loaded = byId(mpaStorage.findAll(), MpaRating::getId);
+        ratings = loaded;
+        return loaded;
+    }
+
+    // missing == null - все режиссеры, иначе только недостающие к уже прочитанным
+    private Map<Long, Director> loadDirectors(Collection<Long> missing) {
+        long version;
+        Map<Long, Director> base;
+        synchronized (this) {
+            version = directorsVersion;
+            base = missing == null ? null : directors;
+        }
+        loads.increment();
+        Map<Long, Director> loaded = new HashMap<>(base == null ? Map.of() : base);
+        Collection<Director> read = base == null ? directorDbStorage.findAll()
+                : directorDbStorage.getAllByParameterId(missing);
+        read.forEach(director -> loaded.put(director.getId(), director));
+        Map<Long, Director> result = Map.copyOf(loaded);
+        synchronized (this) {
+            if (directorsVersion == version) directors = result;
+        }
+        return result;
+    }
+
+    private <T> T counted(T value) {
+        hits.increment();
+        return value;
+    }
+
+    private static <K, V> Map<K, V> byId(Collection<V> values, Function<V, K> id) {
+        // порядок по id - как у findAll
+        Map<K, V> map = new LinkedHashMap<>();
+        values.forEach(value -> map.put(id.apply(value), value));
+        return Collections.unmodifiableMap(map);
+    }
+}
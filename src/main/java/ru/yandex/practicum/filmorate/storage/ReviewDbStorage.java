@@ -5,18 +5,40 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.ids.IdSequence;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 @Slf4j
 @Repository
 public class ReviewDbStorage implements ReviewStorage {
+    private static final String VOTE_QUERY = "SELECT is_positive FROM OLD TABLE (" +
+            "MERGE INTO review_likes (review_id, user_id, is_positive) KEY (review_id, user_id) VALUES (?, ?, ?))";
+    private static final String UNVOTE_QUERY = "SELECT is_positive FROM OLD TABLE (" +
+            "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_positive = ?)";
+    private static final String PAGE_ORDER = " ORDER BY usefulness DESC, id DESC LIMIT ?";
+    // film_id в начале ORDER BY дает H2 взять порядок из reviews_film_usefulness_idx без сортировки
+    private static final String FILM_PAGE_ORDER = " ORDER BY film_id, usefulness DESC, id DESC LIMIT ?";
+
     private final JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private ReviewUsefulnessBuffer usefulnessBuffer;
+
     @Autowired
     public ReviewDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
@@ -24,10 +46,7 @@ public class ReviewDbStorage implements ReviewStorage {
 
     @Override
     public Review createReview(Review review) {
-        Integer nextId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(id), 0) + 1 FROM reviews", Integer.class
-        );
-        review.setReviewId(nextId);
+        review.setReviewId(idAllocator.nextId(IdSequence.REVIEWS));
 
         jdbcTemplate.update(
                 "INSERT INTO reviews (id, content, is_positive, user_id, film_id, usefulness)" +
@@ -48,75 +67,137 @@ public class ReviewDbStorage implements ReviewStorage {
     @Override
     public void deleteReview(int id) {
         jdbcTemplate.update("DELETE FROM reviews WHERE id = ?", id);
+        usefulnessBuffer.remove(id);
     }
 
     @Override
     public Review getReviewById(int id) {
         String sql = "SELECT * FROM reviews WHERE id = ?";
-        List<Review> reviews = jdbcTemplate.query(sql, this::mapRowToReview, id);
+        List<Review> reviews = usefulnessBuffer.read(() -> jdbcTemplate.query(sql, this::mapRowToReview, id));
         if (reviews.isEmpty()) {
             throw new NotFoundException("Review with id " + id + " not found");
         }
         return reviews.getFirst();
     }
 
+    // полезность в списке - записанная в reviews: по ней идут порядок и курсор страницы,
+    // а еще не записанные голоса попадают в список не позже чем через flush-interval
     @Override
-    public List<Review> getAllReviews(Integer filmId, int count) {
-        if (filmId != null) {
-            return jdbcTemplate.query(
-                    "SELECT * FROM reviews WHERE film_id = ? ORDER BY usefulness DESC LIMIT ?",
-                    this::mapRowToReview, filmId, count);
+    public List<Review> getReviewsPage(Integer filmId, ReviewCursor after, int limit) {
+        if (filmId != null && after != null) {
+            // первая страница фильма из FilmReviewTop и ее курсор - по полезности с незаписанными голосами;
+            // после их записи в reviews тот же ключ, и следующая страница не повторит и не пропустит отзывы
+            usefulnessBuffer.flushFilm(filmId);
+        }
+        String film = filmId == null ? "" : "film_id = ? AND ";
+        String order = filmId == null ? PAGE_ORDER : FILM_PAGE_ORDER;
+        List<Object> args = new ArrayList<>();
+        String sql;
+        if (after == null) {
+            sql = "SELECT * FROM reviews" + (filmId == null ? "" : " WHERE film_id = ?") + order;
+            if (filmId != null) args.add(filmId);
         } else {
-            return jdbcTemplate.query(
-                    "SELECT * FROM reviews ORDER BY usefulness DESC LIMIT ?",
-                    this::mapRowToReview, count);
+            // остаток отзывов с той же полезностью и отзывы с меньшей - два поиска по индексу, каждый
+            // читает не больше limit строк. Условие (usefulness, id) < (?, ?) H2 ищет только по первому
+            // столбцу и перебирает все отзывы с равной полезностью, а с usefulness < ? не находит начало
+            // диапазона в индексе по убыванию, поэтому <= ? - 1
+            sql = "SELECT * FROM ((SELECT * FROM reviews WHERE " + film + "usefulness = ? AND id < ?" + order + ")" +
+                    " UNION ALL (SELECT * FROM reviews WHERE " + film + "usefulness <= ?" + order + "))" + PAGE_ORDER;
+            if (filmId != null) args.add(filmId);
+            args.add(after.useful());
+            args.add(after.reviewId());
+            args.add(limit);
+            if (filmId != null) args.add(filmId);
+            args.add((long) after.useful() - 1);
+            args.add(limit);
         }
+        args.add(limit);
+        return jdbcTemplate.query(sql, this::mapRowToReview, args.toArray());
     }
 
     @Override
-    public void addLike(int reviewId, int userId) {
-        if (checkLikeExists(reviewId, userId)) {
-            return;
+    public TopReviews getTopReviews(int filmId, int limit) {
+        ReviewCursor[] lastStored = new ReviewCursor[1];
+        int[] maxIncrease = new int[1];
+        List<Review> reviews = new ArrayList<>(usefulnessBuffer.read(() -> {
+            List<Review> stored = jdbcTemplate.query("SELECT * FROM reviews WHERE film_id = ?" + FILM_PAGE_ORDER,
+                    this::mapRowToReview, filmId, limit + 1);
+            if (!stored.isEmpty()) lastStored[0] = ReviewCursor.of(stored.getLast());
+            maxIncrease[0] = usefulnessBuffer.maxPendingIncrease(filmId);
+            return stored;
+        }));
+        reviews.sort(Comparator.comparing(ReviewCursor::of).reversed());
+        if (reviews.size() <= limit) {
+            return new TopReviews(reviews, null);
         }
+        // непрочитанные отзывы ниже последнего прочитанного по записанной полезности, а незаписанные
+        // голоса поднимают их не больше чем на наибольшую прибавку
+        ReviewCursor floor = new ReviewCursor(lastStored[0].useful() + maxIncrease[0], lastStored[0].reviewId());
+        reviews.removeIf(review -> ReviewCursor.of(review).compareTo(floor) < 0);
+        return new TopReviews(reviews, floor);
+    }
 
-        removeDislike(reviewId, userId);
-        jdbcTemplate.update("INSERT INTO review_likes (review_id, user_id, is_positive) " +
-                "VALUES (?, ?, true)", reviewId, userId);
-        jdbcTemplate.update("UPDATE reviews SET usefulness = usefulness + 1 WHERE id = ?", reviewId);
+    @Override
+    @Transactional
+    public int addLike(int reviewId, int userId) {
+        return vote(reviewId, userId, true);
     }
 
     @Override
-    public void addDislike(int reviewId, int userId) {
-        if (checkDislikeExists(reviewId, userId)) {
-            return;
-        }
+    @Transactional
+    public int addDislike(int reviewId, int userId) {
+        return vote(reviewId, userId, false);
+    }
 
-        removeLike(reviewId, userId);
-        jdbcTemplate.update("INSERT INTO review_likes (review_id, user_id, is_positive) " +
-                "VALUES (?, ?, false)", reviewId, userId);
-        jdbcTemplate.update("UPDATE reviews SET usefulness = usefulness - 1 WHERE id = ?", reviewId);
+    @Override
+    @Transactional
+    public int removeLike(int reviewId, int userId) {
+        return unvote(reviewId, userId, true);
     }
 
     @Override
-    public void removeLike(int reviewId, int userId) {
-        if (!checkLikeExists(reviewId, userId)) {
-            return;
-        }
+    @Transactional
+    public int removeDislike(int reviewId, int userId) {
+        return unvote(reviewId, userId, false);
+    }
 
-        jdbcTemplate.update("DELETE FROM review_likes WHERE review_id = ? AND user_id = ? " +
-                "AND is_positive = true", reviewId, userId);
-        jdbcTemplate.update("UPDATE reviews SET usefulness = usefulness - 1 WHERE id = ?", reviewId);
+    // у пользователя один голос за отзыв: MERGE ставит новый на место прежнего, а OLD TABLE возвращает
+    // прежний, если он был, - по ним считается изменение полезности
+    private int vote(int reviewId, int userId, boolean positive) {
+        List<Boolean> previous = jdbcTemplate.queryForList(VOTE_QUERY, Boolean.class, reviewId, userId, positive);
+        int delta = weight(positive) - (previous.isEmpty() ? 0 : weight(previous.getFirst()));
+        changeUsefulness(reviewId, delta);
+        return delta;
     }
 
-    @Override
-    public void removeDislike(int reviewId, int userId) {
-        if (!checkDislikeExists(reviewId, userId)) {
+    private int unvote(int reviewId, int userId, boolean positive) {
+        List<Boolean> removed = jdbcTemplate.queryForList(UNVOTE_QUERY, Boolean.class, reviewId, userId, positive);
+        int delta = -weight(positive) * removed.size();
+        changeUsefulness(reviewId, delta);
+        return delta;
+    }
+
+    private void changeUsefulness(int reviewId, int delta) {
+        if (delta == 0) {
             return;
         }
+        if (!usefulnessBuffer.isEnabled()) {
+            jdbcTemplate.update("UPDATE reviews SET usefulness = usefulness + ? WHERE id = ?", delta, reviewId);
+            return;
+        }
+        // счетчики сгруппированы по фильмам, а фильм голосу не передается
+        int filmId = jdbcTemplate.queryForObject("SELECT film_id FROM reviews WHERE id = ?", Integer.class, reviewId);
+        // в счетчик - только после фиксации голоса, иначе откат оставил бы в полезности лишнюю разницу
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                usefulnessBuffer.add(filmId, reviewId, delta);
+            }
+        });
+    }
 
-        jdbcTemplate.update("DELETE FROM review_likes WHERE review_id = ? AND user_id = ? " +
-                "AND is_positive = false", reviewId, userId);
-        jdbcTemplate.update("UPDATE reviews SET usefulness = usefulness + 1 WHERE id = ?", reviewId);
+    private static int weight(boolean positive) {
+        return positive ? 1 : -1;
     }
 
     private Review mapRowToReview(ResultSet rs, int rowNum) throws SQLException {
@@ -129,16 +210,4 @@ public class ReviewDbStorage implements ReviewStorage {
                 .useful(rs.getInt("usefulness"))
                 .build();
     }
-
-    private boolean checkDislikeExists(int reviewId, int userId) {
-        String sql = "SELECT COUNT(*) FROM REVIEW_LIKES WHERE REVIEW_ID = ? AND USER_ID = ? AND IS_POSITIVE = false";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, reviewId, userId);
-        return count > 0;
-    }
-
-    private boolean checkLikeExists(int reviewId, int userId) {
-        String sql = "SELECT COUNT(*) FROM REVIEW_LIKES WHERE REVIEW_ID = ? AND USER_ID = ? AND IS_POSITIVE = true";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, reviewId, userId);
-        return count > 0;
-    }
 }
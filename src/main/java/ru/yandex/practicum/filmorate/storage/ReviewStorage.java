@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
 
 import java.util.List;
 
@@ -13,13 +14,27 @@ public interface ReviewStorage {
 
     Review getReviewById(int id);
 
-    List<Review> getAllReviews(Integer filmId, int count);
+    /**
+     * Отзывы по убыванию (полезность, id), начиная после курсора; after == null - первая страница.
+     */
+    List<Review> getReviewsPage(Integer filmId, ReviewCursor after, int limit);
 
-    void addLike(int reviewId, int userId);
+    /**
+     * Лучшие отзывы фильма с учетом еще не записанных голосов, читается limit + 1 отзыв. У остальных отзывов
+     * фильма (полезность, id) меньше floor; floor == null - в списке все отзывы фильма.
+     */
+    TopReviews getTopReviews(int filmId, int limit);
 
-    void addDislike(int reviewId, int userId);
+    // голоса возвращают изменение полезности отзыва
 
-    void removeLike(int reviewId, int userId);
+    int addLike(int reviewId, int userId);
 
-    void removeDislike(int reviewId, int userId);
+    int addDislike(int reviewId, int userId);
+
+    int removeLike(int reviewId, int userId);
+
+    int removeDislike(int reviewId, int userId);
+
+    record TopReviews(List<Review> reviews, ReviewCursor floor) {
+    }
 }
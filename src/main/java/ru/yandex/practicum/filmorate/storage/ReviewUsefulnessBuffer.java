@@ -0,0 +1,269 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Review;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Отложенные изменения полезности отзывов: голоса складываются в счетчик отзыва в памяти,
+ * а в reviews.usefulness попадают одной пачкой раз в flush-interval.
+ * <p>
+ * Без этого каждый голос обновляет строку отзыва, и голоса за популярный отзыв выстраиваются в очередь
+ * за ее блокировкой; счетчик в памяти меняется одним CAS. Чтение отзыва по id добавляет к значению из БД
+ * еще не записанную разницу; запись пачки и вычитание записанного из счетчиков идут под блокировкой,
+ * чтобы чтение не учло голос дважды. Страницы списка отзывов отдают записанное значение, по которому
+ * они упорядочены. При flush-interval-ms=0 полезность меняется сразу в транзакции голоса.
+ * <p>
+ * Обнулившийся счетчик запись пачки снимает, поэтому в памяти только отзывы с незаписанными голосами.
+ * Счетчики сгруппированы по фильмам: наибольшую прибавку в фильме дает обход только его счетчиков.
+ * <p>
+ * Разница, не записанная до падения процесса, теряется; recount-on-start=true восстанавливает полезность
+ * по review_likes при запуске, пока остальные экземпляры на той же схеме остановлены.
+ */
+@Slf4j
+@Component
+public class ReviewUsefulnessBuffer {
+    private static final String ADD_QUERY = "UPDATE reviews SET usefulness = usefulness + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentMap<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Set<Pending>> pendingByFilm = new ConcurrentHashMap<>();
+    // отзывы с голосами после последней записи
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("review-usefulness-flusher").daemon().factory());
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedReviews = new AtomicLong();
+
+    @Value("${filmorate.reviews.usefulness.flush-interval-ms:100}")
+    private long flushIntervalMillis = 100;
+
+    @Value("${filmorate.reviews.usefulness.recount-on-start:false}")
+    private boolean recountOnStart = false;
+
+    public ReviewUsefulnessBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        // разница, принятая, но не записанная до падения, теряется, а голоса в review_likes сохранены.
+        // Пересчет по ним включается явно: на общей схеме он добавил бы незаписанную разницу
+        // других работающих экземпляров второй раз
+        if (recountOnStart) {
+            recount();
+        }
+        if (isEnabled()) {
+            flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Пересчитывает reviews.usefulness по голосам в review_likes.
+     */
+    public void recount() {
+        int updated = jdbcTemplate.update("UPDATE reviews r SET usefulness = (" +
+                "SELECT COALESCE(SUM(CASE WHEN l.is_positive THEN 1 ELSE -1 END), 0)" +
+                " FROM review_likes l WHERE l.review_id = r.id)");
+        log.info("Полезность {} отзывов пересчитана по голосам.", updated);
+    }
+
+    public boolean isEnabled() {
+        return flushIntervalMillis > 0;
+    }
+
+    public void add(int filmId, int reviewId, int delta) {
+        while (true) {
+            Pending counter = pending.computeIfAbsent(reviewId, id -> register(new Pending(filmId)));
+            if (counter.add(delta)) break;
+            // счетчик снят записью пачки между поиском и прибавлением - нужен новый
+            pending.remove(reviewId, counter);
+        }
+        dirty.add(reviewId);
+    }
+
+    public void remove(int reviewId) {
+        dirty.remove(reviewId);
+        Pending counter = pending.remove(reviewId);
+        if (counter != null) unlink(counter);
+    }
+
+    /**
+     * Читает отзывы и добавляет к их полезности незаписанную разницу.
+     */
+    public List<Review> read(Supplier<List<Review>> query) {
+        flushLock.readLock().lock();
+        try {
+            List<Review> reviews = query.get();
+            for (Review review : reviews) {
+                Pending counter = pending.get(review.getReviewId());
+                if (counter != null) review.setUseful(review.getUseful() + (int) counter.sum());
+            }
+            return reviews;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Наибольшая незаписанная прибавка полезности среди отзывов фильма, не меньше 0. Вызывается внутри
+     * {@link #read}, чтобы запись пачки не изменила ее до конца чтения.
+     */
+    public int maxPendingIncrease(int filmId) {
+        long max = 0;
+        for (Pending counter : pendingByFilm.getOrDefault(filmId, Set.of())) {
+            max = Math.max(max, counter.sum());
+        }
+        return (int) max;
+    }
+
+    /**
+     * Записывает накопленную разницу, если среди нее есть голоса за отзывы фильма.
+     */
+    public void flushFilm(int filmId) {
+        if (pendingByFilm.containsKey(filmId)) flush();
+    }
+
+    /**
+     * Записывает накопленную разницу в reviews.usefulness одной пакетной командой в одной транзакции:
+     * после ошибки пачку можно повторить целиком, ничего не учтя дважды.
+     */
+    public synchronized void flush() {
+        List<int[]> deltas = new ArrayList<>();
+        for (Iterator<Integer> ids = dirty.iterator(); ids.hasNext(); ) {
+            Integer reviewId = ids.next();
+            // отметка снимается до чтения суммы: голос, пришедший после, поставит ее снова
+            ids.remove();
+            Pending counter = pending.get(reviewId);
+            long sum = counter == null ? 0 : counter.sum();
+            if (sum != 0) deltas.add(new int[]{reviewId, (int) sum});
+            else if (counter != null) retire(reviewId, counter);  // голоса отменили друг друга
+        }
+        if (deltas.isEmpty()) return;
+
+        flushLock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(ADD_QUERY, deltas, deltas.size(), (ps, delta) -> {
+                        ps.setInt(1, delta[1]);
+                        ps.setInt(2, delta[0]);
+                    }));
+            for (int[] delta : deltas) {
+                Pending counter = pending.get(delta[0]);
+                if (counter == null) continue;
+                counter.add(-delta[1]);
+                if (counter.sum() == 0) retire(delta[0], counter);
+            }
+        } catch (RuntimeException e) {
+            deltas.forEach(delta -> dirty.add(delta[0]));
+            throw e;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+        flushes.incrementAndGet();
+        flushedReviews.addAndGet(deltas.size());
+    }
+
+    public Stats stats() {
+        return new Stats(dirty.size(), pending.size(), flushes.get(), flushedReviews.get());
+    }
+
+    /**
+     * Отзывы с голосами после последней записи, счетчики в памяти, записи пачек и записанные отзывы.
+     */
+    public record Stats(int pendingReviews, int counters, long flushes, long flushedReviews) {
+    }
+
+    // набор фильма меняется внутри compute: иначе счетчик мог бы попасть в набор, который удаляется опустевшим
+    private Pending register(Pending counter) {
+        pendingByFilm.compute(counter.filmId, (id, counters) -> {
+            Set<Pending> film = counters == null ? ConcurrentHashMap.newKeySet() : counters;
+            film.add(counter);
+            return film;
+        });
+        return counter;
+    }
+
+    // снимает обнулившийся счетчик; голос, успевший прибавиться, оставляет его на месте
+    private void retire(int reviewId, Pending counter) {
+        if (counter.retire()) {
+            pending.remove(reviewId, counter);
+            unlink(counter);
+        }
+    }
+
+    private void unlink(Pending counter) {
+        pendingByFilm.computeIfPresent(counter.filmId, (id, counters) -> {
+            counters.remove(counter);
+            return counters.isEmpty() ? null : counters;
+        });
+    }
+
+    // незаписанная разница отзыва; снятый счетчик больше не принимает голосов
+    private static final class Pending {
+        private static final long RETIRED = Long.MIN_VALUE;
+
+        private final int filmId;
+        private final AtomicLong delta = new AtomicLong();
+
+        private Pending(int filmId) {
+            this.filmId = filmId;
+        }
+
+        boolean add(long value) {
+            long current;
+            do {
+                current = delta.get();
+                if (current == RETIRED) return false;
+            } while (!delta.compareAndSet(current, current + value));
+            return true;
+        }
+
+        long sum() {
+            long current = delta.get();
+            return current == RETIRED ? 0 : current;
+        }
+
+        boolean retire() {
+            return delta.compareAndSet(0, RETIRED);
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Полезность отзывов не записана, повтор через {} мс: {}", flushIntervalMillis, e.getMessage());
+        }
+    }
+}
@@ -12,15 +12,23 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ServerException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.ids.IdSequence;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class UserDbStorage implements UserStorage {
     private static final String DELETE_USER_IN_FRIENDS_QUERY = "DELETE FROM Friendships" +
             " WHERE user_id = :user_id OR friend_id = :user_id;";
+    private static final String DECREMENT_LIKED_FILMS_QUERY = "UPDATE films SET like_count = like_count - 1" +
+            " WHERE id IN (SELECT film_id FROM likes WHERE user_id = :user_id);";
     private static final String DELETE_USER_IN_LIKES_QUERY = "DELETE FROM likes" +
             " WHERE user_id = :user_id;";
     private static final String DELETE_USER_IN_FEED_QUERY = "DELETE FROM Feed" +
@@ -42,6 +50,9 @@ public class UserDbStorage implements UserStorage {
     @Autowired
     protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
     @Autowired
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
@@ -52,10 +63,7 @@ public class UserDbStorage implements UserStorage {
         if (user.getId() != null) {
             throw new ServerException("User with id " + user.getId() + " already exists");
         }
-        Integer nextId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(id), 0) + 1 FROM USERS", Integer.class
-        );
-        user.setId(nextId);
+        user.setId(idAllocator.nextId(IdSequence.USERS));
         String sql = "INSERT INTO users (id, email, login, name, birthday) VALUES " +
                 "(?, ?, ?, ?, ?)";
         jdbcTemplate.update(sql, user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
@@ -77,25 +85,65 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query("SELECT * FROM users", this::mapRowToUser);
     }
 
+    @Override
+    public List<User> getUsersPage(Integer afterId, int limit) {
+        List<User> users = jdbcTemplate.query("SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?",
+                this::mapRowToUser, afterId == null ? 0 : afterId, limit);
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        // друзей всех пользователей страницы получаем одним запросом
+        loadFriends(users);
+        return users;
+    }
+
     @Override
     public User getUserById(Integer id) {
-        if (!existsById(id)) {
+        List<User> users = jdbcTemplate.query("SELECT * FROM users WHERE id = ?", this::mapRowToUser, id);
+        if (users.isEmpty()) {
             throw new NotFoundException("User with id " + id + " not found");
         }
-        User user = jdbcTemplate.queryForObject("SELECT * FROM users WHERE id = ?", this::mapRowToUser, id);
-        if (user != null) {
-            user.getFriends().addAll(getFriends(id).stream().map(User::getId).toList());
-        }
+        User user = users.getFirst();
+        user.getFriends().addAll(jdbcTemplate.queryForList(
+                "SELECT friend_id FROM friendships WHERE user_id = ? ORDER BY friend_id", Integer.class, id));
         return user;
     }
 
-    public List<User> getFriends(int userId) {
-        return jdbcTemplate.query(
-                "SELECT u.* FROM users u " +
-                        "JOIN friendships f ON u.id = f.friend_id WHERE f.user_id = ?",
-                this::mapRowToUser, userId);
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        SqlParameterSource parameters = new MapSqlParameterSource("ids", ids);
+        return namedParameterJdbcTemplate.query("SELECT * FROM users WHERE id IN (:ids) ORDER BY id",
+                parameters, this::mapRowToUser);
+    }
+
+    @Override
+    public Map<Integer, IntSet> getFriendIdsByUser() {
+        Map<Integer, IntSet> friends = new HashMap<>();
+        // по порядку friend_id каждый id дописывается в конец IntSet
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friendships ORDER BY user_id, friend_id", rs -> {
+            friends.computeIfAbsent(rs.getInt("user_id"), id -> new IntSet()).add(rs.getInt("friend_id"));
+        });
+        return friends;
     }
 
+    // друзья всех пользователей списка одним запросом
+    private void loadFriends(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        users.forEach(user -> usersById.put(user.getId(), user));
+        SqlParameterSource parameters = new MapSqlParameterSource("ids", usersById.keySet());
+        namedParameterJdbcTemplate.query("SELECT user_id, friend_id FROM friendships WHERE user_id IN (:ids)" +
+                        " ORDER BY user_id, friend_id",
+                parameters, rs -> {
+                    usersById.get(rs.getInt("user_id")).getFriends().add(rs.getInt("friend_id"));
+                });
+    }
 
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
         User user = new User();
@@ -141,7 +189,8 @@ public class UserDbStorage implements UserStorage {
         // удаляем данные о дружеских связях, в которых участвовал пользователь, из БД
         namedParameterJdbcTemplate.update(DELETE_USER_IN_FRIENDS_QUERY, parameters);
 
-        // удаляем записи о лайках, которые пользователь ставил фильмам, из БД
+        // удаляем записи о лайках, которые пользователь ставил фильмам, из БД (и уменьшаем счетчики этих фильмов)
+        namedParameterJdbcTemplate.update(DECREMENT_LIKED_FILMS_QUERY, parameters);
         namedParameterJdbcTemplate.update(DELETE_USER_IN_LIKES_QUERY, parameters);
 
         // удаляем записи из таблицы Feed
@@ -161,9 +210,9 @@ public class UserDbStorage implements UserStorage {
         return user;
     }
 
-    private boolean existsById(Integer id) {
-        String sql = "SELECT COUNT(*) FROM users WHERE id = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
-        return count > 0;
+    @Override
+    public boolean existsById(Integer id) {
+        String sql = "SELECT EXISTS(SELECT 1 FROM users WHERE id = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
     }
 }
@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.IntSet;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface UserStorage {
     User createUser(User user);
@@ -11,8 +14,26 @@ public interface UserStorage {
 
     List<User> getAllUsers();
 
+    List<User> getUsersPage(Integer afterId, int limit);
+
     User getUserById(Integer id);
 
+    /**
+     * Проверка существования без загрузки пользователя и его друзей.
+     */
+    boolean existsById(Integer id);
+
+    /**
+     * Пользователи с указанными id одним запросом, по возрастанию id; отсутствующие id пропускаются.
+     * Списки друзей не заполняются, их дает {@link ru.yandex.practicum.filmorate.service.FriendGraph}.
+     */
+    List<User> getUsersByIds(Collection<Integer> ids);
+
+    /**
+     * id друзей каждого пользователя, у которого они есть.
+     */
+    Map<Integer, IntSet> getFriendIdsByUser();
+
     void addFriend(Integer userId, Integer friendId);
 
     void removeFriend(Integer userId, Integer friendId);
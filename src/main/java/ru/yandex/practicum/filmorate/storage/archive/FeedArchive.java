@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage.archive;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ServerException;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Архив старых событий ленты: сегменты {@link FeedSegment} в каталоге archive.dir.
+ * <p>
+ * Список сегментов заменяется целиком при добавлении, поэтому чтение идет без блокировок.
+ * Сегменты упорядочены по времени создания, а значит, и по времени событий: архиватор переносит
+ * события от старых к новым.
+ */
+@Slf4j
+@Component
+public class FeedArchive {
+    private static final Comparator<FeedEvent> NEWEST_FIRST = Comparator
+            .comparing(FeedEvent::getTimestamp)
+            .thenComparing(FeedEvent::getEventId)
+            .reversed();
+
+    private volatile List<FeedSegment> segments = List.of();
+
+    @Value("${filmorate.feed.archive.dir:db/feed-archive}")
+    private String directory = "db/feed-archive";
+
+    @Value("${spring.sql.init.mode:embedded}")
+    private String sqlInitMode = "embedded";
+
+    @PostConstruct
+    public synchronized void open() {
+        Path path = Path.of(directory);
+        if (!Files.isDirectory(path)) return;
+        try (Stream<Path> files = Files.list(path)) {
+            List<Path> paths = files.toList();
+            // schema.sql пересоздает таблицы при каждом запуске: сегменты прошлого запуска
+            // относятся к удаленной таблице, и их id событий будут выданы заново
+            boolean schemaRecreated = "always".equalsIgnoreCase(sqlInitMode);
+            List<FeedSegment> opened = new ArrayList<>();
+            for (Path file : paths) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp") || (schemaRecreated && name.endsWith(FeedSegment.SUFFIX))) {
+                    Files.delete(file);
+                } else if (name.endsWith(FeedSegment.SUFFIX)) {
+                    opened.add(FeedSegment.open(file));
+                }
+            }
+            opened.sort(Comparator.comparing(FeedSegment::getMaxTimestamp)
+                    .thenComparing(FeedSegment::getMaxEventId));
+            segments = List.copyOf(opened);
+            log.info("Архив ленты {}: {} сегментов, {} событий.", path, segments.size(), stats().events());
+        } catch (IOException e) {
+            throw new ServerException("Feed archive " + path + " is unreadable: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Записывает события в новый сегмент и сразу делает его видимым для чтения.
+     */
+    public synchronized FeedSegment append(List<FeedEvent> events) {
+        try {
+            Path path = Files.createDirectories(Path.of(directory));
+            FeedSegment segment = FeedSegment.write(path, events);
+            List<FeedSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            segments = List.copyOf(updated);
+            return segment;
+        } catch (IOException e) {
+            throw new ServerException("Feed segment was not written: " + e.getMessage());
+        }
+    }
+
+    // последний сегмент - единственный, чьи строки могли остаться в таблице после сбоя архиватора
+    public FeedSegment latest() {
+        List<FeedSegment> current = segments;
+        return current.isEmpty() ? null : current.getLast();
+    }
+
+    /**
+     * События пользователя по возрастанию позиции после afterPosition (null - с начала).
+     */
+    public List<FeedEvent> getFeedPage(int userId, Integer afterPosition, int limit) {
+        int after = afterPosition == null ? 0 : afterPosition;
+        List<FeedEvent> events = new ArrayList<>();
+        for (FeedSegment segment : segments) {
+            events.addAll(segment.eventsAfter(userId, after, limit));
+        }
+        events.sort(Comparator.comparing(FeedEvent::getPosition));
+        return events.size() > limit ? events.subList(0, limit) : events;
+    }
+
+    /**
+     * События пользователя строго раньше (beforeTimestamp, beforeEventId), от новых к старым.
+     */
+    public List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+        List<FeedSegment> current = segments;
+        List<FeedEvent> events = new ArrayList<>();
+        for (int i = current.size() - 1; i >= 0; i--) {
+            FeedSegment segment = current.get(i);
+            // сегменты старше уже набранных limit событий ничего не изменят
+            if (events.size() >= limit && segment.getMaxTimestamp() < events.get(limit - 1).getTimestamp()) break;
+            events.addAll(segment.eventsBefore(userId, beforeTimestamp, beforeEventId, limit));
+            events.sort(NEWEST_FIRST);
+        }
+        return events.size() > limit ? events.subList(0, limit) : events;
+    }
+
+    public Stats stats() {
+        List<FeedSegment> current = segments;
+        return new Stats(current.size(),
+                current.stream().mapToLong(FeedSegment::getEventCount).sum(),
+                current.stream().mapToLong(FeedSegment::getSizeBytes).sum());
+    }
+
+    public record Stats(int segments, long events, long bytes) {
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.storage.archive;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновый перенос событий ленты старше archive.age-days из таблицы feed в сегменты {@link FeedArchive}.
+ * <p>
+ * Порция событий сначала записывается в сегмент и становится видна чтению, затем удаляется из таблицы.
+ * Сбой между этими шагами оставляет события в обоих местах; чтение берет их один раз, а при запуске
+ * строки последнего сегмента удаляются повторно.
+ */
+@Slf4j
+@Component
+public class FeedArchiver {
+    // примерный размер строки feed вместе с индексами, для оценки сжатия в логе
+    private static final int ROW_BYTES = 120;
+
+    private final FeedDbStorage feedStorage;
+    private final FeedArchive feedArchive;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("feed-archiver").daemon().factory());
+
+    @Value("${filmorate.feed.archive.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${filmorate.feed.archive.age-days:30}")
+    private int ageDays = 30;
+
+    @Value("${filmorate.feed.archive.segment-events:100000}")
+    private int segmentEvents = 100_000;
+
+    @Value("${filmorate.feed.archive.interval-ms:3600000}")
+    private long intervalMillis = 3_600_000;
+
+    public FeedArchiver(FeedDbStorage feedStorage, FeedArchive feedArchive) {
+        this.feedStorage = feedStorage;
+        this.feedArchive = feedArchive;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        scheduler.execute(this::removeArchivedRows);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ageDays));
+            } catch (RuntimeException e) {
+                log.error("Архивация ленты не удалась, повтор через {} мс.", intervalMillis, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Переносит в архив все события раньше cutoff, по сегменту на каждые segment-events событий.
+     */
+    public int archive(long cutoff) {
+        int archived = 0;
+        List<FeedEvent> events;
+        do {
+            long start = System.nanoTime();
+            events = feedStorage.getEventsOlderThan(cutoff, segmentEvents);
+            if (events.isEmpty()) break;
+            FeedSegment segment = feedArchive.append(events);
+            feedStorage.deleteEvents(segment.eventIds());
+            archived += events.size();
+            log.info("В архив ленты перенесено {} событий в {} ({} байт, ~{}x меньше таблицы) за {} мс.",
+                    events.size(), segment.getPath().getFileName(), segment.getSizeBytes(),
+                    (long) events.size() * ROW_BYTES / Math.max(1, segment.getSizeBytes()),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } while (events.size() == segmentEvents);
+        return archived;
+    }
+
+    private void removeArchivedRows() {
+        FeedSegment latest = feedArchive.latest();
+        if (latest == null) return;
+        try {
+            feedStorage.deleteEvents(latest.eventIds());
+        } catch (RuntimeException e) {
+            log.error("Строки сегмента {} не удалены из таблицы ленты.", latest.getPath(), e);
+        }
+    }
+}
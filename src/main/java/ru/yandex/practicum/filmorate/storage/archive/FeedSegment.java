@@ -0,0 +1,419 @@
+package ru.yandex.practicum.filmorate.storage.archive;
+
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Неизменяемый файл архива ленты: события одного интервала времени, сгруппированные по пользователям.
+ * <p>
+ * Формат: заголовок, индекс пользователей (user_id, число событий, смещение блока, первая точка пропуска)
+ * по возрастанию user_id, точки пропуска и блоки событий. В блоке события идут по возрастанию позиции записи
+ * ленты, а позиция, id и время хранятся разностями с предыдущим событием в varint - событие занимает
+ * 6-10 байт вместо строки таблицы и читается прямо из отображенного в память файла без распаковки всего
+ * сегмента.
+ * <p>
+ * Разности читаются только подряд, поэтому на каждое {@value #SKIP_INTERVAL}-е событие блока пишется точка
+ * пропуска: позиция, id и время предыдущего события и смещение события в блоке. Страница после позиции
+ * находит двоичным поиском последнюю точку не дальше нее и разбирает блок с этого места, а не с начала.
+ */
+public final class FeedSegment {
+    public static final String SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x46534547; // FSEG
+    // версия 2: у событий есть позиция записи, блоки упорядочены по ней; версия 3: точки пропуска
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 52;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int SKIP_ENTRY_BYTES = 20;
+    private static final int SKIP_INTERVAL = 64;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final Path path;
+    // только абсолютные чтения: позиция буфера не меняется, и читать можно из нескольких потоков
+    private final ByteBuffer buffer;
+    private final int eventCount;
+    private final int userCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int minEventId;
+    private final int maxEventId;
+    private final int maxPosition;
+    private final int skipCount;
+
+    private FeedSegment(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a feed segment: " + path);
+        }
+        eventCount = buffer.getInt(8);
+        userCount = buffer.getInt(12);
+        minTimestamp = buffer.getLong(16);
+        maxTimestamp = buffer.getLong(24);
+        minEventId = buffer.getInt(32);
+        maxEventId = buffer.getInt(36);
+        maxPosition = buffer.getInt(40);
+        skipCount = buffer.getInt(44);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_BYTES, buffer.capacity() - HEADER_BYTES));
+        if ((int) crc.getValue() != buffer.getInt(48)) {
+            throw new IOException("Feed segment is damaged: " + path);
+        }
+    }
+
+    /**
+     * Отображает файл сегмента в память.
+     */
+    public static FeedSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new FeedSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Пишет события в новый файл каталога: сначала во временный, затем переименованием, поэтому
+     * файл с суффиксом сегмента всегда записан целиком.
+     */
+    public static FeedSegment write(Path directory, List<FeedEvent> events) throws IOException {
+        List<FeedEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparing(FeedEvent::getUserId).thenComparing(FeedEvent::getPosition));
+        long minTimestamp = sorted.stream().mapToLong(FeedEvent::getTimestamp).min().orElse(0);
+        long maxTimestamp = sorted.stream().mapToLong(FeedEvent::getTimestamp).max().orElse(0);
+        int minEventId = sorted.stream().mapToInt(FeedEvent::getEventId).min().orElse(0);
+        int maxEventId = sorted.stream().mapToInt(FeedEvent::getEventId).max().orElse(0);
+        int maxPosition = sorted.stream().mapToInt(FeedEvent::getPosition).max().orElse(0);
+
+        int userCount = (int) sorted.stream().mapToInt(FeedEvent::getUserId).distinct().count();
+        ByteBuffer index = ByteBuffer.allocate(userCount * INDEX_ENTRY_BYTES);
+        ByteBuffer skips = ByteBuffer.allocate(sorted.size() / SKIP_INTERVAL * SKIP_ENTRY_BYTES);
+        VarintWriter data = new VarintWriter(sorted.size() * 8);
+        int from = 0;
+        while (from < sorted.size()) {
+            int userId = sorted.get(from).getUserId();
+            int to = from;
+            int blockStart = data.size();
+            index.putInt(userId).putInt(0).putInt(blockStart).putInt(skips.position() / SKIP_ENTRY_BYTES);
+            int previousPosition = 0;
+            int previousId = 0;
+            long previousTimestamp = minTimestamp;
+            for (; to < sorted.size() && sorted.get(to).getUserId() == userId; to++) {
+                FeedEvent event = sorted.get(to);
+                if (to > from && (to - from) % SKIP_INTERVAL == 0) {
+                    skips.putInt(previousPosition).putInt(previousId).putLong(previousTimestamp)
+                            .putInt(data.size() - blockStart);
+                }
+                // порядок id не совпадает с порядком записи, поэтому их разность может быть отрицательной
+                data.putVarint(event.getPosition() - previousPosition);
+                data.putVarlong(zigzag(event.getEventId() - previousId));
+                data.putVarlong(zigzag(event.getTimestamp() - previousTimestamp));
+                data.put(event.getEventType().ordinal() << 4 | event.getOperation().ordinal());
+                data.putVarint(event.getEntityId());
+                previousPosition = event.getPosition();
+                previousId = event.getEventId();
+                previousTimestamp = event.getTimestamp();
+            }
+            index.putInt(index.position() - 12, to - from);
+            from = to;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(index.capacity() + skips.position() + data.size());
+        body.put(index.array()).put(skips.array(), 0, skips.position()).put(data.bytes, 0, data.size()).flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC).putInt(VERSION).putInt(sorted.size()).putInt(userCount)
+                .putLong(minTimestamp).putLong(maxTimestamp).putInt(minEventId).putInt(maxEventId)
+                .putInt(maxPosition).putInt(skips.position() / SKIP_ENTRY_BYTES).putInt((int) crc.getValue())
+                .flip();
+
+        Path target = directory.resolve("feed-" + minTimestamp + "-" + maxTimestamp + "-" + minEventId + SUFFIX);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) channel.write(header);
+            while (body.hasRemaining()) channel.write(body);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(target);
+    }
+
+    /**
+     * До limit событий пользователя с позицией больше afterPosition, по возрастанию позиции.
+     */
+    public List<FeedEvent> eventsAfter(int userId, int afterPosition, int limit) {
+        int entry = findUser(userId);
+        if (entry < 0 || afterPosition >= maxPosition) return List.of();
+        int count = buffer.getInt(entry + 4);
+        int blockStart = dataStart() + buffer.getInt(entry + 8);
+        int firstSkip = skipStart() + buffer.getInt(entry + 12) * SKIP_ENTRY_BYTES;
+        // точка i стоит перед событием (i + 1) * SKIP_INTERVAL и хранит позицию предыдущего события
+        int low = 0;
+        int high = (count - 1) / SKIP_INTERVAL - 1;
+        int skip = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(firstSkip + middle * SKIP_ENTRY_BYTES) <= afterPosition) {
+                skip = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int start = 0;
+        int position = 0;
+        int eventId = 0;
+        long timestamp = minTimestamp;
+        VarintReader reader;
+        if (skip < 0) {
+            reader = new VarintReader(buffer, blockStart);
+        } else {
+            int point = firstSkip + skip * SKIP_ENTRY_BYTES;
+            start = (skip + 1) * SKIP_INTERVAL;
+            position = buffer.getInt(point);
+            eventId = buffer.getInt(point + 4);
+            timestamp = buffer.getLong(point + 8);
+            reader = new VarintReader(buffer, blockStart + buffer.getInt(point + 16));
+        }
+        List<FeedEvent> events = new ArrayList<>(Math.min(count - start, limit));
+        for (int i = start; i < count && events.size() < limit; i++) {
+            position += reader.varint();
+            eventId += (int) unzigzag(reader.varlong());
+            timestamp += unzigzag(reader.varlong());
+            int kind = reader.next();
+            int entityId = reader.varint();
+            if (position > afterPosition) {
+                events.add(event(eventId, timestamp, userId, kind, entityId, position));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * До limit событий пользователя строго раньше (beforeTimestamp, beforeEventId), от новых к старым.
+     * Блок разбирается в массивы, объекты создаются только для отданных событий.
+     */
+    public List<FeedEvent> eventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+        int entry = findUser(userId);
+        if (entry < 0 || beforeTimestamp < minTimestamp) return List.of();
+        int count = buffer.getInt(entry + 4);
+        VarintReader reader = new VarintReader(buffer, dataStart() + buffer.getInt(entry + 8));
+        int[] positions = new int[count];
+        int[] eventIds = new int[count];
+        long[] timestamps = new long[count];
+        int[] kinds = new int[count];
+        int[] entityIds = new int[count];
+        // обычно время растет вместе с позицией, и тогда самые новые события - в конце блока
+        boolean timeOrdered = true;
+        int position = 0;
+        int eventId = 0;
+        long timestamp = minTimestamp;
+        for (int i = 0; i < count; i++) {
+            position += reader.varint();
+            eventId += (int) unzigzag(reader.varlong());
+            long delta = unzigzag(reader.varlong());
+            timeOrdered &= delta >= 0 || i == 0;
+            timestamp += delta;
+            positions[i] = position;
+            eventIds[i] = eventId;
+            timestamps[i] = timestamp;
+            kinds[i] = reader.next();
+            entityIds[i] = reader.varint();
+        }
+
+        List<Integer> matching = new ArrayList<>();
+        for (int i = count - 1; i >= 0 && (!timeOrdered || matching.size() < limit); i--) {
+            if (timestamps[i] < beforeTimestamp
+                    || (timestamps[i] == beforeTimestamp && eventIds[i] < beforeEventId)) {
+                matching.add(i);
+            }
+        }
+        if (!timeOrdered) {
+            matching.sort(Comparator.<Integer>comparingLong(i -> timestamps[i])
+                    .thenComparingInt(i -> eventIds[i])
+                    .reversed());
+        }
+        List<FeedEvent> events = new ArrayList<>(Math.min(limit, matching.size()));
+        for (int i = 0; i < matching.size() && events.size() < limit; i++) {
+            int index = matching.get(i);
+            events.add(event(eventIds[index], timestamps[index], userId, kinds[index], entityIds[index],
+                    positions[index]));
+        }
+        return events;
+    }
+
+    /**
+     * Id всех событий сегмента.
+     */
+    public int[] eventIds() {
+        int[] ids = new int[eventCount];
+        int position = 0;
+        for (int user = 0; user < userCount; user++) {
+            int entry = HEADER_BYTES + user * INDEX_ENTRY_BYTES;
+            int count = buffer.getInt(entry + 4);
+            VarintReader reader = new VarintReader(buffer, dataStart() + buffer.getInt(entry + 8));
+            int eventId = 0;
+            for (int i = 0; i < count; i++) {
+                reader.varint();
+                eventId += (int) unzigzag(reader.varlong());
+                reader.varlong();
+                reader.next();
+                reader.varint();
+                ids[position++] = eventId;
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public long getSizeBytes() {
+        return buffer.capacity();
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public int getMinEventId() {
+        return minEventId;
+    }
+
+    public int getMaxEventId() {
+        return maxEventId;
+    }
+
+    public int getMaxPosition() {
+        return maxPosition;
+    }
+
+    private static FeedEvent event(int eventId, long timestamp, int userId, int kind, int entityId, int position) {
+        FeedEvent event = new FeedEvent(eventId, timestamp, userId, EVENT_TYPES[kind >>> 4], OPERATIONS[kind & 0xF],
+                entityId);
+        event.setPosition(position);
+        return event;
+    }
+
+    // смещение записи индекса или -1
+    private int findUser(int userId) {
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_BYTES + middle * INDEX_ENTRY_BYTES;
+            int current = buffer.getInt(entry);
+            if (current < userId) {
+                low = middle + 1;
+            } else if (current > userId) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int skipStart() {
+        return HEADER_BYTES + userCount * INDEX_ENTRY_BYTES;
+    }
+
+    private int dataStart() {
+        return skipStart() + skipCount * SKIP_ENTRY_BYTES;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class VarintWriter {
+        private byte[] bytes;
+        private int size;
+
+        VarintWriter(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void put(int value) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[size++] = (byte) value;
+        }
+
+        void putVarint(int value) {
+            putVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void putVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+    }
+
+    private static final class VarintReader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        VarintReader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int next() {
+            return buffer.get(position++) & 0xFF;
+        }
+
+        int varint() {
+            return (int) varlong();
+        }
+
+        long varlong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = next();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.storage.ids;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ServerException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выдача id блоками (hi/lo) из последовательностей БД.
+ * <p>
+ * Каждое обращение к последовательности резервирует за экземпляром приложения диапазон
+ * [hi, hi + increment), поэтому несколько экземпляров на одной БД не пересекаются по id.
+ * Внутри диапазона id раздаются через {@link AtomicLong} без блокировок, блокировка берется
+ * только при получении следующего диапазона.
+ * <p>
+ * Строки, вставленные мимо последовательности, обходятся без ALTER SEQUENCE: при первом обращении
+ * значения, чей диапазон целиком не выше максимального id, выбираются из последовательности и отбрасываются,
+ * а выдача в последнем диапазоне начинается сразу после максимального id. Каждое значение последовательности
+ * выдается один раз, поэтому экземпляры, стартующие одновременно, получают разные диапазоны.
+ */
+@Slf4j
+@Component
+public class IdAllocator {
+    private static final String NEXT_VALUE_QUERY = "SELECT NEXT VALUE FOR %s";
+    private static final String INCREMENT_QUERY = "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES" +
+            " WHERE UPPER(SEQUENCE_NAME) = UPPER(?)";
+    // count значений последовательности за один запрос, из них берется последнее
+    private static final String SKIP_QUERY = "SELECT MAX(NEXT VALUE FOR %s) FROM SYSTEM_RANGE(1, ?)";
+    private static final String MAX_ID_QUERY = "SELECT COALESCE(MAX(%s), 0) FROM %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<IdSequence, Pool> pools = new EnumMap<>(IdSequence.class);
+
+    @Autowired
+    public IdAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (IdSequence sequence : IdSequence.values()) {
+            pools.put(sequence, new Pool(sequence));
+        }
+    }
+
+    public int nextId(IdSequence sequence) {
+        Pool pool = pools.get(sequence);
+        while (true) {
+            Block block = pool.block;
+            if (block != null) {
+                long id = block.next.getAndIncrement();
+                if (id < block.end) {
+                    return Math.toIntExact(id);
+                }
+            }
+            pool.refill(block);
+        }
+    }
+
+    private record Block(AtomicLong next, long end) {
+    }
+
+    private final class Pool {
+        private final IdSequence sequence;
+        private volatile Block block;
+        private boolean aligned;
+        private long increment;
+
+        private Pool(IdSequence sequence) {
+            this.sequence = sequence;
+        }
+
+        private synchronized void refill(Block exhausted) {
+            if (block != exhausted) {
+                return; // диапазон уже обновил другой поток
+            }
+            if (!aligned) {
+                increment = readIncrement();
+            }
+            long hi = fetchHi();
+            long start = hi;
+            if (!aligned) {
+                // строки могли быть вставлены мимо последовательности (скрипты, старые версии приложения)
+                long maxId = readMaxId();
+                if (hi + increment <= maxId + 1) {
+                    while (hi + increment <= maxId + 1) {
+                        hi = skipTo(maxId + 1 - increment - hi);
+                    }
+                    log.info("Диапазоны {} до максимального id {} пропущены.", sequence.getSequenceName(), maxId);
+                }
+                // диапазон [hi, hi + increment) принадлежит только этому экземпляру, занятые в нем id пропускаются
+                start = Math.max(hi, maxId + 1);
+                aligned = true;
+            }
+            block = new Block(new AtomicLong(start), hi + increment);
+        }
+
+        private long fetchHi() {
+            Long hi = jdbcTemplate.queryForObject(
+                    String.format(NEXT_VALUE_QUERY, sequence.getSequenceName()), Long.class);
+            if (hi == null) {
+                throw new ServerException("Sequence " + sequence.getSequenceName() + " returned no value");
+            }
+            return hi;
+        }
+
+        // первое значение дальше distance от текущего; другие экземпляры выбирают значения одновременно,
+        // поэтому результат может оказаться и дальше
+        private long skipTo(long distance) {
+            long count = distance / increment + 1;
+            Long hi = jdbcTemplate.queryForObject(
+                    String.format(SKIP_QUERY, sequence.getSequenceName()), Long.class, count);
+            if (hi == null) {
+                throw new ServerException("Sequence " + sequence.getSequenceName() + " returned no value");
+            }
+            return hi;
+        }
+
+        private long readIncrement() {
+            Long value = jdbcTemplate.queryForObject(INCREMENT_QUERY, Long.class, sequence.getSequenceName());
+            if (value == null || value <= 0) {
+                throw new ServerException("Sequence " + sequence.getSequenceName() + " has no positive increment");
+            }
+            return value;
+        }
+
+        private long readMaxId() {
+            Long value = jdbcTemplate.queryForObject(
+                    String.format(MAX_ID_QUERY, sequence.getIdColumn(), sequence.getTableName()), Long.class);
+            return value == null ? 0 : value;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.storage.ids;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Последовательности БД, из которых выдаются id сущностей.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum IdSequence {
+    FILMS("films_seq", "films", "id"),
+    USERS("users_seq", "users", "id"),
+    REVIEWS("reviews_seq", "reviews", "id"),
+    FEED("feed_seq", "feed", "event_id");
+
+    private final String sequenceName;
+    private final String tableName;
+    private final String idColumn;
+}
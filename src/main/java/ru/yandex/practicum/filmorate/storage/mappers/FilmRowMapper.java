@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.mappers;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@Component
+@RequiredArgsConstructor
+public class FilmRowMapper implements RowMapper<Film> {
+    private final ReferenceData referenceData;
+
+    @Override
+    public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        Film film = new Film();
+        film.setId(resultSet.getInt("f_id"));
+        film.setName(resultSet.getString("f_name"));
+        film.setDescription(resultSet.getString("f_description"));
+        film.setReleaseDate(resultSet.getDate("f_release_date").toLocalDate());
+        film.setDuration(resultSet.getInt("f_duration"));
+
+        int idMpa = resultSet.getInt("mpa_id");
+        if (!resultSet.wasNull()) film.setMpa(referenceData.rating(idMpa, resultSet.getString("mr_name")));
+
+        return film;
+    }
+}
@@ -0,0 +1,211 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Ориентированный граф на int-вершинах: сжатые строки смежности (CSR) и накладка изменений поверх них.
+ * <p>
+ * Соседи вершины u - отрезок {@code targets[offsets[u]..offsets[u + 1])}, отсортированный по возрастанию,
+ * индексом служит сам id. Строки, измененные после построения, лежат в накладке целиком, неизменяемыми
+ * массивами; их id отмечены в битовой маске, чтобы чтение неизмененной строки не ходило в хеш-таблицу
+ * и не упаковывало id в Integer. Когда измененных строк набирается много, накладка вливается в новый CSR.
+ * <p>
+ * Читатели блокировок не берут, изменения должны идти по одному - синхронизирует вызывающий.
+ */
+public final class CsrGraph {
+    private static final int[] EMPTY_ROW = new int[0];
+    // накладка вливается в CSR, когда строк в ней больше этого числа или восьмой части вершин
+    private static final int MIN_COMPACTION_ROWS = 1024;
+
+    private volatile Csr csr = Csr.EMPTY;
+    private final ConcurrentMap<Integer, int[]> overlay = new ConcurrentHashMap<>();
+    private volatile AtomicLongArray changed = new AtomicLongArray(0);
+
+    public void rebuild(Map<Integer, IntSet> rows) {
+        int maxId = rows.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+
+        // сначала новый CSR, потом очистка накладки: читатель, не нашедший строку в накладке, увидит новый CSR
+        csr = Csr.build(maxId, id -> {
+            IntSet row = rows.get(id);
+            return row == null ? EMPTY_ROW : row.toIntArray();
+        });
+        overlay.clear();
+        changed = new AtomicLongArray(0);
+    }
+
+    /**
+     * Вершин в CSR; id в накладке могут быть и больше.
+     */
+    public int vertices() {
+        return csr.vertices();
+    }
+
+    public int edges() {
+        return csr.targets.length;
+    }
+
+    /**
+     * Соседи вершины; возвращаемый массив нельзя изменять.
+     */
+    public int[] row(int u) {
+        int[] row = changedRow(u);
+        return row != null ? row : csr.row(u);
+    }
+
+    /**
+     * Наводит курсор на строку вершины без копирования и без выделения памяти.
+     */
+    public void load(int u, Cursor cursor) {
+        int[] row = changedRow(u);
+        if (row != null) {
+            cursor.values = row;
+            cursor.from = 0;
+            cursor.to = row.length;
+            return;
+        }
+        Csr current = csr;
+        if (u < 0 || u >= current.vertices()) {
+            cursor.values = EMPTY_ROW;
+            cursor.from = 0;
+            cursor.to = 0;
+            return;
+        }
+        cursor.values = current.targets;
+        cursor.from = current.offsets[u];
+        cursor.to = current.offsets[u + 1];
+    }
+
+    public boolean contains(int u, int v) {
+        int[] row = changedRow(u);
+        return row != null ? Arrays.binarySearch(row, v) >= 0 : csr.contains(u, v);
+    }
+
+    public void forEach(int u, IntConsumer consumer) {
+        int[] row = changedRow(u);
+        if (row != null) {
+            for (int v : row) {
+                consumer.accept(v);
+            }
+        } else {
+            csr.forEach(u, consumer);
+        }
+    }
+
+    public boolean add(int u, int v) {
+        int[] row = row(u);
+        int position = Arrays.binarySearch(row, v);
+        if (position >= 0) return false;
+
+        int insertAt = -position - 1;
+        int[] updated = new int[row.length + 1];
+        System.arraycopy(row, 0, updated, 0, insertAt);
+        updated[insertAt] = v;
+        System.arraycopy(row, insertAt, updated, insertAt + 1, row.length - insertAt);
+        put(u, updated);
+        return true;
+    }
+
+    public boolean remove(int u, int v) {
+        int[] row = row(u);
+        int position = Arrays.binarySearch(row, v);
+        if (position < 0) return false;
+
+        int[] updated = new int[row.length - 1];
+        System.arraycopy(row, 0, updated, 0, position);
+        System.arraycopy(row, position + 1, updated, position, row.length - position - 1);
+        put(u, updated);
+        return true;
+    }
+
+    public void clear(int u) {
+        if (row(u).length > 0) put(u, EMPTY_ROW);
+    }
+
+    private int[] changedRow(int u) {
+        AtomicLongArray marks = changed;
+        int word = u >>> 6;
+        if (u < 0 || word >= marks.length() || (marks.get(word) & (1L << u)) == 0) return null;
+        return overlay.get(u);
+    }
+
+    private void put(int u, int[] row) {
+        // отметка ставится до записи в накладку: отмеченная строка без записи читается из CSR
+        AtomicLongArray marks = changed;
+        if ((u >>> 6) >= marks.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max((u >>> 6) + 1, marks.length() * 2));
+            for (int i = 0; i < marks.length(); i++) {
+                grown.set(i, marks.get(i));
+            }
+            changed = marks = grown;
+        }
+        marks.set(u >>> 6, marks.get(u >>> 6) | (1L << u));
+        overlay.put(u, row);
+
+        if (overlay.size() > Math.max(MIN_COMPACTION_ROWS, csr.vertices() / 8)) {
+            Csr current = csr;
+            int maxId = Math.max(current.vertices() - 1,
+                    overlay.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1));
+            csr = Csr.build(maxId, id -> {
+                int[] changedRow = overlay.get(id);
+                return changedRow != null ? changedRow : current.row(id);
+            });
+            overlay.clear();
+            changed = new AtomicLongArray(0);
+        }
+    }
+
+    /**
+     * Отрезок {@code values[from..to)} - соседи вершины. Курсор переиспользуется, поля перезаписывает
+     * {@link #load(int, Cursor)}.
+     */
+    public static final class Cursor {
+        public int[] values = EMPTY_ROW;
+        public int from;
+        public int to;
+    }
+
+    private record Csr(int[] offsets, int[] targets) {
+        static final Csr EMPTY = new Csr(new int[1], EMPTY_ROW);
+
+        // строки для id от 0 до maxId включительно
+        static Csr build(int maxId, IntFunction<int[]> rows) {
+            int[] offsets = new int[maxId + 2];
+            for (int id = 0; id <= maxId; id++) {
+                offsets[id + 1] = offsets[id] + rows.apply(id).length;
+            }
+            int[] targets = new int[offsets[maxId + 1]];
+            for (int id = 0; id <= maxId; id++) {
+                int[] row = rows.apply(id);
+                System.arraycopy(row, 0, targets, offsets[id], row.length);
+            }
+            return new Csr(offsets, targets);
+        }
+
+        int vertices() {
+            return offsets.length - 1;
+        }
+
+        int[] row(int u) {
+            if (u < 0 || u >= vertices()) return EMPTY_ROW;
+            return Arrays.copyOfRange(targets, offsets[u], offsets[u + 1]);
+        }
+
+        boolean contains(int u, int v) {
+            if (u < 0 || u >= vertices()) return false;
+            return Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0;
+        }
+
+        void forEach(int u, IntConsumer consumer) {
+            if (u < 0 || u >= vertices()) return;
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                consumer.accept(targets[i]);
+            }
+        }
+    }
+}
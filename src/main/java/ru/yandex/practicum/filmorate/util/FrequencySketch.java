@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * Приблизительная частота обращений к ключам: count-min sketch из четырехбитных счетчиков.
+ * <p>
+ * Ключ попадает в четыре счетчика, по одному в каждой строке; частота - наименьший из них, поэтому
+ * оценка бывает завышена, но не занижена. Счетчики насыщаются на 15. Когда прибавлений накапливается
+ * в десять раз больше ширины, все счетчики делятся пополам: старая популярность постепенно забывается.
+ * <p>
+ * Не потокобезопасен - доступ под блокировкой владельца.
+ */
+public final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+    // младший бит каждого полубайта: сброс сдвигом не должен переносить биты в соседний счетчик
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // в одном long шестнадцать счетчиков, строки лежат подряд
+    private final long[] table;
+    private final int rowMask;
+    private final int sampleSize;
+    private int additions;
+
+    public FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1) << 1);
+        table = new long[DEPTH * width / 16];
+        rowMask = width - 1;
+        sampleSize = 10 * width;
+    }
+
+    public void increment(int key) {
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counter(key, row);
+            int index = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((table[index] >>> shift) & 15) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    public int frequency(int key) {
+        int frequency = 15;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counter(key, row);
+            frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    // номер счетчика во всей таблице: строка row, позиция в строке по своему хешу
+    private int counter(int key, int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        int position = (int) (hash ^ (hash >>> 32)) & rowMask;
+        return row * (rowMask + 1) + position;
+    }
+}
@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Множество int в виде отсортированного массива примитивов.
+ * <p>
+ * Занимает 4 байта на элемент против десятков байт у {@code HashSet<Integer>} (упакованное значение и узел
+ * хэш-таблицы), поиск - двоичный, объединение и пересечение - слиянием отсортированных массивов.
+ * Остается обычным {@code Set<Integer>}, поэтому Jackson по-прежнему пишет и читает его как JSON-массив.
+ * Добавление в конец (значения по возрастанию) стоит O(1), вставка в середину - сдвиг массива.
+ * Как и {@link HashSet}, не потокобезопасно.
+ */
+public final class IntSet extends AbstractSet<Integer> {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private int size;
+
+    public IntSet() {
+    }
+
+    private IntSet(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    public static IntSet of(int... values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int value : sorted) {
+            if (size == 0 || sorted[size - 1] != value) sorted[size++] = value;
+        }
+        return new IntSet(sorted, size);
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public boolean add(int value) {
+        if (size > 0 && values[size - 1] < value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;     // частый случай: значения приходят из БД по возрастанию
+            return true;
+        }
+
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) return false;
+
+        int insertAt = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = value;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    public IntSet union(IntSet other) {
+        int[] result = new int[size + other.size];
+        int i = 0, j = 0, k = 0;
+        while (i < size && j < other.size) {
+            int a = values[i], b = other.values[j];
+            if (a < b) {
+                result[k++] = a;
+                i++;
+            } else if (a > b) {
+                result[k++] = b;
+                j++;
+            } else {
+                result[k++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) result[k++] = values[i++];
+        while (j < other.size) result[k++] = other.values[j++];
+        return new IntSet(result, k);
+    }
+
+    public IntSet intersection(IntSet other) {
+        if (size > other.size) return other.intersection(this);
+
+        int[] result = new int[size];
+        int k = 0;
+        if (isSkewed(other)) {
+            // множества сильно различаются по размеру: ищем элементы меньшего в большем
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) result[k++] = values[i];
+            }
+        } else {
+            int i = 0, j = 0;
+            while (i < size && j < other.size) {
+                int a = values[i], b = other.values[j];
+                if (a < b) {
+                    i++;
+                } else if (a > b) {
+                    j++;
+                } else {
+                    result[k++] = a;
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return new IntSet(result, k);
+    }
+
+    public int intersectionSize(IntSet other) {
+        if (size > other.size) return other.intersectionSize(this);
+
+        int count = 0;
+        if (isSkewed(other)) {
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) count++;
+            }
+            return count;
+        }
+
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            int a = values[i], b = other.values[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public IntStream intStream() {
+        return Arrays.stream(values, 0, size);
+    }
+
+    /**
+     * Освобождает запас емкости, оставшийся после роста массива.
+     */
+    public void trimToSize() {
+        if (values.length > size) values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer value && contains(value.intValue());
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Integer value && remove(value.intValue());
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Integer> c) {
+        if (!(c instanceof IntSet other)) return super.addAll(c);
+
+        IntSet union = union(other);
+        boolean changed = union.size != size;
+        values = union.values;
+        size = union.size;
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= size) throw new NoSuchElementException();
+                last = next++;
+                return values[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) throw new IllegalStateException();
+                removeAt(last);
+                next = last;
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntSet other) {
+            return Arrays.equals(values, 0, size, other.values, 0, other.size);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // как у Set<Integer>: сумма хэшей элементов, а хэш Integer равен его значению
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += values[i];
+        }
+        return hash;
+    }
+
+    private boolean isSkewed(IntSet larger) {
+        return size * 16 < larger.size;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length + (values.length >> 1) + 4));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.util;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсоры постраничной выдачи по первичному ключу.
+ * <p>
+ * Клиенту отдается непрозрачная строка, в параметре {@code after} принимается как она,
+ * так и просто id последнего полученного элемента.
+ */
+public final class PageCursor {
+    private static final String PREFIX = "id:";
+
+    private PageCursor() {
+    }
+
+    public static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Integer decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            if (cursor.chars().allMatch(Character::isDigit)) {
+                return Integer.parseInt(cursor);
+            }
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new ValidationException("Некорректный курсор страницы: " + cursor);
+            }
+            return Integer.parseInt(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректный курсор страницы: " + cursor);
+        }
+    }
+
+    public static int limit(Integer requested, int defaultSize, int maxSize) {
+        if (requested == null) {
+            return Math.min(defaultSize, maxSize);
+        }
+        if (requested <= 0) {
+            throw new ValidationException("Размер страницы должен быть положительным");
+        }
+        return Math.min(requested, maxSize);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.util;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Review;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в списке отзывов, упорядоченном по убыванию (полезность, id).
+ * <p>
+ * В параметре {@code after} принимается как непрозрачная строка из {@link #encode()},
+ * так и пара {@code полезность,id} последнего полученного отзыва. Больший курсор стоит в списке раньше.
+ */
+public record ReviewCursor(int useful, int reviewId) implements Comparable<ReviewCursor> {
+    private static final String PREFIX = "useful:";
+
+    public static ReviewCursor of(Review review) {
+        return new ReviewCursor(review.getUseful(), review.getReviewId());
+    }
+
+    @Override
+    public int compareTo(ReviewCursor other) {
+        int byUseful = Integer.compare(useful, other.useful);
+        return byUseful != 0 ? byUseful : Integer.compare(reviewId, other.reviewId);
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + useful + ":" + reviewId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ReviewCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts;
+            if (cursor.matches("-?\\d+,\\d+")) {
+                parts = cursor.split(",");
+            } else {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                if (!value.startsWith(PREFIX)) {
+                    throw new ValidationException("Некорректный курсор отзывов: " + cursor);
+                }
+                parts = value.substring(PREFIX.length()).split(":");
+            }
+            if (parts.length != 2) {
+                throw new ValidationException("Некорректный курсор отзывов: " + cursor);
+            }
+            return new ReviewCursor(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректный курсор отзывов: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная очередь без блокировок: много писателей, один читатель.
+ * <p>
+ * У каждой ячейки свой номер последовательности (схема Вьюкова): писатель занимает позицию CAS-ом по хвосту
+ * и публикует значение, сдвигая номер ячейки; читатель забирает ячейки по порядку, пока они опубликованы.
+ * Полная очередь не ждет, а возвращает false - что делать дальше, решает писатель.
+ */
+public final class RingBuffer<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Емкость должна быть степенью двойки: " + capacity);
+        }
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(T value) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, value);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // ячейку еще не освободил читатель - очередь полна
+            } else {
+                position = tail.get(); // позицию занял другой писатель
+            }
+        }
+    }
+
+    /**
+     * Переносит в target до max опубликованных значений по порядку. Вызывается только одним потоком.
+     */
+    public int drainTo(List<? super T> target, int max) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) break;
+            target.add(slots.get(index));
+            slots.lazySet(index, null);
+            sequences.set(index, position + mask + 1);
+            position++;
+            drained++;
+        }
+        head.set(position);
+        return drained;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity(), tail.get() - head.get()));
+    }
+
+    /**
+     * Сколько значений всего было принято в очередь.
+     */
+    public long offered() {
+        return tail.get();
+    }
+
+    /**
+     * Сколько значений всего забрал читатель.
+     */
+    public long drained() {
+        return head.get();
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Приблизительное LRU-вытеснение для кэша на ConcurrentMap: записи помечаются временем обращения
+ * из {@link #tick()}, а вытеснение убирает около десятой части самых давних.
+ * <p>
+ * Порог - десятый процентиль времени обращения по случайной выборке записей: выборка набирается
+ * резервуаром за тот же проход, которым потом убираются старые записи, поэтому не зависит от порядка
+ * хешей в таблице. Вытесняет один поток за раз, остальные в это время не ждут.
+ */
+public final class SampledLru {
+    private final int sampleSize;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public SampledLru(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Время обращения, большее всех выданных раньше.
+     */
+    public long tick() {
+        return clock.incrementAndGet();
+    }
+
+    /**
+     * Убирает записи не новее порога. lastUsed записи, которую вытеснять нельзя, - Long.MAX_VALUE;
+     * remove убирает запись, если она все еще та же, и возвращает true, если убрал.
+     * Возвращает число убранных записей; 0 - если вытесняет другой поток.
+     */
+    public <K, V> int evict(Map<K, V> entries, ToLongFunction<V> lastUsed, BiPredicate<K, V> remove) {
+        if (!evicting.compareAndSet(false, true)) return 0;
+        try {
+            long[] sample = new long[sampleSize];
+            int sampled = 0;
+            long seen = 0;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (V value : entries.values()) {
+                long used = lastUsed.applyAsLong(value);
+                if (sampled < sampleSize) {
+                    sample[sampled++] = used;
+                } else {
+                    long slot = random.nextLong(seen + 1);
+                    if (slot < sampleSize) sample[(int) slot] = used;
+                }
+                seen++;
+            }
+            if (sampled == 0) return 0;
+            Arrays.sort(sample, 0, sampled);
+            long threshold = sample[sampled / 10];
+            if (threshold == Long.MAX_VALUE) return 0;
+
+            int removed = 0;
+            for (Map.Entry<K, V> entry : entries.entrySet()) {
+                if (lastUsed.applyAsLong(entry.getValue()) <= threshold && remove.test(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Неизменяемое разреженное битовое множество: хранятся только ненулевые 64-битные слова и их номера.
+ * <p>
+ * У пользователя лайков обычно на порядки меньше, чем фильмов в каталоге, поэтому плотный bitset
+ * на весь каталог тратил бы память на нули. Для пересечений одно из множеств разворачивается
+ * в плотный массив, см. {@link #andCardinality(long[])}.
+ */
+public final class SparseBitmap {
+    public static final SparseBitmap EMPTY = new SparseBitmap(new int[0], new long[0], 0);
+
+    private final int[] wordIndexes;
+    private final long[] words;
+    private final int cardinality;
+
+    private SparseBitmap(int[] wordIndexes, long[] words, int cardinality) {
+        this.wordIndexes = wordIndexes;
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    public static SparseBitmap of(int... bits) {
+        int[] sorted = bits.clone();
+        Arrays.sort(sorted);
+
+        int[] indexes = new int[sorted.length];
+        long[] values = new long[sorted.length];
+        int length = 0;
+        int cardinality = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) continue;
+            int wordIndex = sorted[i] >>> 6;
+            if (length == 0 || indexes[length - 1] != wordIndex) {
+                indexes[length++] = wordIndex;
+            }
+            values[length - 1] |= 1L << sorted[i];
+            cardinality++;
+        }
+        return new SparseBitmap(Arrays.copyOf(indexes, length), Arrays.copyOf(values, length), cardinality);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean contains(int bit) {
+        int position = Arrays.binarySearch(wordIndexes, bit >>> 6);
+        return position >= 0 && (words[position] & (1L << bit)) != 0;
+    }
+
+    public SparseBitmap with(int bit) {
+        if (contains(bit)) return this;
+
+        int wordIndex = bit >>> 6;
+        int position = Arrays.binarySearch(wordIndexes, wordIndex);
+        if (position >= 0) {
+            long[] newWords = words.clone();
+            newWords[position] |= 1L << bit;
+            return new SparseBitmap(wordIndexes, newWords, cardinality + 1);
+        }
+
+        int insertAt = -position - 1;
+        int[] newIndexes = new int[wordIndexes.length + 1];
+        long[] newWords = new long[words.length + 1];
+        System.arraycopy(wordIndexes, 0, newIndexes, 0, insertAt);
+        System.arraycopy(words, 0, newWords, 0, insertAt);
+        newIndexes[insertAt] = wordIndex;
+        newWords[insertAt] = 1L << bit;
+        System.arraycopy(wordIndexes, insertAt, newIndexes, insertAt + 1, wordIndexes.length - insertAt);
+        System.arraycopy(words, insertAt, newWords, insertAt + 1, words.length - insertAt);
+        return new SparseBitmap(newIndexes, newWords, cardinality + 1);
+    }
+
+    public SparseBitmap without(int bit) {
+        if (!contains(bit)) return this;
+
+        int position = Arrays.binarySearch(wordIndexes, bit >>> 6);
+        long word = words[position] & ~(1L << bit);
+        if (word != 0) {
+            long[] newWords = words.clone();
+            newWords[position] = word;
+            return new SparseBitmap(wordIndexes, newWords, cardinality - 1);
+        }
+
+        int[] newIndexes = new int[wordIndexes.length - 1];
+        long[] newWords = new long[words.length - 1];
+        System.arraycopy(wordIndexes, 0, newIndexes, 0, position);
+        System.arraycopy(words, 0, newWords, 0, position);
+        System.arraycopy(wordIndexes, position + 1, newIndexes, position, wordIndexes.length - position - 1);
+        System.arraycopy(words, position + 1, newWords, position, words.length - position - 1);
+        return new SparseBitmap(newIndexes, newWords, cardinality - 1);
+    }
+
+    /**
+     * Пересечение: слияние номеров слов и AND совпавших слов.
+     */
+    public SparseBitmap and(SparseBitmap other) {
+        int[] indexes = new int[Math.min(wordIndexes.length, other.wordIndexes.length)];
+        long[] values = new long[indexes.length];
+        int length = 0;
+        int cardinality = 0;
+        int i = 0, j = 0;
+        while (i < wordIndexes.length && j < other.wordIndexes.length) {
+            int a = wordIndexes[i], b = other.wordIndexes[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                long word = words[i++] & other.words[j++];
+                if (word != 0) {
+                    indexes[length] = a;
+                    values[length++] = word;
+                    cardinality += Long.bitCount(word);
+                }
+            }
+        }
+        if (length == 0) return EMPTY;
+        return new SparseBitmap(Arrays.copyOf(indexes, length), Arrays.copyOf(values, length), cardinality);
+    }
+
+    /**
+     * Плотная копия: массив из {@code length} слов, бит i лежит в слове i / 64.
+     */
+    public long[] toDense(int length) {
+        long[] dense = new long[length];
+        for (int i = 0; i < wordIndexes.length && wordIndexes[i] < length; i++) {
+            dense[wordIndexes[i]] = words[i];
+        }
+        return dense;
+    }
+
+    /**
+     * Размер пересечения с плотным множеством из {@link #toDense(int)}.
+     * <p>
+     * Вместо слияния двух разреженных списков слово берется из плотного массива по номеру,
+     * поэтому в цикле нет ветвлений, которые процессор не смог бы предсказать.
+     */
+    public int andCardinality(long[] dense) {
+        int count = 0;
+        for (int i = 0; i < wordIndexes.length; i++) {
+            int wordIndex = wordIndexes[i];
+            if (wordIndex < dense.length) count += Long.bitCount(dense[wordIndex] & words[i]);
+        }
+        return count;
+    }
+
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                consumer.accept((wordIndexes[i] << 6) + bit);
+                word &= word - 1;
+            }
+        }
+    }
+}
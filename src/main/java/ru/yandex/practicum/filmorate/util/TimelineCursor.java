@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.util;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в ленте, идущей от новых событий к старым: (время, id события).
+ * <p>
+ * Id нужен, чтобы граница страницы не теряла события с одинаковым временем. В параметре {@code before}
+ * принимается как непрозрачная строка из {@link #encode()}, так и просто время в миллисекундах -
+ * тогда отдаются события строго раньше него.
+ */
+public record TimelineCursor(long timestamp, int eventId) implements Comparable<TimelineCursor> {
+    public static final TimelineCursor NEWEST = new TimelineCursor(Long.MAX_VALUE, Integer.MAX_VALUE);
+    private static final String PREFIX = "ts:";
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + timestamp + ":" + eventId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TimelineCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return NEWEST;
+        }
+        try {
+            if (cursor.chars().allMatch(Character::isDigit)) {
+                return new TimelineCursor(Long.parseLong(cursor), Integer.MIN_VALUE);
+            }
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = value.split(":");
+            if (!value.startsWith(PREFIX) || parts.length != 3) {
+                throw new ValidationException("Некорректный курсор ленты: " + cursor);
+            }
+            return new TimelineCursor(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректный курсор ленты: " + cursor);
+        }
+    }
+
+    // больше - значит новее
+    @Override
+    public int compareTo(TimelineCursor other) {
+        int byTime = Long.compare(timestamp, other.timestamp);
+        return byTime != 0 ? byTime : Integer.compare(eventId, other.eventId);
+    }
+}
@@ -1,5 +1,6 @@
 -- для отладки, чтобы перед каждым тестом не удалять таблицы в консоли
 drop table if exists feed;
+drop table if exists feed_position;
 drop table if exists Film_Director;
 drop table if exists film_genres;
 drop table if exists friendships;
@@ -11,6 +12,10 @@ drop table if exists reviews;
 drop table if exists users;
 drop table if exists films;
 --drop table if exists mpa_ratings;
+drop sequence if exists films_seq;
+drop sequence if exists users_seq;
+drop sequence if exists reviews_seq;
+drop sequence if exists feed_seq;
 
 CREATE TABLE IF NOT EXISTS users (
                                      id INT PRIMARY KEY,
@@ -32,6 +37,7 @@ CREATE TABLE IF NOT EXISTS films (
     release_date DATE,
     duration INT,
     mpa_id INT,
+    like_count INT NOT NULL DEFAULT 0,  -- число лайков, поддерживается вместе с таблицей likes
     FOREIGN KEY (mpa_id) REFERENCES mpa_ratings(id)
     );
 
@@ -71,7 +77,7 @@ CREATE TABLE IF NOT EXISTS reviews (
                                        is_positive BOOLEAN NOT NULL,
                                        user_id INT NOT NULL,
                                        film_id INT NOT NULL,
-                                       usefulness INT DEFAULT 0,
+                                       usefulness INT NOT NULL DEFAULT 0,
                                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
                                        FOREIGN KEY (film_id) REFERENCES films(id) ON DELETE CASCADE
 );
@@ -80,7 +86,7 @@ CREATE TABLE IF NOT EXISTS review_likes (
                                             review_id INT NOT NULL,
                                             user_id INT NOT NULL,
                                             is_positive BOOLEAN NOT NULL,
-                                            PRIMARY KEY (review_id, user_id, is_positive),
+                                            PRIMARY KEY (review_id, user_id), -- один голос пользователя за отзыв
                                             FOREIGN KEY (review_id) REFERENCES reviews(id) ON DELETE CASCADE,
                                             FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
@@ -104,6 +110,32 @@ CREATE TABLE IF NOT EXISTS feed (
                                     event_type VARCHAR(10) NOT NULL,
                                     operation VARCHAR(10) NOT NULL,
                                     entity_id INT NOT NULL,
+                                    position INT NOT NULL,
                                     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
+-- последняя выданная позиция ленты: строку блокирует каждая вставка в feed до своей фиксации,
+-- поэтому позиции растут в порядке фиксации, а не выдачи event_id
+CREATE TABLE IF NOT EXISTS feed_position (
+                                    id INT PRIMARY KEY,
+                                    position INT NOT NULL
+);
+MERGE INTO feed_position (id, position) KEY (id) VALUES (1, 0);
+
+-- сортировка по популярности и выборки по жанру/режиссеру
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC, id);
+CREATE INDEX IF NOT EXISTS film_genres_genre_idx ON film_genres (genre_id, film_id);
+CREATE INDEX IF NOT EXISTS film_director_director_idx ON film_director (director_id, film_id);
+-- лента пользователя читается страницами по позиции
+CREATE INDEX IF NOT EXISTS feed_user_position_idx ON feed (user_id, position);
+-- ленты друзей в /users/{id}/timeline читаются от новых событий к старым
+CREATE INDEX IF NOT EXISTS feed_user_timestamp_idx ON feed (user_id, timestamp, event_id);
+-- страницы /reviews по убыванию полезности; H2 не читает индекс в обратном порядке, поэтому DESC
+CREATE INDEX IF NOT EXISTS reviews_film_usefulness_idx ON reviews (film_id, usefulness DESC, id DESC);
+CREATE INDEX IF NOT EXISTS reviews_usefulness_idx ON reviews (usefulness DESC, id DESC);
+
+-- id выдаются приложением блоками по INCREMENT BY (см. IdAllocator)
+CREATE SEQUENCE IF NOT EXISTS films_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS reviews_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS feed_seq START WITH 1 INCREMENT BY 50;
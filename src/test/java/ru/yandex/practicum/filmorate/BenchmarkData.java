@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Засеивает БД фильмами с тремя жанрами, двумя режиссерами (id 100 и 101) и разным числом лайков
+ * для сравнительных тестов производительности.
+ */
+final class BenchmarkData {
+    static final int FIRST_ID = 1000;
+    static final int FILMS = 40;
+    static final int USERS = 1500;
+    static final int LIKES_PER_FILM = 1000;
+
+    private BenchmarkData() {
+    }
+
+    static void seed(JdbcTemplate jdbcTemplate, FilmDbStorage filmStorage) {
+        jdbcTemplate.update("INSERT INTO directors (id, name) VALUES (100, 'Bench One'), (101, 'Bench Two')");
+
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(new Object[]{FIRST_ID + i, "bench" + i + "@mail.ru", "bench" + i, LocalDate.of(2000, 1, 1)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, email, login, birthday) VALUES (?, ?, ?, ?)", users);
+
+        List<Object[]> films = new ArrayList<>();
+        List<Object[]> genres = new ArrayList<>();
+        List<Object[]> directors = new ArrayList<>();
+        List<Object[]> likes = new ArrayList<>();
+        for (int f = 0; f < FILMS; f++) {
+            int filmId = FIRST_ID + f;
+            films.add(new Object[]{filmId, "bench film " + f, LocalDate.of(2000 + f % 20, 1, 1)});
+            for (int g = 1; g <= 3; g++) {
+                genres.add(new Object[]{filmId, g});
+            }
+            directors.add(new Object[]{filmId, 100});
+            directors.add(new Object[]{filmId, 101});
+            for (int u = 0; u < LIKES_PER_FILM - f; u++) {
+                likes.add(new Object[]{filmId, FIRST_ID + u});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (id, name, description, release_date, duration, mpa_id)" +
+                " VALUES (?, ?, 'bench', ?, 100, 1)", films);
+        jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", genres);
+        jdbcTemplate.batchUpdate("INSERT INTO film_director (film_id, director_id) VALUES (?, ?)", directors);
+        jdbcTemplate.batchUpdate("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", likes);
+        filmStorage.reconcileLikeCounts();
+    }
+}
@@ -0,0 +1,215 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.service.FeedAppender;
+import ru.yandex.practicum.filmorate.service.FeedHub;
+import ru.yandex.practicum.filmorate.service.FeedTimeline;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FeedAppenderTest {
+    private final RecordingFeedStorage storage = new RecordingFeedStorage();
+    private FeedAppender appender;
+
+    @AfterEach
+    void tearDown() {
+        if (appender != null) appender.drain();
+    }
+
+    @Test
+    void writesInBatchesAndReadsSeeAcceptedEvents() throws Exception {
+        appender = appender(FeedAppender.Mode.ASYNC, 1024, 64, 10_000);
+        appendConcurrently(4, 100);
+
+        // интервал большой, но чтение дожидается записи принятых событий
+        appender.awaitFlushed();
+        assertThat(storage.events).hasSize(400);
+        assertThat(storage.batchSizes).allMatch(size -> size <= 64);
+        assertThat(storage.singleWrites.get()).isZero();
+        // события одного пользователя записаны в порядке приема
+        for (int userId = 1; userId <= 4; userId++) {
+            int id = userId;
+            assertThat(storage.events.stream().filter(event -> event.getUserId() == id).map(FeedEvent::getEntityId))
+                    .isSorted();
+        }
+        assertThat(appender.stats().written()).isEqualTo(400);
+    }
+
+    @Test
+    void flushesIncompleteBatchByTime() throws Exception {
+        appender = appender(FeedAppender.Mode.ASYNC, 1024, 1000, 20);
+        for (int i = 0; i < 3; i++) {
+            appender.append(event(1, i));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (storage.events.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(storage.events).hasSize(3);
+        assertThat(storage.batchSizes).containsExactly(3);
+    }
+
+    @Test
+    void slowStorageBlocksWritersWithoutLosingEvents() throws Exception {
+        storage.batchDelayMillis = 20;
+        appender = appender(FeedAppender.Mode.ASYNC, 8, 4, 5);
+        appendConcurrently(4, 50);
+        appender.drain();
+
+        FeedAppender.Stats stats = appender.stats();
+        assertThat(storage.events).hasSize(200);
+        assertThat(stats.blockedAppends()).isPositive();
+        assertThat(stats.written() + stats.directWrites()).isEqualTo(200);
+        assertThat(stats.queueDepth()).isZero();
+    }
+
+    @Test
+    void failedBatchIsRetriedEventByEvent() {
+        storage.rejectedEntityId = 13;
+        appender = appender(FeedAppender.Mode.ASYNC, 1024, 100, 10_000);
+        for (int i = 0; i < 20; i++) {
+            appender.append(event(1, i));
+        }
+        appender.drain();
+
+        assertThat(storage.events).hasSize(19);
+        assertThat(appender.stats().failed()).isEqualTo(1);
+        // после остановки события пишутся сразу
+        appender.append(event(1, 100));
+        assertThat(storage.events).hasSize(20);
+    }
+
+    @Test
+    void syncModeWritesOnCallerThread() {
+        appender = appender(FeedAppender.Mode.SYNC, 1024, 100, 10_000);
+        appender.append(event(1, 1));
+
+        assertThat(storage.events).hasSize(1);
+        assertThat(storage.singleWrites.get()).isEqualTo(1);
+        assertThat(appender.stats().directWrites()).isEqualTo(1);
+    }
+
+    @Test
+    void requestThreadLatency() throws Exception {
+        // каждая запись в БД стоит 200 мкс плюс 2 мкс на строку пачки
+        storage.statementMicros = 200;
+        int threads = 4;
+        int events = 500;
+        for (FeedAppender.Mode mode : FeedAppender.Mode.values()) {
+            storage.events.clear();
+            appender = appender(mode, 8192, 256, 20);
+            long start = System.nanoTime();
+            appendConcurrently(threads, events);
+            long appendMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            appender.awaitFlushed();
+            long totalMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            appender.drain();
+
+            assertThat(storage.events).hasSize(threads * events);
+            log.info("{}: {} events from {} threads accepted in {} us ({} us per event), written in {} us; {}",
+                    mode, threads * events, threads, appendMicros, appendMicros * threads / (threads * events),
+                    totalMicros, appender.stats());
+        }
+    }
+
+    private FeedAppender appender(FeedAppender.Mode mode, int capacity, int batchSize, long flushIntervalMillis) {
+        FeedAppender appender = new FeedAppender(storage, new FeedHub(storage), new FeedTimeline(storage));
+        ReflectionTestUtils.setField(appender, "mode", mode);
+        ReflectionTestUtils.setField(appender, "bufferCapacity", capacity);
+        ReflectionTestUtils.setField(appender, "batchSize", batchSize);
+        ReflectionTestUtils.setField(appender, "flushIntervalMillis", flushIntervalMillis);
+        appender.start();
+        return appender;
+    }
+
+    private void appendConcurrently(int threads, int eventsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int userId = 1; userId <= threads; userId++) {
+                int id = userId;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        appender.append(event(id, i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private FeedEvent event(int userId, int entityId) {
+        return new FeedEvent(null, null, userId, EventType.LIKE, Operation.ADD, entityId);
+    }
+
+    private static class RecordingFeedStorage implements FeedStorage {
+        final List<FeedEvent> events = new CopyOnWriteArrayList<>();
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final AtomicInteger singleWrites = new AtomicInteger();
+        volatile long batchDelayMillis;
+        volatile long statementMicros;
+        volatile int rejectedEntityId = -1;
+
+        @Override
+        public void addEvent(FeedEvent event) {
+            statement(1);
+            if (event.getEntityId() == rejectedEntityId) throw new IllegalStateException("rejected");
+            singleWrites.incrementAndGet();
+            events.add(event);
+        }
+
+        @Override
+        public void addEvents(List<FeedEvent> batch) {
+            statement(batch.size());
+            if (batch.stream().anyMatch(event -> event.getEntityId() == rejectedEntityId)) {
+                throw new IllegalStateException("rejected");
+            }
+            sleep(batchDelayMillis);
+            batchSizes.add(batch.size());
+            events.addAll(batch);
+        }
+
+        @Override
+        public List<FeedEvent> getFeedPage(int userId, Integer afterEventId, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+            return List.of();
+        }
+
+        private void statement(int rows) {
+            if (statementMicros == 0) return;
+            long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(statementMicros + 2L * rows);
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
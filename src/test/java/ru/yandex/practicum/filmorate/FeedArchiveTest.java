@@ -0,0 +1,227 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.exception.ServerException;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.archive.FeedArchive;
+import ru.yandex.practicum.filmorate.storage.archive.FeedArchiver;
+import ru.yandex.practicum.filmorate.storage.archive.FeedSegment;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FeedDbStorage.class, IdAllocator.class, FeedArchive.class})
+// сегменты переживают откат транзакции теста, поэтому архив с ними не должен достаться другим тестам
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FeedArchiveTest {
+    private static final long NOW = System.currentTimeMillis();
+    private static final long CUTOFF = NOW - TimeUnit.DAYS.toMillis(30);
+
+    @Autowired
+    private FeedDbStorage feedStorage;
+    @Autowired
+    private FeedArchive feedArchive;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @TempDir
+    private Path directory;
+    private FeedArchiver archiver;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(feedArchive, "directory", directory.toString());
+        ReflectionTestUtils.setField(feedArchive, "sqlInitMode", "embedded");
+        feedArchive.open();
+        archiver = new FeedArchiver(feedStorage, feedArchive);
+        ReflectionTestUtils.setField(archiver, "segmentEvents", 20);
+    }
+
+    @Test
+    void archivedEventsAreReadTogetherWithTable() {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(add(101, 1_000L + i / 2)); // попарно одинаковое время
+            add(102, 1_000L + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            expected.add(add(101, NOW + i));
+        }
+
+        assertThat(archiver.archive(CUTOFF)).isEqualTo(100);
+        assertThat(feedArchive.stats().segments()).isEqualTo(5);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class)).isEqualTo(5);
+
+        List<FeedEvent> feed = feedStorage.getFeedPage(101, null, 1000);
+        assertThat(feed).extracting(FeedEvent::getEventId).containsExactlyElementsOf(expected);
+        assertThat(feedStorage.getFeedPage(101, feed.get(44).getPosition(), 7))
+                .extracting(FeedEvent::getEventId).containsExactlyElementsOf(expected.subList(45, 52));
+        assertThat(feedStorage.getEventsBefore(101, Long.MAX_VALUE, Integer.MAX_VALUE, 1000))
+                .extracting(FeedEvent::getEventId).containsExactlyElementsOf(expected.reversed());
+        assertThat(feedStorage.getEventsBefore(101, 1_010, expected.get(21), 3))
+                .extracting(FeedEvent::getEventId).containsExactly(expected.get(20), expected.get(19), expected.get(18));
+        FeedEvent archived = feedStorage.getFeedPage(101, null, 1).getFirst();
+        assertThat(archived).isEqualTo(new FeedEvent(expected.getFirst(), 1_000L, 101, EventType.LIKE,
+                Operation.ADD, 7));
+    }
+
+    @Test
+    void eventLeftInTableAfterCrashIsReadOnce() {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(add(101, 1_000L + i));
+        }
+        Integer position = jdbcTemplate.queryForObject("SELECT position FROM feed WHERE event_id = ?",
+                Integer.class, expected.get(3));
+        archiver.archive(CUTOFF);
+        // сбой между записью сегмента и удалением строк
+        jdbcTemplate.update("INSERT INTO feed (event_id, timestamp, user_id, event_type, operation, entity_id," +
+                " position) VALUES (?, 1003, 101, 'LIKE', 'ADD', 7, ?)", expected.get(3), position);
+
+        assertThat(feedStorage.getFeedPage(101, null, 100))
+                .extracting(FeedEvent::getEventId).containsExactlyElementsOf(expected);
+        assertThat(feedStorage.getEventsBefore(101, Long.MAX_VALUE, Integer.MAX_VALUE, 100))
+                .extracting(FeedEvent::getEventId).containsExactlyElementsOf(expected.reversed());
+    }
+
+    @Test
+    void segmentsAreReopenedAndCheckedOnStart() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            add(101 + i % 2, 1_000L + i);
+        }
+        archiver.archive(CUTOFF);
+
+        FeedArchive reopened = new FeedArchive();
+        ReflectionTestUtils.setField(reopened, "directory", directory.toString());
+        reopened.open();
+        assertThat(reopened.stats()).isEqualTo(feedArchive.stats());
+        assertThat(reopened.getFeedPage(102, null, 100)).isEqualTo(feedArchive.getFeedPage(102, null, 100));
+
+        // при пересоздаваемой схеме сегменты прошлого запуска удаляются
+        FeedArchive recreated = new FeedArchive();
+        ReflectionTestUtils.setField(recreated, "directory", directory.toString());
+        ReflectionTestUtils.setField(recreated, "sqlInitMode", "always");
+        Files.copy(feedArchive.latest().getPath(), directory.resolve("copy" + FeedSegment.SUFFIX));
+        Path damaged = directory.resolve("damaged" + FeedSegment.SUFFIX);
+        Files.copy(feedArchive.latest().getPath(), damaged);
+        Files.write(damaged, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        assertThatThrownBy(reopened::open).isInstanceOf(ServerException.class).hasMessageContaining("damaged");
+        recreated.open();
+        assertThat(recreated.stats().segments()).isZero();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void pagesSeekThroughSkipPoints() throws Exception {
+        // позиции с разрывами; у одного пользователя событий на много точек пропуска, у другого меньше одной
+        Random random = new Random(7);
+        List<FeedEvent> events = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i < 1000; i++) {
+            position += 1 + random.nextInt(3);
+            FeedEvent event = new FeedEvent(10_000 - i, 1_000L + random.nextInt(50), i % 7 == 0 ? 102 : 101,
+                    EventType.LIKE, Operation.ADD, i);
+            event.setPosition(position);
+            events.add(event);
+        }
+        FeedSegment segment = FeedSegment.write(directory, events);
+
+        for (int userId : new int[]{101, 102}) {
+            List<FeedEvent> expected = events.stream().filter(event -> event.getUserId() == userId).toList();
+            for (int after = 0; after <= position; after += 1 + random.nextInt(40)) {
+                int from = after;
+                List<FeedEvent> page = expected.stream().filter(event -> event.getPosition() > from).limit(10).toList();
+                assertThat(segment.eventsAfter(userId, after, 10)).as("user %d after %d", userId, after)
+                        .usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(page);
+            }
+            // постранично - вся лента пользователя
+            List<FeedEvent> paged = new ArrayList<>();
+            List<FeedEvent> page = segment.eventsAfter(userId, 0, 33);
+            while (!page.isEmpty()) {
+                paged.addAll(page);
+                page = segment.eventsAfter(userId, page.getLast().getPosition(), 33);
+            }
+            assertThat(paged).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void segmentSizeAndReadLatency() {
+        ReflectionTestUtils.setField(archiver, "segmentEvents", 100_000);
+        int[] userIds = {1, 10, 20, 101, 102};
+        int events = 100_000;
+        Random random = new Random(3);
+        List<FeedEvent> batch = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            batch.add(new FeedEvent(null, 1_000_000L + i * 10L, userIds[i % userIds.length],
+                    EventType.values()[i % 3],
+                    Operation.values()[i % 3], 1 + random.nextInt(100_000)));
+        }
+        for (int from = 0; from < events; from += 1000) {
+            feedStorage.addEvents(batch.subList(from, from + 1000));
+        }
+
+        long start = System.nanoTime();
+        archiver.archive(CUTOFF);
+        long archiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        FeedArchive.Stats stats = feedArchive.stats();
+
+        int rounds = 200;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            feedStorage.getEventsBefore(101, Long.MAX_VALUE, Integer.MAX_VALUE, 20);
+        }
+        long readMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / rounds;
+
+        assertThat(stats.events()).isEqualTo(events);
+        assertThat(stats.bytes() / events).isLessThan(12);
+        log.info("{} events of {} users archived in {} ms: {} bytes ({} bytes per event); latest 20 events of a user" +
+                " with {} archived events read in {} us", events, userIds.length, archiveMillis,
+                stats.bytes(), stats.bytes() / events, events / userIds.length, readMicros);
+
+        // постраничное чтение всей архивной ленты пользователя: каждая страница начинается с точки пропуска
+        start = System.nanoTime();
+        int pages = 0;
+        List<FeedEvent> page = feedStorage.getFeedPage(101, null, 100);
+        while (!page.isEmpty()) {
+            pages++;
+            page = feedStorage.getFeedPage(101, page.getLast().getPosition(), 100);
+        }
+        log.info("{} feed pages of 100 archived events read in {} us per page", pages,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / pages);
+    }
+
+    private int add(int userId, long timestamp) {
+        FeedEvent event = new FeedEvent(null, timestamp, userId, EventType.LIKE, Operation.ADD, 7);
+        feedStorage.addEvent(event);
+        return event.getEventId();
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.archive.FeedArchive;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FeedDbStorage.class, IdAllocator.class, FeedArchive.class})
+class FeedDbStorageTest {
+
+    @Autowired
+    private FeedDbStorage feedStorage;
+
+    @Test
+    void feedIsReadPageByPageInEventOrder() {
+        List<Integer> eventIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FeedEvent event = new FeedEvent(null, null, 101, EventType.LIKE, Operation.ADD, i + 1);
+            feedStorage.addEvent(event);
+            eventIds.add(event.getEventId());
+            feedStorage.addEvent(new FeedEvent(null, null, 102, EventType.FRIEND, Operation.ADD, 101));
+        }
+
+        List<FeedEvent> first = feedStorage.getFeedPage(101, null, 2);
+        assertThat(first).extracting(FeedEvent::getEventId).containsExactlyElementsOf(eventIds.subList(0, 2));
+        assertThat(first).extracting(FeedEvent::getEntityId).containsExactly(1, 2);
+
+        List<FeedEvent> rest = feedStorage.getFeedPage(101, first.getLast().getPosition(), 10);
+        assertThat(rest).extracting(FeedEvent::getEventId).containsExactlyElementsOf(eventIds.subList(2, 5));
+        assertThat(feedStorage.getFeedPage(101, rest.getLast().getPosition(), 10)).isEmpty();
+        assertThat(feedStorage.getFeedPage(1, null, 10)).isEmpty();
+    }
+
+    @Test
+    void eventCommittedLaterWithLowerIdIsNotSkipped() {
+        FeedEvent first = new FeedEvent(null, null, 101, EventType.LIKE, Operation.ADD, 1);
+        feedStorage.addEvent(first);
+        List<FeedEvent> page = feedStorage.getFeedPage(101, null, 10);
+        assertThat(page).extracting(FeedEvent::getEventId).containsExactly(first.getEventId());
+
+        // id взят раньше, например из блока другого экземпляра, а вставка зафиксирована после чтения страницы
+        FeedEvent late = new FeedEvent(first.getEventId() - 1, null, 101, EventType.REVIEW, Operation.ADD, 2);
+        feedStorage.addEvents(List.of(late));
+
+        assertThat(feedStorage.getFeedPage(101, page.getLast().getPosition(), 10))
+                .extracting(FeedEvent::getEventId).containsExactly(late.getEventId());
+    }
+
+    @Test
+    void eventsBeforeAreReadNewestFirst() {
+        // два события с одним временем различаются только id
+        long[] timestamps = {100, 200, 200, 300};
+        List<Integer> eventIds = new ArrayList<>();
+        for (long timestamp : timestamps) {
+            FeedEvent event = new FeedEvent(null, timestamp, 101, EventType.LIKE, Operation.ADD, 1);
+            feedStorage.addEvent(event);
+            eventIds.add(event.getEventId());
+        }
+        feedStorage.addEvent(new FeedEvent(null, 250L, 102, EventType.LIKE, Operation.ADD, 1));
+
+        assertThat(feedStorage.getEventsBefore(101, Long.MAX_VALUE, Integer.MAX_VALUE, 10))
+                .extracting(FeedEvent::getEventId)
+                .containsExactly(eventIds.get(3), eventIds.get(2), eventIds.get(1), eventIds.get(0));
+        assertThat(feedStorage.getEventsBefore(101, 200, eventIds.get(2), 10))
+                .extracting(FeedEvent::getEventId)
+                .containsExactly(eventIds.get(1), eventIds.get(0));
+        assertThat(feedStorage.getEventsBefore(101, 300, Integer.MAX_VALUE, 1))
+                .extracting(FeedEvent::getEventId)
+                .containsExactly(eventIds.get(3));
+    }
+}
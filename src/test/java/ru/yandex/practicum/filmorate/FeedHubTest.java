@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.service.FeedHub;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FeedHubTest {
+    private final StoredFeed storage = new StoredFeed();
+    private final FeedHub hub = new FeedHub(storage);
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void liveEventsGoOnlyToSubscribersOfTheirUser() throws Exception {
+        CapturingEmitter first = new CapturingEmitter();
+        CapturingEmitter second = new CapturingEmitter();
+        CapturingEmitter other = new CapturingEmitter();
+        hub.subscribe(1, null, first);
+        hub.subscribe(1, null, second);
+        hub.subscribe(2, null, other);
+
+        for (int eventId = 1; eventId <= 100; eventId++) {
+            hub.publish(event(eventId, 1));
+        }
+        hub.publish(event(101, 2));
+
+        first.await(100);
+        second.await(100);
+        other.await(1);
+        assertThat(first.eventIds).containsExactlyElementsOf(IntStream.rangeClosed(1, 100).boxed().toList());
+        assertThat(second.eventIds).isEqualTo(first.eventIds);
+        assertThat(other.eventIds).containsExactly(101);
+        assertThat(hub.subscribers()).isEqualTo(3);
+
+        // отключившийся клиент отписывается при первой неудачной отправке
+        first.disconnected = true;
+        hub.publish(event(102, 1));
+        second.await(101);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hub.subscribers() > 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(first.eventIds).hasSize(100);
+        assertThat(hub.subscribers()).isEqualTo(2);
+    }
+
+    @Test
+    void reconnectReplaysMissedEventsOnce() throws Exception {
+        // история длиннее страницы чтения, и пока она досылается, приходят новые события
+        for (int eventId = 1; eventId <= 1200; eventId++) {
+            storage.events.add(event(eventId, 1));
+        }
+        CapturingEmitter emitter = new CapturingEmitter();
+        hub.subscribe(1, 2, emitter);
+        for (int eventId = 1201; eventId <= 1300; eventId++) {
+            FeedEvent event = event(eventId, 1);
+            storage.events.add(event);
+            hub.publish(event);
+        }
+
+        emitter.await(1298);
+        assertThat(emitter.eventIds).containsExactlyElementsOf(IntStream.rangeClosed(3, 1300).boxed().toList());
+    }
+
+    @Test
+    void eventWithLowerIdWrittenDuringReplayIsSentOnce() throws Exception {
+        for (int position = 1; position <= 600; position++) {
+            storage.events.add(event(1000 + position, 1, position));
+        }
+        CapturingEmitter emitter = new CapturingEmitter();
+        hub.subscribe(1, 0, emitter);
+        // id взят из более раннего блока, а запись зафиксирована после всей истории
+        FeedEvent late = event(5, 1, 601);
+        storage.events.add(late);
+        hub.publish(late);
+
+        emitter.await(601);
+        Thread.sleep(50);
+        assertThat(emitter.eventIds).hasSize(601).endsWith(5);
+    }
+
+    @Test
+    void slowClientIsDisconnected() throws Exception {
+        ReflectionTestUtils.setField(hub, "maxPending", 5);
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingEmitter emitter = new CapturingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+        };
+        hub.subscribe(1, null, emitter);
+
+        for (int eventId = 1; eventId <= 20; eventId++) {
+            hub.publish(event(eventId, 1));
+        }
+        assertThat(hub.subscribers()).isZero();
+        release.countDown();
+    }
+
+    @Test
+    void stuckClientsDoNotDelayOtherSubscribers() throws Exception {
+        // каждый несущий поток виртуальных потоков был бы закреплен за зависшей записью
+        int stuck = Runtime.getRuntime().availableProcessors() + 1;
+        ReflectionTestUtils.setField(hub, "senderThreads", stuck + 4);
+        ReflectionTestUtils.setField(hub, "maxPending", 25);
+        hub.start();
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < stuck; i++) {
+            hub.subscribe(100 + i, null, new CapturingEmitter() {
+                // как SseEmitter.send: запись в сокет под монитором emitter'а
+                @Override
+                public synchronized void send(SseEventBuilder builder) throws IOException {
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.send(builder);
+                }
+            });
+        }
+        CapturingEmitter live = new CapturingEmitter();
+        hub.subscribe(1, null, live);
+
+        try {
+            long start = System.nanoTime();
+            for (int eventId = 1; eventId <= 30; eventId++) {
+                for (int i = 0; i < stuck; i++) {
+                    hub.publish(event(eventId, 100 + i));
+                }
+            }
+            for (int eventId = 1; eventId <= 20; eventId++) {
+                hub.publish(event(eventId, 1));
+            }
+            // переполненные зависшие подписки закрыты, не дожидаясь их монитора
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+            assertThat(hub.subscribers()).isEqualTo(1);
+
+            live.await(20);
+            assertThat(live.eventIds).containsExactlyElementsOf(IntStream.rangeClosed(1, 20).boxed().toList());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void idleSubscriptionsHoldNoThreads() throws Exception {
+        int subscriptions = 50_000;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        int threadsBefore = Thread.activeCount();
+
+        List<CapturingEmitter> emitters = IntStream.range(0, subscriptions).mapToObj(i -> new CapturingEmitter())
+                .toList();
+        for (int i = 0; i < subscriptions; i++) {
+            hub.subscribe(i + 1, null, emitters.get(i));
+        }
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        assertThat(hub.subscribers()).isEqualTo(subscriptions);
+        assertThat(Thread.activeCount()).isLessThanOrEqualTo(threadsBefore + 1);
+
+        long start = System.nanoTime();
+        hub.publish(event(1, 777));
+        emitters.get(776).await(1);
+        long deliveryMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        log.info("{} idle subscriptions: ~{} bytes each, {} platform threads added; event delivered in {} us",
+                subscriptions, Math.max(0, heapAfter - heapBefore) / subscriptions,
+                Thread.activeCount() - threadsBefore, deliveryMicros);
+    }
+
+    private static FeedEvent event(int eventId, int userId) {
+        return event(eventId, userId, eventId);
+    }
+
+    private static FeedEvent event(int eventId, int userId, int position) {
+        FeedEvent event = new FeedEvent(eventId, 0L, userId, EventType.LIKE, Operation.ADD, 1);
+        event.setPosition(position);
+        return event;
+    }
+
+    private static class CapturingEmitter extends SseEmitter {
+        final List<Integer> eventIds = new CopyOnWriteArrayList<>();
+        volatile boolean disconnected;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (disconnected) throw new IOException("Broken pipe");
+            builder.build().stream()
+                    .map(DataWithMediaType::getData)
+                    .filter(FeedEvent.class::isInstance)
+                    .forEach(data -> eventIds.add(((FeedEvent) data).getEventId()));
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (eventIds.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(eventIds).hasSizeGreaterThanOrEqualTo(count);
+        }
+    }
+
+    private static class StoredFeed implements FeedStorage {
+        final List<FeedEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void addEvent(FeedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void addEvents(List<FeedEvent> batch) {
+            events.addAll(batch);
+        }
+
+        @Override
+        public List<FeedEvent> getFeedPage(int userId, Integer afterPosition, int limit) {
+            return events.stream()
+                    .filter(event -> event.getUserId() == userId)
+                    .filter(event -> afterPosition == null || event.getPosition() > afterPosition)
+                    .limit(limit)
+                    .toList();
+        }
+
+        @Override
+        public List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.service.FeedTimeline;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.util.TimelineCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FeedTimelineTest {
+    private static final Comparator<FeedEvent> NEWEST_FIRST = Comparator
+            .comparing(FeedEvent::getTimestamp)
+            .thenComparing(FeedEvent::getEventId)
+            .reversed();
+
+    private final StoredFeed storage = new StoredFeed();
+    private final FeedTimeline timeline = new FeedTimeline(storage);
+    private int nextEventId = 1;
+
+    @Test
+    void pagesMatchSortingAllEvents() {
+        ReflectionTestUtils.setField(timeline, "windowSize", 8);
+        Random random = new Random(7);
+        int[] friends = IntStream.rangeClosed(1, 30).toArray();
+        // у части пользователей история длиннее окна, время часто совпадает
+        for (int i = 0; i < 600; i++) {
+            write(1 + random.nextInt(30), random.nextInt(200));
+        }
+        write(99, 150); // не друг
+
+        List<FeedEvent> expected = storage.events.stream()
+                .filter(event -> event.getUserId() != 99)
+                .sorted(NEWEST_FIRST)
+                .toList();
+        List<FeedEvent> pages = new ArrayList<>();
+        TimelineCursor before = TimelineCursor.NEWEST;
+        List<FeedEvent> page;
+        do {
+            page = timeline.merge(friends, before, 25);
+            pages.addAll(page);
+            if (!page.isEmpty()) {
+                before = new TimelineCursor(page.getLast().getTimestamp(), page.getLast().getEventId());
+            }
+        } while (page.size() == 25);
+
+        assertThat(pages).extracting(FeedEvent::getEventId)
+                .containsExactlyElementsOf(expected.stream().map(FeedEvent::getEventId).toList());
+        // просто время в before - события строго раньше него
+        assertThat(timeline.merge(friends, new TimelineCursor(100, Integer.MIN_VALUE), 1000))
+                .extracting(FeedEvent::getTimestamp)
+                .allMatch(timestamp -> timestamp < 100)
+                .hasSize((int) expected.stream().filter(event -> event.getTimestamp() < 100).count());
+    }
+
+    @Test
+    void firstPageIsServedFromWindows() {
+        ReflectionTestUtils.setField(timeline, "windowSize", 20);
+        int[] friends = IntStream.rangeClosed(1, 10).toArray();
+        for (int i = 0; i < 500; i++) {
+            write(1 + i % 10, i);
+        }
+        timeline.merge(friends, TimelineCursor.NEWEST, 20);
+        int reads = storage.reads.get();
+
+        // новые события попадают в окна при записи, БД больше не читается
+        write(3, 1000);
+        write(7, 1001);
+        List<FeedEvent> page = timeline.merge(friends, TimelineCursor.NEWEST, 20);
+
+        assertThat(storage.reads.get()).isEqualTo(reads);
+        List<Long> expected = new ArrayList<>(List.of(1001L, 1000L));
+        LongStream.iterate(499, t -> t - 1).limit(18).forEach(expected::add);
+        assertThat(page).extracting(FeedEvent::getTimestamp).containsExactlyElementsOf(expected);
+        assertThat(timeline.stats().windowLoads()).isEqualTo(10);
+    }
+
+    @Test
+    void eventWrittenWhileWindowLoadsIsKept() {
+        write(1, 1);
+        // событие записано в БД после того, как загрузка окна ее прочитала
+        storage.afterRead = () -> {
+            storage.afterRead = null;
+            FeedEvent late = event(1, 2);
+            storage.events.add(late);
+            timeline.eventWritten(late);
+        };
+
+        assertThat(timeline.merge(new int[]{1}, TimelineCursor.NEWEST, 10))
+                .extracting(FeedEvent::getTimestamp).containsExactly(2L, 1L);
+        int reads = storage.reads.get();
+        assertThat(timeline.merge(new int[]{1}, TimelineCursor.NEWEST, 10))
+                .extracting(FeedEvent::getTimestamp).containsExactly(2L, 1L);
+        assertThat(storage.reads.get()).isEqualTo(reads);
+    }
+
+    @Test
+    void leastRecentlyUsedWindowsAreEvicted() {
+        ReflectionTestUtils.setField(timeline, "maxCachedUsers", 100);
+        for (int userId = 1; userId <= 1000; userId++) {
+            write(userId, userId);
+            timeline.merge(new int[]{userId}, TimelineCursor.NEWEST, 10);
+        }
+        assertThat(timeline.stats().cachedUsers()).isLessThanOrEqualTo(101);
+
+        // вытеснение не теряет событий: окно просто загрузится снова
+        timeline.userRemoved(1000);
+        assertThat(timeline.merge(new int[]{1, 1000}, TimelineCursor.NEWEST, 10))
+                .extracting(FeedEvent::getUserId).containsExactly(1000, 1);
+    }
+
+    @Test
+    void firstPageLatency() {
+        int users = 2000;
+        int friendsCount = 300;
+        Random random = new Random(11);
+        for (int i = 0; i < users * 100; i++) {
+            write(1 + random.nextInt(users), random.nextInt(1_000_000));
+        }
+        storage.events.sort(Comparator.comparing(FeedEvent::getUserId).thenComparing(NEWEST_FIRST));
+        storage.indexByUser();
+        int[] friends = IntStream.rangeClosed(1, friendsCount).toArray();
+
+        long start = System.nanoTime();
+        timeline.merge(friends, TimelineCursor.NEWEST, 20);
+        long coldMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        int coldReads = storage.reads.get();
+
+        int rounds = 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            timeline.merge(friends, TimelineCursor.NEWEST, 20);
+        }
+        long warmMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / rounds;
+
+        assertThat(storage.reads.get()).isEqualTo(coldReads);
+        log.info("Timeline of {} friends: first page cold {} us with {} storage reads, warm {} us without reads; {}",
+                friendsCount, coldMicros, coldReads, warmMicros, timeline.stats());
+    }
+
+    private void write(int userId, long timestamp) {
+        FeedEvent event = event(userId, timestamp);
+        storage.events.add(event);
+        timeline.eventWritten(event);
+    }
+
+    private FeedEvent event(int userId, long timestamp) {
+        return new FeedEvent(nextEventId++, timestamp, userId, EventType.LIKE, Operation.ADD, 1);
+    }
+
+    private static class StoredFeed implements FeedStorage {
+        final List<FeedEvent> events = new ArrayList<>();
+        final AtomicInteger reads = new AtomicInteger();
+        volatile Runnable afterRead;
+        private volatile List<List<FeedEvent>> byUser;
+
+        @Override
+        public void addEvent(FeedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void addEvents(List<FeedEvent> batch) {
+            events.addAll(batch);
+        }
+
+        @Override
+        public List<FeedEvent> getFeedPage(int userId, Integer afterEventId, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<FeedEvent> getEventsBefore(int userId, long beforeTimestamp, int beforeEventId, int limit) {
+            reads.incrementAndGet();
+            TimelineCursor before = new TimelineCursor(beforeTimestamp, beforeEventId);
+            List<FeedEvent> source = byUser != null ? byUser.get(userId) : events;
+            List<FeedEvent> result = source.stream()
+                    .filter(event -> event.getUserId() == userId)
+                    .filter(event -> new TimelineCursor(event.getTimestamp(), event.getEventId())
+                            .compareTo(before) < 0)
+                    .sorted(NEWEST_FIRST)
+                    .limit(limit)
+                    .toList();
+            Runnable hook = afterRead;
+            if (hook != null) hook.run();
+            return result;
+        }
+
+        // для замера: события по пользователям, как в индексе (user_id, timestamp, event_id)
+        void indexByUser() {
+            List<List<FeedEvent>> index = new ArrayList<>();
+            for (FeedEvent event : events) {
+                while (index.size() <= event.getUserId()) index.add(new ArrayList<>());
+                index.get(event.getUserId()).add(event);
+            }
+            byUser = index;
+        }
+    }
+}
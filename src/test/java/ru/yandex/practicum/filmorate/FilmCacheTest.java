@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDetailsLoader;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FilmDbStorage.class, DirectorDbStorage.class, DirectorRowMapper.class, FilmsResultSetExtractor.class,
+        IdAllocator.class, FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class})
+class FilmCacheTest {
+    private static final int FIRST_ID = 30_000;
+    private static final int FILMS = 2000;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    private FilmCache filmCache;
+
+    @BeforeEach
+    void setUp() {
+        filmCache = new FilmCache(filmStorage);
+        List<Object[]> films = new ArrayList<>();
+        for (int i = 0; i < FILMS; i++) {
+            films.add(new Object[]{FIRST_ID + i, "film " + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (id, name, description, release_date, duration, mpa_id)" +
+                " VALUES (?, ?, 'cache', '2000-01-01', 100, 1)", films);
+    }
+
+    @Test
+    void servesCopiesUntilInvalidated() {
+        Film first = filmCache.get(1);
+        first.setName("changed by caller");
+        first.getLikes().add(999);
+        Film second = filmCache.get(1);
+        assertThat(second.getName()).isNotEqualTo("changed by caller");
+        assertThat(second.getLikes()).doesNotContain(999);
+        assertThat(filmCache.stats().hits()).isEqualTo(1);
+        assertThat(filmCache.stats().misses()).isEqualTo(1);
+
+        filmStorage.addLike(1, 101);
+        filmCache.invalidate(1);
+        assertThat(filmCache.get(1).getLikes()).contains(101);
+
+        jdbcTemplate.update("INSERT INTO directors (id, name) VALUES (700, 'Nolan')");
+        jdbcTemplate.update("INSERT INTO film_director (film_id, director_id) VALUES (1, 700)");
+        filmCache.invalidate(1);
+        filmCache.get(2);
+        assertThat(filmCache.get(1).getDirectors()).extracting(Director::getName).containsExactly("Nolan");
+
+        // сбрасываются только фильмы этого режиссера
+        jdbcTemplate.update("UPDATE directors SET name = 'Christopher Nolan' WHERE id = 700");
+        filmCache.directorChanged(700);
+        assertThat(filmCache.stats().size()).isEqualTo(1);
+        assertThat(filmCache.get(1).getDirectors()).extracting(Director::getName).containsExactly("Christopher Nolan");
+
+        assertThrows(NotFoundException.class, () -> filmCache.get(FIRST_ID + FILMS));
+    }
+
+    @Test
+    void scanDoesNotEvictPopularFilms() {
+        ReflectionTestUtils.setField(filmCache, "maxSize", 100);
+        long cachedMicros = readPopularWithScan();
+        FilmCache.Stats stats = filmCache.stats();
+
+        assertThat(stats.size()).isLessThanOrEqualTo(100);
+        assertThat(stats.evictions()).isPositive();
+        // разовые фильмы не проходят в основную часть, популярные почти всегда отдаются из памяти
+        assertThat(stats.hits()).isGreaterThanOrEqualTo(9 * (FILMS - 50) / 10);
+
+        filmCache = new FilmCache(filmStorage);
+        ReflectionTestUtils.setField(filmCache, "enabled", false);
+        long uncachedMicros = readPopularWithScan();
+        assertThat(filmCache.stats().hits()).isZero();
+        assertThat(filmCache.stats().size()).isZero();
+        log.info("{} popular reads between {} one-off reads: cache {} us ({}), no cache {} us",
+                FILMS - 50, FILMS - 50, cachedMicros, stats, uncachedMicros);
+    }
+
+    // на каждый разовый фильм одно обращение к одному из 50 популярных
+    private long readPopularWithScan() {
+        long start = System.nanoTime();
+        for (int i = 50; i < FILMS; i++) {
+            filmCache.get(FIRST_ID + i % 50);
+            filmCache.get(FIRST_ID + i);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+}
@@ -6,13 +6,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDetailsLoader;
+import ru.yandex.practicum.filmorate.storage.FilmsHydration;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
 import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
 import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
 
 import java.time.LocalDate;
 import java.util.HashSet;
@@ -20,18 +30,24 @@ import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({FilmDbStorage.class,
         DirectorDbStorage.class,
-        DirectorRowMapper.class, FilmsResultSetExtractor.class})
+        DirectorRowMapper.class, FilmsResultSetExtractor.class, IdAllocator.class,
+        FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class})
 class FilmDbStorageTest {
 
     @Autowired
     private FilmDbStorage filmStorage;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     void testCreateAndGetFilmById() {
         Film film = new Film();
@@ -43,7 +59,7 @@ class FilmDbStorageTest {
         film.setGenres(new HashSet<>(Set.of(new Genre(2, "Comedy"))));
         filmStorage.createFilm(film);
 
-        Film loaded = filmStorage.getAllFilms().getLast();
+        Film loaded = filmStorage.getFilmsPage(null, 1000).getLast();
 
         Film result = filmStorage.getFilmById(loaded.getId());
         assertThat(result).isNotNull();
@@ -72,13 +88,74 @@ class FilmDbStorageTest {
 
     @Test
     void testGetAllFilms() {
-        List<Film> films = filmStorage.getAllFilms();
+        List<Film> films = filmStorage.getFilmsPage(null, 1000);
         assertThat(films.size()).isGreaterThanOrEqualTo(4);
     }
 
     @Test
-    void testGetPopularFilms() {
-        List<Film> popular = filmStorage.getPopularFilms(2, null, null);
-        assertThat(popular.size()).isGreaterThanOrEqualTo(2);
+    void testGetFilmsByIds() {
+        List<Film> films = filmStorage.getFilmsByIds(List.of(3, 1, 999));
+
+        assertThat(films).extracting(Film::getId).containsExactly(1, 3);
+        assertThat(films.getFirst().getMpa().getId()).isEqualTo(1);
+        assertThat(films.getFirst().getGenres()).anyMatch(g -> g.getId() == 1);
+    }
+
+    @Test
+    void testGetFilmByIdNotFound() {
+        assertThrows(NotFoundException.class, () -> filmStorage.getFilmById(999));
+    }
+
+    @Test
+    void testGetFilmsPage() {
+        List<Film> first = filmStorage.getFilmsPage(null, 2);
+        List<Film> second = filmStorage.getFilmsPage(first.getLast().getId(), 2);
+
+        assertThat(first).extracting(Film::getId).containsExactly(1, 2);
+        assertThat(second).extracting(Film::getId).containsExactly(3, 4);
+    }
+
+    @Test
+    void testGetFilmsPageCountsFilmsNotJoinedRows() {
+        for (int userId : List.of(1, 10, 20, 101, 102)) {
+            filmStorage.addLike(1, userId);
+            filmStorage.addLike(2, userId);
+        }
+        filmStorage.addLike(3, 1);
+        ReflectionTestUtils.setField(filmStorage, "hydration", FilmsHydration.JOIN);
+        try {
+            List<Film> first = filmStorage.getFilmsPage(null, 3);
+
+            assertThat(first).extracting(Film::getId).containsExactly(1, 2, 3);
+            assertThat(first.get(0).getLikes()).containsExactlyInAnyOrder(1, 10, 20, 101, 102);
+            assertThat(first.get(1).getLikes()).hasSize(5);
+            assertThat(first.get(2).getLikes()).containsExactly(1);
+            assertThat(first).isEqualTo(filmStorage.getFilmsByIds(List.of(1, 2, 3)));
+            assertThat(filmStorage.getFilmsPage(3, 3)).extracting(Film::getId).containsExactly(4);
+        } finally {
+            ReflectionTestUtils.setField(filmStorage, "hydration", FilmsHydration.TWO_PHASE);
+        }
+    }
+
+    @Test
+    void testLikeCountFollowsLikes() {
+        filmStorage.addLike(3, 101);
+        filmStorage.addLike(3, 101);
+        filmStorage.addLike(3, 102);
+        filmStorage.addLike(4, 102);
+
+        assertThat(mostLiked(2)).containsExactly(3, 4);
+
+        filmStorage.removeLike(3, 101);
+        filmStorage.removeLike(3, 101);
+        filmStorage.removeLike(3, 102);
+
+        assertThat(mostLiked(1)).containsExactly(4);
+        assertThat(filmStorage.reconcileLikeCounts()).isZero();
+    }
+
+    private List<Integer> mostLiked(int count) {
+        return jdbcTemplate.queryForList("SELECT id FROM films ORDER BY like_count DESC, id LIMIT ?", Integer.class,
+                count);
     }
 }
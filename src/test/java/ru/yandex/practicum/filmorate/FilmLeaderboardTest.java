@@ -0,0 +1,223 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.*;
+import ru.yandex.practicum.filmorate.storage.*;
+import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FilmDbStorage.class, DirectorDbStorage.class, DirectorRowMapper.class, FilmsResultSetExtractor.class,
+        IdAllocator.class, FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class})
+class FilmLeaderboardTest {
+    private static final int ITERATIONS = 20;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private DirectorDbStorage directorStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void leaderboardMatchesPopularQuery() {
+        BenchmarkData.seed(jdbcTemplate, filmStorage);
+        FilmLeaderboard filmLeaderboard = new FilmLeaderboard(filmStorage);
+        filmLeaderboard.rebuild();
+
+        compare(filmLeaderboard, "popular", 10, null, null);
+        compare(filmLeaderboard, "popular by genre", 10, 2, null);
+        compare(filmLeaderboard, "popular by year", 10, null, 2005);
+        compare(filmLeaderboard, "popular by genre and year", null, 3, 2010);
+    }
+
+    @Test
+    void topStaysCompleteUnderConcurrentLikes() throws Exception {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        FilmLeaderboard leaderboard = new FilmLeaderboard(storage);
+        int films = 50;
+        for (int i = 0; i < films; i++) {
+            leaderboard.filmSaved(storage.createFilm(film(i)));
+        }
+
+        AtomicIntegerArray likes = new AtomicIntegerArray(films + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(9);
+        try {
+            // читатель: фильм не должен пропадать из рейтинга или попадать в него дважды
+            Future<Integer> reads = executor.submit(() -> {
+                int checks = 0;
+                while (running.get()) {
+                    List<Integer> top = leaderboard.top(null, null, null);
+                    assertThat(top).hasSize(films).doesNotHaveDuplicates();
+                    checks++;
+                }
+                return checks;
+            });
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                writers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20000; i++) {
+                        int filmId = random.nextInt(films) + 1;
+                        if (random.nextInt(4) == 0) {
+                            leaderboard.likeRemoved(filmId);
+                            likes.decrementAndGet(filmId);
+                        } else {
+                            leaderboard.likeAdded(filmId);
+                            likes.incrementAndGet(filmId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            assertThat(reads.get(1, TimeUnit.MINUTES)).isPositive();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Integer> expected = IntStream.rangeClosed(1, films).boxed()
+                .sorted(Comparator.comparingInt((Integer id) -> likes.get(id)).reversed()
+                        .thenComparingInt(id -> id))
+                .collect(Collectors.toList());
+        assertThat(leaderboard.top(null, null, null)).isEqualTo(expected);
+    }
+
+    @Test
+    void rebuildKeepsLikesMadeWhileItRuns() throws Exception {
+        AtomicReference<Runnable> afterRead = new AtomicReference<>(() -> { });
+        InMemoryFilmStorage storage = new InMemoryFilmStorage() {
+            @Override
+            public List<FilmPopularity> getFilmsPopularity() {
+                List<FilmPopularity> films = super.getFilmsPopularity();
+                afterRead.get().run();
+                return films;
+            }
+        };
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        FilmLeaderboard leaderboard = new FilmLeaderboard(storage);
+        UserLikesIndex userLikes = new UserLikesIndex(storage);
+        UserNeighbourIndex userNeighbours = new UserNeighbourIndex(userLikes);
+        IndexRebuilder rebuilder = new IndexRebuilder(leaderboard, new FilmSearchIndex(storage, directorStorage),
+                new FilmSuggestIndex(storage, directorStorage, leaderboard), userLikes,
+                new RecommendationService(userStorage, storage, new FilmSimilarityIndex(userLikes), userNeighbours),
+                new FriendGraph(userStorage));
+        for (int i = 0; i < 10; i++) {
+            leaderboard.filmSaved(storage.createFilm(film(i)));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Future<?>> likes = new ArrayList<>();
+            // лайк приходит, когда перестройка уже прочитала хранилище, но еще не подменила рейтинг
+            afterRead.set(() -> {
+                likes.add(executor.submit(() -> {
+                    Lock writeLock = rebuilder.writeLock();
+                    writeLock.lock();
+                    try {
+                        if (storage.addLike(3, 1)) leaderboard.likeAdded(3);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }));
+                try {
+                    likes.getFirst().get(200, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // лайк ждет конца перестройки
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            rebuilder.rebuild();
+            likes.getFirst().get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+            userNeighbours.shutdown();
+        }
+
+        assertThat(leaderboard.getLikes(3)).isEqualTo(1);
+        assertThat(leaderboard.top(1, null, null)).containsExactly(3);
+    }
+
+    private void compare(FilmLeaderboard filmLeaderboard, String name, Integer count, Integer genreId, Integer year) {
+        Supplier<List<Integer>> query = () -> popularQuery(count, genreId, year);
+        Supplier<List<Integer>> leaderboard = () -> filmLeaderboard.top(count, genreId, year);
+
+        double queryMillis = measure(query);
+        double leaderboardMillis = measure(leaderboard);
+        log.info("{}: query {} ms, leaderboard {} ms", name,
+                String.format("%.3f", queryMillis), String.format("%.3f", leaderboardMillis));
+
+        assertThat(leaderboard.get()).isNotEmpty().isEqualTo(query.get());
+    }
+
+    // прежний запрос популярных фильмов, который заменил рейтинг в памяти
+    private List<Integer> popularQuery(Integer count, Integer genreId, Integer year) {
+        StringBuilder sql = new StringBuilder("SELECT f.id FROM films f");
+        List<Object> parameters = new ArrayList<>();
+        if (genreId != null) {
+            sql.append(" INNER JOIN film_genres fg ON fg.film_id = f.id AND fg.genre_id = ?");
+            parameters.add(genreId);
+        }
+        sql.append(" WHERE TRUE");
+        if (year != null) {
+            sql.append(" AND f.release_date >= ? AND f.release_date < ?");
+            parameters.add(LocalDate.of(year, 1, 1));
+            parameters.add(LocalDate.of(year + 1, 1, 1));
+        }
+        sql.append(" ORDER BY f.like_count DESC, f.id LIMIT ?");
+        parameters.add(count != null ? count : Integer.MAX_VALUE);
+        return jdbcTemplate.queryForList(sql.toString(), Integer.class, parameters.toArray());
+    }
+
+    private double measure(Supplier<List<Integer>> supplier) {
+        supplier.get();     // прогрев
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            supplier.get();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+    }
+
+    private Film film(int i) {
+        Film film = new Film();
+        film.setName("film " + i);
+        film.setReleaseDate(LocalDate.of(2000 + i % 5, 1, 1));
+        film.setDuration(100);
+        film.setGenres(Set.of(new Genre(i % 3 + 1, "genre")));
+        return film;
+    }
+}
@@ -0,0 +1,202 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.service.FilmReviewTop;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewUsefulnessBuffer;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({ReviewDbStorage.class, IdAllocator.class, ReviewUsefulnessBuffer.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)  // голоса и чтения идут из разных потоков
+class FilmReviewTopTest {
+    private static final int FIRST_USER_ID = 6000;
+    private static final int USERS = 20;
+    private static final int TOP_SIZE = 6;
+
+    @Autowired
+    private ReviewDbStorage reviewStorage;
+    @Autowired
+    private ReviewUsefulnessBuffer usefulnessBuffer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    private FilmReviewTop filmReviewTop;
+
+    private final List<Review> reviews = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < USERS; i++) {
+            jdbcTemplate.update("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, '2000-01-01')",
+                    FIRST_USER_ID + i, "top" + i + "@mail.ru", "top" + i, "top" + i);
+        }
+        filmReviewTop = new FilmReviewTop(reviewStorage);
+        ReflectionTestUtils.setField(filmReviewTop, "size", TOP_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviews.forEach(review -> reviewStorage.deleteReview(review.getReviewId()));
+        jdbcTemplate.update("DELETE FROM users WHERE id >= ?", FIRST_USER_ID);
+    }
+
+    @Test
+    void topFollowsEveryChange() {
+        Random random = new Random(11);
+        for (int i = 0; i < 30; i++) {
+            create(1 + i % 2);
+        }
+        for (int step = 0; step < 3000; step++) {
+            int operation = random.nextInt(20);
+            Review review = reviews.get(random.nextInt(reviews.size()));
+            if (operation == 0) {
+                create(1 + random.nextInt(2));
+            } else if (operation == 1 && reviews.size() > 10) {
+                reviews.remove(review);
+                filmReviewTop.delete(review.getFilmId(), review.getReviewId(),
+                        () -> reviewStorage.deleteReview(review.getReviewId()));
+            } else if (operation == 2) {
+                review.setContent("edited " + step);
+                filmReviewTop.update(review.getFilmId(), () -> reviewStorage.updateReview(review));
+            } else {
+                vote(review, FIRST_USER_ID + random.nextInt(USERS), random.nextInt(4));
+            }
+
+            int filmId = 1 + random.nextInt(2);
+            int limit = 1 + random.nextInt(TOP_SIZE);
+            List<Review> top = filmReviewTop.top(filmId, limit);
+            if (top != null) {
+                assertThat(top).as("step %d", step).isEqualTo(expectedTop(filmId, limit));
+            }
+        }
+
+        FilmReviewTop.Stats stats = filmReviewTop.stats();
+        assertThat(stats.hits()).isPositive();
+        assertThat(stats.cachedReviews()).isLessThanOrEqualTo(2 * TOP_SIZE);
+        log.info("3000 changes of {} reviews: {}", reviews.size(), stats);
+    }
+
+    @Test
+    void concurrentVotesAndReadsKeepTopExact() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            create(1);
+        }
+        AtomicBoolean voting = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> voters = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                voters.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2000; i++) {
+                        vote(reviews.get(random.nextInt(reviews.size())), FIRST_USER_ID + random.nextInt(USERS),
+                                random.nextInt(4));
+                    }
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                readers.add(executor.submit(() -> {
+                    while (voting.get()) {
+                        filmReviewTop.top(1, 1 + ThreadLocalRandom.current().nextInt(TOP_SIZE));
+                    }
+                }));
+            }
+            for (Future<?> voter : voters) {
+                voter.get(60, TimeUnit.SECONDS);
+            }
+            voting.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // список, поставленный во время голосования, должен учесть каждый голос ровно один раз
+        for (int limit = TOP_SIZE; limit > 0; limit--) {
+            List<Review> top = filmReviewTop.top(1, limit);
+            if (top != null) assertThat(top).isEqualTo(expectedTop(1, limit));
+        }
+        log.info("8000 concurrent votes: {}", filmReviewTop.stats());
+    }
+
+    @Test
+    void cursorOfCachedFirstPageContinuesInStorage() {
+        for (int i = 0; i < 8; i++) {
+            create(1);
+        }
+        // записанная полезность 0, 2, ..., 14, а незаписанные голоса поднимают отзыв с 8 до 11, на третье место
+        for (int i = 0; i < reviews.size(); i++) {
+            for (int user = 0; user < 2 * i; user++) {
+                vote(reviews.get(i), FIRST_USER_ID + user, 0);
+            }
+        }
+        usefulnessBuffer.flush();
+        for (int user = 8; user < 11; user++) {
+            vote(reviews.get(4), FIRST_USER_ID + user, 0);
+        }
+
+        List<Review> first = filmReviewTop.top(1, 3);
+        assertThat(first).extracting(Review::getReviewId).endsWith(reviews.get(4).getReviewId());
+        List<Review> rest = reviewStorage.getReviewsPage(1, ReviewCursor.of(first.getLast()), 100);
+        List<Review> pages = new ArrayList<>(first);
+        pages.addAll(rest);
+        assertThat(pages).isEqualTo(expectedTop(1, 100));
+    }
+
+    private void create(int filmId) {
+        Review review = filmReviewTop.create(filmId, () -> reviewStorage.createReview(Review.builder()
+                .content("review").isPositive(true).userId(FIRST_USER_ID).filmId(filmId).useful(0).build()));
+        reviews.add(review);
+    }
+
+    private void vote(Review review, int userId, int kind) {
+        int reviewId = review.getReviewId();
+        filmReviewTop.vote(review.getFilmId(), reviewId, () -> switch (kind) {
+            case 0 -> reviewStorage.addLike(reviewId, userId);
+            case 1 -> reviewStorage.addDislike(reviewId, userId);
+            case 2 -> reviewStorage.removeLike(reviewId, userId);
+            default -> reviewStorage.removeDislike(reviewId, userId);
+        });
+    }
+
+    // все отзывы фильма с полезностью вместе с незаписанными голосами
+    private List<Review> expectedTop(int filmId, int limit) {
+        return reviews.stream()
+                .filter(review -> review.getFilmId() == filmId)
+                .map(review -> reviewStorage.getReviewById(review.getReviewId()))
+                .sorted(Comparator.comparing(ReviewCursor::of).reversed())
+                .limit(limit)
+                .toList();
+    }
+}
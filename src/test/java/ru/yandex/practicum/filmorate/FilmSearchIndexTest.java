@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDetailsLoader;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FilmDbStorage.class, DirectorDbStorage.class, DirectorRowMapper.class, FilmsResultSetExtractor.class,
+        IdAllocator.class, FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class})
+class FilmSearchIndexTest {
+    // условия прежнего поиска через ILIKE, который заменил индекс
+    private static final String TITLE_MATCHES = "f.name ILIKE concat('%', ?, '%')";
+    private static final String DIRECTOR_MATCHES = "f.id IN (SELECT fd.film_id FROM directors d" +
+            " INNER JOIN film_director fd ON fd.director_id = d.id WHERE d.name ILIKE concat('%', ?, '%'))";
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private DirectorDbStorage directorDbStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void indexMatchesIlikeSearch() {
+        BenchmarkData.seed(jdbcTemplate, filmStorage);
+        FilmSearchIndex index = new FilmSearchIndex(filmStorage, directorDbStorage);
+        index.rebuild();
+
+        for (String query : new String[]{"bench", "FILM 1", "Film", "e", "ne", "Two", "inter", "nothing"}) {
+            assertThat(filmStorage.getFilmsByIdsOrderByLikes(index.searchInTitle(query)))
+                    .as("title: %s", query)
+                    .isEqualTo(ilikeSearch(TITLE_MATCHES, query));
+            assertThat(filmStorage.getFilmsByIdsOrderByLikes(index.searchInDirectorName(query)))
+                    .as("director: %s", query)
+                    .isEqualTo(ilikeSearch(DIRECTOR_MATCHES, query));
+            assertThat(filmStorage.getFilmsByIdsOrderByLikes(
+                    index.searchInTitle(query).union(index.searchInDirectorName(query))))
+                    .as("title and director: %s", query)
+                    .isEqualTo(ilikeSearch(TITLE_MATCHES + " OR " + DIRECTOR_MATCHES, query, query));
+        }
+    }
+
+    private List<Film> ilikeSearch(String condition, Object... queries) {
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT f.id FROM films f WHERE " + condition, Integer.class,
+                queries);
+        return filmStorage.getFilmsByIdsOrderByLikes(ids);
+    }
+
+    @Test
+    void indexFollowsFilmAndDirectorChanges() {
+        FilmSearchIndex index = new FilmSearchIndex(filmStorage, directorDbStorage);
+        index.rebuild();
+
+        Director director = directorDbStorage.getById(3L).orElseThrow();
+        director.setName("Christopher Nolan");
+        index.directorSaved(directorDbStorage.update(director));
+
+        Film film = filmStorage.getFilmById(1);
+        film.setName("Tenet");
+        film.setReleaseDate(LocalDate.of(2020, 8, 26));
+        film.setDirectors(Set.of(director));
+        index.filmSaved(filmStorage.updateFilm(film));
+
+        assertThat(index.searchInTitle("interstellar")).isEmpty();
+        assertThat(index.searchInTitle("TEN")).containsExactly(1);
+        assertThat(index.searchInDirectorName("nolan")).containsExactly(1);
+
+        director.setName("Jonathan Nolan");
+        index.directorSaved(directorDbStorage.update(director));
+        assertThat(index.searchInDirectorName("christopher")).isEmpty();
+        assertThat(index.searchInDirectorName("jonathan")).containsExactly(1);
+
+        index.directorRemoved(director.getId());
+        assertThat(index.searchInDirectorName("nolan")).isEmpty();
+
+        index.filmRemoved(1);
+        assertThat(index.searchInTitle("tenet")).isEmpty();
+    }
+}
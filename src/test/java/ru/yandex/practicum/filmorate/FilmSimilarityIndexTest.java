@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.service.UserLikesIndex;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FilmSimilarityIndexTest {
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final UserLikesIndex userLikes = new UserLikesIndex(filmStorage);
+    private final FilmSimilarityIndex index = new FilmSimilarityIndex(userLikes);
+
+    @Test
+    void recommendsFilmsCoLikedWithUserLikes() {
+        like(1, 1, 2);
+        like(2, 1, 2, 3);
+        like(3, 1, 4);
+        like(4, 5);
+
+        // фильм 3 близок к обоим лайкам пользователя 1, фильм 4 - только к фильму 1
+        assertThat(index.recommend(1, 10)).containsExactly(3, 4);
+        assertThat(index.recommend(1, 1)).containsExactly(3);
+        assertThat(index.recommend(4, 10)).isEmpty();
+
+        unlike(2, 3);
+        assertThat(index.recommend(1, 10)).containsExactly(4);
+
+        index.userRemoved(3);
+        userLikes.userRemoved(3);
+        assertThat(index.recommend(1, 10)).isEmpty();
+
+        like(2, 6);
+        like(1, 6);
+        assertThat(index.recommend(1, 10)).isEmpty();
+        like(5, 6, 7);
+        assertThat(index.recommend(1, 10)).containsExactly(7);
+        index.filmRemoved(7);
+        userLikes.filmRemoved(7);
+        assertThat(index.recommend(1, 10)).isEmpty();
+    }
+
+    @Test
+    void incrementalUpdatesMatchRebuild() {
+        Random random = new Random(7);
+        for (int i = 0; i < 30; i++) {
+            filmStorage.createFilm(film());
+        }
+        for (int i = 0; i < 3000; i++) {
+            int userId = random.nextInt(50) + 1;
+            int filmId = random.nextInt(30) + 1;
+            if (random.nextInt(3) == 0) {
+                if (filmStorage.removeLike(filmId, userId)) unlike(userId, filmId);
+            } else {
+                if (filmStorage.addLike(filmId, userId)) like(userId, filmId);
+            }
+        }
+
+        UserLikesIndex rebuiltLikes = new UserLikesIndex(filmStorage);
+        rebuiltLikes.rebuild();
+        FilmSimilarityIndex rebuilt = new FilmSimilarityIndex(rebuiltLikes);
+        rebuilt.rebuild();
+        for (int userId = 1; userId <= 50; userId++) {
+            assertThat(index.recommend(userId, 10)).as("user %s", userId)
+                    .isEqualTo(rebuilt.recommend(userId, 10));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void syntheticHundredThousandUsers() {
+        int users = 100_000;
+        int films = 5_000;
+        int likesPerUser = 10;
+        Random random = new Random(1);
+
+        long start = System.nanoTime();
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < likesPerUser; i++) {
+                // квадрат равномерной величины дает перекос к популярным фильмам
+                double r = random.nextDouble();
+                int filmId = (int) (films * r * r) + 1;
+                if (!userLikes.likes(userId).contains(filmId)) like(userId, filmId);
+            }
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int queries = 1000;
+        long[] latencies = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            int userId = random.nextInt(users) + 1;
+            long queryStart = System.nanoTime();
+            List<Integer> recommended = index.recommend(userId, 20);
+            latencies[i] = System.nanoTime() - queryStart;
+            assertThat(recommended).hasSize(20);
+        }
+        Arrays.sort(latencies);
+        log.info("{} users x {} likes: built in {} ms, recommend p50 {} us, p99 {} us", users, likesPerUser,
+                buildMillis, latencies[queries / 2] / 1000, latencies[queries * 99 / 100] / 1000);
+    }
+
+    // в том же порядке, что и FilmService: сначала карта лайков, потом матрица
+    private void like(int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            userLikes.likeAdded(userId, filmId);
+            index.likeAdded(userId, filmId);
+        }
+    }
+
+    private void unlike(int userId, int filmId) {
+        userLikes.likeRemoved(userId, filmId);
+        index.likeRemoved(userId, filmId);
+    }
+
+    private Film film() {
+        Film film = new Film();
+        film.setName("film");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+}
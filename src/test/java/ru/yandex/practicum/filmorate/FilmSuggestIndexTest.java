@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+import ru.yandex.practicum.filmorate.service.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.service.FilmSuggestIndex;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FilmSuggestIndexTest {
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final FilmLeaderboard filmLeaderboard = new FilmLeaderboard(filmStorage);
+    private final FilmSuggestIndex index = new FilmSuggestIndex(filmStorage,
+            new DirectorDbStorage(new JdbcTemplate(), new DirectorRowMapper()), filmLeaderboard);
+
+    @BeforeEach
+    void setUp() {
+        index.start();
+    }
+
+    @Test
+    void suggestsByWordPrefixRankedByPopularity() {
+        Director spielberg = director(1L, "Steven Spielberg");
+        Film wars = film("Star Wars", 3);
+        Film trek = film("Star Trek", 1, spielberg);
+        Film stardust = film("Stardust", 2, spielberg);
+
+        assertThat(index.suggest("st", 4)).containsExactly(
+                new Suggestion(wars.getId(), "Star Wars", SuggestionType.FILM),
+                new Suggestion(stardust.getId(), "Stardust", SuggestionType.FILM),
+                new Suggestion(1L, "Steven Spielberg", SuggestionType.DIRECTOR),
+                new Suggestion(trek.getId(), "Star Trek", SuggestionType.FILM));
+        assertThat(index.suggest("WAR", 10)).extracting(Suggestion::name).containsExactly("Star Wars");
+        assertThat(index.suggest("spiel", 10)).extracting(Suggestion::name).containsExactly("Steven Spielberg");
+        assertThat(index.suggest("star t", 10)).extracting(Suggestion::name).containsExactly("Star Trek");
+        assertThat(index.suggest("x", 10)).isEmpty();
+    }
+
+    @Test
+    void followsLikesAndChanges() {
+        Film first = film("Alien", 1);
+        Film second = film("Aliens", 0);
+        assertThat(index.suggest("ali", 1)).extracting(Suggestion::name).containsExactly("Alien");
+
+        like(second, 2);
+        assertThat(index.suggest("ali", 1)).extracting(Suggestion::name).containsExactly("Aliens");
+
+        filmLeaderboard.likeRemoved(second.getId());
+        filmLeaderboard.likeRemoved(second.getId());
+        assertThat(index.suggest("ali", 1)).extracting(Suggestion::name).containsExactly("Alien");
+
+        first.setName("Prometheus");
+        index.filmSaved(first);
+        assertThat(index.suggest("ali", 10)).extracting(Suggestion::name).containsExactly("Aliens");
+        assertThat(index.suggest("prom", 10)).extracting(Suggestion::name).containsExactly("Prometheus");
+
+        index.filmRemoved(second.getId());
+        assertThat(index.suggest("ali", 10)).isEmpty();
+    }
+
+    @Test
+    void matchesBruteForceRanking() {
+        Random random = new Random(42);
+        String[] words = {"the", "star", "stone", "story", "dark", "day", "night", "knight", "king", "kong"};
+        Map<Integer, Integer> scores = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + i;
+            Film film = film(name, random.nextInt(50));
+            scores.put(film.getId(), filmLeaderboard.getLikes(film.getId()));
+            names.put(film.getId(), name);
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        for (String prefix : new String[]{"s", "st", "sto", "k", "kn", "the s", "day", "1", "29"}) {
+            long start = System.nanoTime();
+            List<Suggestion> suggestions = index.suggest(prefix, 10);
+            latencies.add(System.nanoTime() - start);
+
+            List<Integer> expected = names.entrySet().stream()
+                    .filter(e -> Arrays.stream(e.getValue().split(" ")).anyMatch(w -> w.startsWith(prefix))
+                            || e.getValue().startsWith(prefix))
+                    .map(e -> scores.get(e.getKey()))
+                    .sorted(Comparator.reverseOrder())
+                    .limit(10)
+                    .collect(Collectors.toList());
+            assertThat(suggestions).as(prefix)
+                    .extracting(s -> scores.get((int) s.id()))
+                    .containsExactlyElementsOf(expected);
+        }
+        log.info("suggest latencies, us: {}", latencies.stream().map(ns -> ns / 1000).toList());
+    }
+
+    private Film film(String name, int likes, Director... directors) {
+        Film film = new Film();
+        film.setName(name);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        film.setDirectors(new HashSet<>(Arrays.asList(directors)));
+        filmStorage.createFilm(film);
+        filmLeaderboard.filmSaved(film);
+        index.filmSaved(film);
+        like(film, likes);
+        return film;
+    }
+
+    private void like(Film film, int times) {
+        for (int i = 0; i < times; i++) {
+            filmLeaderboard.likeAdded(film.getId());
+        }
+    }
+
+    private Director director(long id, String name) {
+        Director director = new Director();
+        director.setId(id);
+        director.setName(name);
+        index.directorSaved(director);
+        return director;
+    }
+}
@@ -6,12 +6,28 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.controller.FilmController;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FeedAppender;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.service.FeedHub;
 import ru.yandex.practicum.filmorate.service.FeedService;
+import ru.yandex.practicum.filmorate.service.FeedTimeline;
+import ru.yandex.practicum.filmorate.service.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.service.FilmReviewTop;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.IndexRebuilder;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmSuggestIndex;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.UserLikesIndex;
+import ru.yandex.practicum.filmorate.service.UserNeighbourIndex;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.*;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
 
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,9 +36,27 @@ public class FilmValidationTest {
     private final UserStorage userStorage = new InMemoryUserStorage();
     private final FilmStorage filmStorage = new InMemoryFilmStorage();
     private final FeedStorage feedStorage = new FeedDbStorage(new JdbcTemplate());
-    private final FeedService feedService = new FeedService(feedStorage, userStorage);
-    private final UserService userService = new UserService(userStorage, feedService);
-    private final FilmService filmService = new FilmService(filmStorage, userService, feedService);
+    private final FeedHub feedHub = new FeedHub(feedStorage);
+    private final FeedTimeline feedTimeline = new FeedTimeline(feedStorage);
+    private final FriendGraph friendGraph = new FriendGraph(userStorage);
+    private final FeedService feedService = new FeedService(feedStorage, userStorage,
+            new FeedAppender(feedStorage, feedHub, feedTimeline), feedHub, feedTimeline, friendGraph);
+    private final FilmLeaderboard filmLeaderboard = new FilmLeaderboard(filmStorage);
+    private final UserLikesIndex userLikesIndex = new UserLikesIndex(filmStorage);
+    private final RecommendationService recommendationService = new RecommendationService(userStorage, filmStorage,
+            new FilmSimilarityIndex(userLikesIndex), new UserNeighbourIndex(userLikesIndex));
+    private final FilmReviewTop filmReviewTop = new FilmReviewTop(new ReviewDbStorage(new JdbcTemplate()));
+    private final FilmCache filmCache = new FilmCache(filmStorage);
+    private final DirectorDbStorage directorStorage = new DirectorDbStorage(new JdbcTemplate(), new DirectorRowMapper());
+    private final FilmSearchIndex filmSearchIndex = new FilmSearchIndex(filmStorage, directorStorage);
+    private final FilmSuggestIndex filmSuggestIndex = new FilmSuggestIndex(filmStorage, directorStorage, filmLeaderboard);
+    private final IndexRebuilder indexRebuilder = new IndexRebuilder(filmLeaderboard, filmSearchIndex,
+            filmSuggestIndex, userLikesIndex, recommendationService, friendGraph);
+    private final UserService userService = new UserService(userStorage, feedService, filmLeaderboard,
+            recommendationService, userLikesIndex, friendGraph, filmReviewTop, filmCache, indexRebuilder);
+    private final FilmService filmService = new FilmService(filmStorage, userService, feedService, filmLeaderboard,
+            filmSearchIndex, filmSuggestIndex, recommendationService, userLikesIndex, filmReviewTop, filmCache,
+            indexRebuilder);
     private final FilmController controller = new FilmController(filmService);
     private Film existing;
 
@@ -106,4 +140,10 @@ public class FilmValidationTest {
 
         assertThrows(ValidationException.class, () -> controller.updateFilm(updated));
     }
+
+    @Test
+    void shouldThrowIfCommonFilmsRequestedForLessThanTwoUsers() {
+        assertThrows(ValidationException.class, () -> controller.getCommonFilms(null, null, List.of(1, 1)));
+        assertThrows(ValidationException.class, () -> controller.getCommonFilms(1, null, null));
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -18,7 +19,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserDbStorage.class})
+@Import({UserDbStorage.class, IdAllocator.class})
 class FilmorateApplicationTests {
     private final UserDbStorage userStorage;
 
@@ -73,4 +74,13 @@ class FilmorateApplicationTests {
         assertThat(users.stream().anyMatch(user -> user.getId().equals(102))).isTrue();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetUsersPage() {
+        List<User> first = userStorage.getUsersPage(null, 3);
+        List<User> second = userStorage.getUsersPage(first.getLast().getId(), 3);
+
+        assertThat(first.stream().map(User::getId).toList()).isEqualTo(List.of(1, 10, 20));
+        assertThat(second.stream().map(User::getId).toList()).isEqualTo(List.of(101, 102));
+    }
+}
@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDetailsLoader;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+import ru.yandex.practicum.filmorate.storage.FilmsHydration;
+import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сравнение загрузки списков фильмов одним запросом с соединением всех связей и двухфазной загрузки:
+ * количество строк, прочитанных через JDBC, и среднее время запроса на засеянных данных.
+ */
+@Slf4j
+@Tag("benchmark")
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FilmDbStorage.class, DirectorDbStorage.class, DirectorRowMapper.class, FilmsResultSetExtractor.class,
+        IdAllocator.class, FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class,
+        FilmsHydrationBenchmarkTest.RowCountingConfig.class})
+class FilmsHydrationBenchmarkTest {
+    private static final AtomicLong ROWS = new AtomicLong();
+    private static final int ITERATIONS = 5;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void twoPhaseHydrationReadsFewerRowsThanJoin() {
+        BenchmarkData.seed(jdbcTemplate, filmStorage);
+        Director director = new Director();
+        director.setId(100L);
+
+        List<Integer> ids = IntStream.range(BenchmarkData.FIRST_ID, BenchmarkData.FIRST_ID + BenchmarkData.FILMS)
+                .boxed()
+                .toList();
+        compare("by ids ordered by likes", () -> filmStorage.getFilmsByIdsOrderByLikes(ids));
+        compare("director by likes", () -> filmStorage.getFilmsByDirectorSortByLikes(director));
+        compare("director by year", () -> filmStorage.getFilmsByDirectorSortByYear(director));
+    }
+
+    private void compare(String name, Supplier<List<Film>> query) {
+        Measurement joined = measure(FilmsHydration.JOIN, query);
+        Measurement twoPhase = measure(FilmsHydration.TWO_PHASE, query);
+
+        log.info("{}: join {} rows, {} ms; two-phase {} rows, {} ms", name,
+                joined.rows(), String.format("%.2f", joined.millis()),
+                twoPhase.rows(), String.format("%.2f", twoPhase.millis()));
+
+        assertThat(twoPhase.films()).isEqualTo(joined.films());
+        assertThat(twoPhase.rows()).isLessThan(joined.rows());
+    }
+
+    private Measurement measure(FilmsHydration hydration, Supplier<List<Film>> query) {
+        ReflectionTestUtils.setField(filmStorage, "hydration", hydration);
+        List<Film> films = query.get();    // прогрев
+
+        ROWS.set(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            films = query.get();
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+
+        return new Measurement(films, ROWS.get() / ITERATIONS, millis);
+    }
+
+    private record Measurement(List<Film> films, long rows, double millis) {
+    }
+
+    /**
+     * Оборачивает DataSource, чтобы считать строки, прочитанные из всех ResultSet.
+     */
+    @TestConfiguration
+    static class RowCountingConfig {
+        @Bean
+        static BeanPostProcessor rowCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? wrap(bean, DataSource.class) : bean;
+                }
+            };
+        }
+
+        private static Object wrap(Object target, Class<?> type) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (target instanceof ResultSet && method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                    ROWS.incrementAndGet();
+                }
+                if (result instanceof Connection && method.getReturnType() == Connection.class) {
+                    return wrap(result, Connection.class);
+                }
+                if (result instanceof PreparedStatement && method.getReturnType() == PreparedStatement.class) {
+                    return wrap(result, PreparedStatement.class);
+                }
+                if (result instanceof Statement && method.getReturnType() == Statement.class) {
+                    return wrap(result, Statement.class);
+                }
+                if (result instanceof ResultSet && method.getReturnType() == ResultSet.class) {
+                    return wrap(result, ResultSet.class);
+                }
+                return result;
+            });
+        }
+    }
+}
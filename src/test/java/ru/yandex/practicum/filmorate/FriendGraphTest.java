@@ -0,0 +1,242 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FriendGraphTest {
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final FriendGraph graph = new FriendGraph(userStorage);
+
+    @Test
+    void suggestsFriendsOfFriendsByMutualCount() {
+        befriend(1, 2, 3, 4);
+        befriend(2, 5, 6);
+        befriend(3, 5, 6, 1);
+        befriend(4, 5, 7);
+
+        // у 5 трое общих друзей с 1, у 6 - двое, у 7 - один; сам 1 и его друзья не предлагаются
+        assertThat(graph.suggestFriends(1, 10)).containsExactly(5, 6, 7);
+        assertThat(graph.suggestFriends(1, 2)).containsExactly(5, 6);
+        assertThat(graph.getCommonFriends(2, 3)).containsExactly(5, 6);
+        assertThat(graph.isFriend(3, 1)).isTrue();
+        assertThat(graph.isFriend(1, 3)).isTrue();
+        assertThat(graph.isFriend(5, 1)).isFalse();
+
+        graph.friendAdded(1, 5);
+        assertThat(graph.suggestFriends(1, 10)).containsExactly(6, 7);
+
+        graph.friendRemoved(4, 7);
+        graph.userRemoved(6);
+        assertThat(graph.suggestFriends(1, 10)).isEmpty();
+        assertThat(graph.getFriends(2)).containsExactly(5);
+        assertThat(graph.getFriends(6)).isEmpty();
+    }
+
+    @Test
+    void overlayMatchesRebuild() {
+        Random random = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            userStorage.createUser(user());
+        }
+        // изменений больше порога, так что накладка несколько раз вливается в CSR
+        for (int i = 0; i < 20_000; i++) {
+            int userId = random.nextInt(300) + 1;
+            int friendId = random.nextInt(300) + 1;
+            if (userId == friendId) continue;
+            if (random.nextInt(3) == 0) {
+                userStorage.getUserById(userId).getFriends().remove(friendId);
+                graph.friendRemoved(userId, friendId);
+            } else {
+                userStorage.getUserById(userId).getFriends().add(friendId);
+                graph.friendAdded(userId, friendId);
+            }
+        }
+
+        FriendGraph rebuilt = new FriendGraph(userStorage);
+        rebuilt.rebuild();
+        for (int userId = 1; userId <= 300; userId++) {
+            assertThat(graph.getFriends(userId)).as("user %s", userId).isEqualTo(rebuilt.getFriends(userId));
+            assertThat(graph.suggestFriends(userId, 20)).isEqualTo(rebuilt.suggestFriends(userId, 20));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void suggestionsForHubUser() {
+        int users = 100_000;
+        Random random = new Random(9);
+        for (int userId = 1; userId <= users; userId++) {
+            int degree = userId <= 100 ? 5_000 : 50;
+            for (int i = 0; i < degree; i++) {
+                graph.friendAdded(userId, random.nextInt(users) + 1);
+            }
+        }
+
+        for (int userId : new int[]{1, 1_000}) {
+            long[] latencies = new long[200];
+            for (int i = 0; i < latencies.length; i++) {
+                long start = System.nanoTime();
+                assertThat(graph.suggestFriends(userId, 10)).hasSize(10);
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+            log.info("{} users, user with {} friends: suggestions p50 {} us, p99 {} us", users,
+                    graph.getFriends(userId).size(), latencies[latencies.length / 2] / 1000,
+                    latencies[latencies.length * 99 / 100] / 1000);
+        }
+    }
+
+    @Test
+    void findsShortestDirectedChain() {
+        befriend(1, 2, 3);
+        befriend(2, 4);
+        befriend(3, 4, 5);
+        befriend(4, 6);
+        befriend(5, 6);
+        befriend(7, 1);
+
+        assertThat(graph.findPath(1, 6, 6)).containsExactly(1, 2, 4, 6);
+        assertThat(graph.findPath(1, 6, 2)).isEmpty();
+        assertThat(graph.findPath(1, 1, 6)).containsExactly(1);
+        // дружба односторонняя: от 6 до 1 связей нет, от 7 до 6 - через 1
+        assertThat(graph.findPath(6, 1, 6)).isEmpty();
+        assertThat(graph.findPath(7, 6, 6)).containsExactly(7, 1, 2, 4, 6);
+
+        graph.friendRemoved(2, 4);
+        assertThat(graph.findPath(1, 6, 6)).containsExactly(1, 3, 4, 6);
+        graph.userRemoved(4);
+        assertThat(graph.findPath(1, 6, 6)).containsExactly(1, 3, 5, 6);
+        assertThat(graph.findPath(1, 42, 6)).isEmpty();
+    }
+
+    @Test
+    void pathLengthMatchesPlainBfs() {
+        Random random = new Random(13);
+        int users = 2_000;
+        for (int i = 0; i < 12_000; i++) {
+            int userId = random.nextInt(users) + 1;
+            int friendId = random.nextInt(users) + 1;
+            if (userId == friendId) continue;
+            if (random.nextInt(4) == 0) {
+                graph.friendRemoved(userId, friendId);
+            } else {
+                graph.friendAdded(userId, friendId);
+            }
+        }
+
+        for (int i = 0; i < 500; i++) {
+            int from = random.nextInt(users) + 1;
+            int to = random.nextInt(users) + 1;
+            List<Integer> expected = plainBfs(from, to);
+            int maxDepth = 1 + random.nextInt(6);
+            List<Integer> path = graph.findPath(from, to, maxDepth);
+
+            if (expected.isEmpty() || expected.size() - 1 > maxDepth) {
+                assertThat(path).as("%s -> %s", from, to).isEmpty();
+                continue;
+            }
+            assertThat(path).as("%s -> %s", from, to).hasSameSizeAs(expected);
+            assertThat(path.getFirst()).isEqualTo(from);
+            assertThat(path.getLast()).isEqualTo(to);
+            for (int k = 1; k < path.size(); k++) {
+                assertThat(graph.isFriend(path.get(k - 1), path.get(k))).isTrue();
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void pathsOnPowerLawGraph() {
+        int users = 1_000_000;
+        Random random = new Random(17);
+        for (int userId = 1; userId <= users; userId++) {
+            User user = userStorage.createUser(user());
+            // число друзей по Парето (в среднем около 10); половина друзей смещена к малым id - там хабы
+            int degree = Math.min(5_000, (int) (5 / Math.sqrt(1 - random.nextDouble())));
+            for (int i = 0; i < degree; i++) {
+                double r = random.nextDouble();
+                int friendId = (int) (users * (i % 2 == 0 ? r * r * r : r)) + 1;
+                if (friendId != userId) user.getFriends().add(friendId);
+            }
+        }
+        long start = System.nanoTime();
+        graph.rebuild();
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int queries = 1_000;
+        long[] latencies = new long[queries];
+        int found = 0;
+        long hops = 0;
+        for (int i = 0; i < queries; i++) {
+            int from = random.nextInt(users) + 1;
+            int to = random.nextInt(users) + 1;
+            long queryStart = System.nanoTime();
+            List<Integer> path = graph.findPath(from, to, 6);
+            latencies[i] = System.nanoTime() - queryStart;
+            if (!path.isEmpty()) {
+                found++;
+                hops += path.size() - 1;
+            }
+        }
+        Arrays.sort(latencies);
+
+        // обычный поиск в ширину от одного конца для сравнения, на нескольких парах
+        int baselineQueries = 5;
+        long baselineStart = System.nanoTime();
+        for (int i = 0; i < baselineQueries; i++) {
+            int from = random.nextInt(users) + 1;
+            int to = random.nextInt(users) + 1;
+            assertThat(graph.findPath(from, to, Integer.MAX_VALUE)).hasSameSizeAs(plainBfs(from, to));
+        }
+        long baselineMillis = (System.nanoTime() - baselineStart) / 1_000_000 / baselineQueries;
+
+        assertThat(found).isPositive();
+        log.info("{} users, power-law degrees: graph built in {} ms; path p50 {} us, p99 {} us, "
+                        + "{} of {} pairs connected within 6 hops, {} hops on average; plain BFS ~{} ms per pair",
+                users, buildMillis, latencies[queries / 2] / 1000, latencies[queries * 99 / 100] / 1000,
+                found, queries, String.format("%.2f", (double) hops / Math.max(1, found)), baselineMillis);
+    }
+
+    private List<Integer> plainBfs(int from, int to) {
+        Map<Integer, Integer> parents = new HashMap<>();
+        parents.put(from, -1);
+        Deque<Integer> queue = new ArrayDeque<>(List.of(from));
+        while (!queue.isEmpty() && !parents.containsKey(to)) {
+            int userId = queue.poll();
+            for (int friendId : graph.getFriends(userId)) {
+                if (parents.putIfAbsent(friendId, userId) == null) queue.add(friendId);
+            }
+        }
+        if (!parents.containsKey(to)) return List.of();
+
+        LinkedList<Integer> path = new LinkedList<>();
+        for (int id = to; id != -1; id = parents.get(id)) {
+            path.addFirst(id);
+        }
+        return path;
+    }
+
+    private void befriend(int userId, int... friendIds) {
+        for (int friendId : friendIds) {
+            graph.friendAdded(userId, friendId);
+        }
+    }
+
+    private User user() {
+        User user = new User();
+        user.setEmail("user@mail.ru");
+        user.setLogin("user");
+        user.setBirthday(LocalDate.of(2000, 1, 1));
+        return user;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.ids.IdSequence;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({UserDbStorage.class, IdAllocator.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)  // потоки пишут каждый в своей транзакции
+class IdAllocatorConcurrencyTest {
+    private static final int THREADS = 16;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void parallelCreatesDoNotCollide() throws Exception {
+        int creates = 4000;
+        Integer before = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class);
+
+        List<Integer> ids = runInParallel(creates, () -> {
+            User user = new User();
+            user.setEmail("load@mail.ru");
+            user.setLogin("load");
+            user.setName("Load");
+            user.setBirthday(LocalDate.of(2000, 1, 1));
+            return userStorage.createUser(user).getId();
+        });
+
+        Integer after = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class);
+        assertThat(Set.copyOf(ids)).hasSize(creates);
+        assertThat(after - before).isEqualTo(creates);
+    }
+
+    @Test
+    void severalInstancesOnOneDatabaseDoNotCollide() throws Exception {
+        // два аллокатора на одной БД ведут себя как два экземпляра приложения
+        IdAllocator first = new IdAllocator(jdbcTemplate);
+        IdAllocator second = new IdAllocator(jdbcTemplate);
+        int allocations = 20000;
+
+        List<Integer> ids = runInParallel(allocations, () -> {
+            IdAllocator allocator = ThreadLocalRandom.current().nextBoolean() ? first : second;
+            return allocator.nextId(IdSequence.REVIEWS);
+        });
+
+        assertThat(Set.copyOf(ids)).hasSize(allocations);
+    }
+
+    @Test
+    void instancesStartingOverExistingRowsDoNotCollide() throws Exception {
+        try {
+            for (int round = 1; round <= 20; round++) {
+                // строка мимо последовательности, далеко впереди ее значения
+                int existingId = 100_000 * round;
+                jdbcTemplate.update("INSERT INTO users (id, email, login, birthday) VALUES (?, 'old@mail.ru', 'old'," +
+                        " '2000-01-01')", existingId);
+                IdAllocator first = new IdAllocator(jdbcTemplate);
+                IdAllocator second = new IdAllocator(jdbcTemplate);
+
+                List<Integer> ids = runInParallel(200, () -> {
+                    IdAllocator allocator = ThreadLocalRandom.current().nextBoolean() ? first : second;
+                    return allocator.nextId(IdSequence.USERS);
+                });
+
+                assertThat(Set.copyOf(ids)).hasSize(ids.size());
+                assertThat(ids).allMatch(id -> id > existingId);
+            }
+        } finally {
+            jdbcTemplate.update("DELETE FROM users WHERE login = 'old'");
+        }
+    }
+
+    private List<Integer> runInParallel(int tasks, Callable<Integer> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>(tasks);
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+
+            List<Integer> result = new ArrayList<>(tasks);
+            for (Future<Integer> future : futures) {
+                result.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
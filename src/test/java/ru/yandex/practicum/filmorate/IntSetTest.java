@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.util.IntSet;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class IntSetTest {
+    private static final int FILMS = 1000;
+    private static final int LIKES_PER_FILM = 1000;
+
+    @Test
+    void behavesLikeSetOfIntegers() {
+        IntSet set = new IntSet();
+        assertThat(set.add(5)).isTrue();
+        assertThat(set.add(1)).isTrue();
+        assertThat(set.add(9)).isTrue();
+        assertThat(set.add(5)).isFalse();
+        assertThat(set.remove(Integer.valueOf(1))).isTrue();
+        assertThat(set.remove(Integer.valueOf(1))).isFalse();
+
+        assertThat(set).containsExactly(5, 9);
+        assertThat(set).isEqualTo(Set.of(5, 9));
+        assertThat(set.hashCode()).isEqualTo(Set.of(5, 9).hashCode());
+
+        set.removeIf(value -> value == 9);
+        assertThat(set.toIntArray()).containsExactly(5);
+    }
+
+    @Test
+    void unionAndIntersection() {
+        IntSet first = IntSet.of(1, 3, 5, 7, 9);
+        IntSet second = IntSet.of(3, 4, 5, 6);
+        IntSet large = new IntSet();
+        for (int i = 0; i < 1000; i += 3) {
+            large.add(i);
+        }
+
+        assertThat(first.union(second)).containsExactly(1, 3, 4, 5, 6, 7, 9);
+        assertThat(first.intersection(second)).containsExactly(3, 5);
+        assertThat(first.intersectionSize(second)).isEqualTo(2);
+        assertThat(first.intersection(large)).containsExactly(3, 9);
+        assertThat(large.intersectionSize(first)).isEqualTo(2);
+    }
+
+    @Test
+    void filmLikesSerializeAsJsonArray() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        Film film = new Film();
+        film.setName("Film");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.getLikes().add(20);
+        film.getLikes().add(10);
+
+        String json = mapper.writeValueAsString(film);
+        assertThat(json).contains("\"likes\":[10,20]");
+        assertThat(mapper.readValue(json, Film.class).getLikes()).containsExactly(10, 20);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compactSetsTakeLessHeapThanBoxedSets() {
+        List<IntSet> compact = new ArrayList<>(FILMS);
+        List<Set<Integer>> boxed = new ArrayList<>(FILMS);
+        for (int f = 0; f < FILMS; f++) {
+            IntSet likes = new IntSet();
+            Set<Integer> boxedLikes = new HashSet<>();
+            for (int u = 0; u < LIKES_PER_FILM; u++) {
+                likes.add(1000 + u * FILMS + f);   // id вне кэша Integer, как у реальных пользователей
+                boxedLikes.add(1000 + u * FILMS + f);
+            }
+            compact.add(likes);
+            boxed.add(boxedLikes);
+        }
+
+        // размер всего графа объектов, достижимого из наборов, в текущей JVM
+        long compactBytes = GraphLayout.parseInstance(compact).totalSize();
+        long boxedBytes = GraphLayout.parseInstance(boxed).totalSize();
+        log.info("{} likes: HashSet<Integer> {} KB, IntSet {} KB", FILMS * LIKES_PER_FILM,
+                boxedBytes / 1024, compactBytes / 1024);
+
+        assertThat(compactBytes * 4).isLessThan(boxedBytes);
+    }
+}
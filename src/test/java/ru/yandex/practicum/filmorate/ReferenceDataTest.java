@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDetailsLoader;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceData;
+import ru.yandex.practicum.filmorate.storage.extractors.FilmsResultSetExtractor;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({FilmDbStorage.class, DirectorDbStorage.class, DirectorRowMapper.class, FilmsResultSetExtractor.class,
+        IdAllocator.class, FilmRowMapper.class, FilmDetailsLoader.class,
+        GenreDbStorage.class, MpaDbStorage.class, ReferenceData.class})
+class ReferenceDataTest {
+    @Autowired
+    private ReferenceData referenceData;
+    @Autowired
+    private FilmDbStorage filmStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        // вставки тестов откатываются, а справочник общий для контекста
+        referenceData.directorsChanged();
+    }
+
+    @Test
+    void filmWritesResolveGenresAndMpaFromMemory() {
+        referenceData.genres();
+        referenceData.ratings();
+        referenceData.directors(List.of());
+        long loads = referenceData.stats().loads();
+
+        for (int i = 0; i < 20; i++) {
+            Film film = filmStorage.createFilm(film(IntStream.rangeClosed(1, 6).boxed().toList()));
+            assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1, 2, 3, 4, 5, 6);
+            assertThat(film.getGenres()).allMatch(genre -> genre == referenceData.genre(genre.getId()));
+            assertThat(film.getMpa()).isSameAs(referenceData.rating(3));
+        }
+
+        assertThrows(NotFoundException.class, () -> filmStorage.createFilm(film(List.of(1, 99))));
+        Film unknownMpa = film(List.of());
+        unknownMpa.setMpa(new MpaRating(99, null));
+        assertThrows(NotFoundException.class, () -> filmStorage.createFilm(unknownMpa));
+        // неизвестный жанр или рейтинг не перечитывает справочник
+        assertThat(referenceData.genre(99)).isNull();
+        assertThat(referenceData.rating(99)).isNull();
+        assertThat(referenceData.stats().loads()).isEqualTo(loads);
+    }
+
+    @Test
+    void hydratedFilmsShareReferenceInstances() {
+        Film created = filmStorage.createFilm(film(List.of(2, 5)));
+
+        Film loaded = filmStorage.getFilmById(created.getId());
+        assertThat(loaded.getGenres()).extracting(Genre::getName).doesNotContainNull();
+        assertThat(loaded.getGenres()).allMatch(genre -> genre == referenceData.genre(genre.getId()));
+        assertThat(loaded.getMpa()).isSameAs(referenceData.rating(3));
+    }
+
+    @Test
+    void directorsReadThroughAndFollowChanges() {
+        assertThat(referenceData.directors(List.of(500L))).isEmpty();
+
+        // запись мимо DirectorService находится дочитыванием
+        jdbcTemplate.update("INSERT INTO directors (id, name) VALUES (500, 'Nolan')");
+        assertThat(referenceData.directors(List.of(500L, 501L))).extracting(Director::getName).containsExactly("Nolan");
+
+        jdbcTemplate.update("UPDATE directors SET name = 'Christopher Nolan' WHERE id = 500");
+        referenceData.directorsChanged();
+        Director director = referenceData.directors(List.of(500L)).getFirst();
+        assertThat(director.getName()).isEqualTo("Christopher Nolan");
+        assertThat(referenceData.director(500, "Christopher Nolan")).isSameAs(director);
+        assertThat(referenceData.director(500, "Nolan")).isNotSameAs(director);
+    }
+
+    private static Film film(List<Integer> genreIds) {
+        Film film = new Film();
+        film.setName("Reference");
+        film.setDescription("Reference data");
+        film.setReleaseDate(LocalDate.of(2010, 7, 16));
+        film.setDuration(148);
+        film.setMpa(new MpaRating(3, null));
+        film.setGenres(genreIds.stream().map(id -> new Genre(id, null)).collect(Collectors.toCollection(HashSet::new)));
+        return film;
+    }
+}
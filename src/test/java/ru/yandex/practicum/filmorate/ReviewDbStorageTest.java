@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewUsefulnessBuffer;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.util.ReviewCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({ReviewDbStorage.class, IdAllocator.class, ReviewUsefulnessBuffer.class})
+class ReviewDbStorageTest {
+    private static final Comparator<Review> BY_USEFULNESS = Comparator.comparing(Review::getUseful)
+            .thenComparing(Review::getReviewId).reversed();
+
+    @Autowired
+    private ReviewDbStorage reviewStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void pagesFollowUsefulnessOrder() {
+        // много равных и отрицательных значений, чтобы страницы обрывались посреди них
+        List<Review> reviews = createReviews(300, 4, 7);
+        List<Review> expected = reviews.stream().sorted(BY_USEFULNESS).toList();
+        List<Review> expectedForFilm = expected.stream().filter(review -> review.getFilmId() == 2).toList();
+
+        assertThat(readAll(null, 13)).isEqualTo(expected);
+        assertThat(readAll(2, 5)).isEqualTo(expectedForFilm);
+        assertThat(reviewStorage.getReviewsPage(null, null, 1000)).isEqualTo(expected);
+
+        Review last = expected.getLast();
+        assertThat(reviewStorage.getReviewsPage(null, new ReviewCursor(last.getUseful(), last.getReviewId()), 10))
+                .isEmpty();
+    }
+
+    @Test
+    void deepPageCostsTheSameAsFirst() {
+        List<Review> expected = createReviews(20_000, 4, 3).stream().sorted(BY_USEFULNESS).toList();
+        Review deep = expected.get(15_000);
+        ReviewCursor cursor = new ReviewCursor(deep.getUseful(), deep.getReviewId());
+        assertThat(reviewStorage.getReviewsPage(null, cursor, 10)).isEqualTo(expected.subList(15_001, 15_011));
+
+        int rounds = 200;
+        long firstMicros = measure(rounds, () -> reviewStorage.getReviewsPage(null, null, 10));
+        long deepMicros = measure(rounds, () -> reviewStorage.getReviewsPage(null, cursor, 10));
+        long filmMicros = measure(rounds, () -> reviewStorage.getReviewsPage(3, cursor, 10));
+        log.info("{} reviews: first page {} us, page after review #15000 {} us, same page of one film {} us",
+                expected.size(), firstMicros, deepMicros, filmMicros);
+    }
+
+    private List<Review> readAll(Integer filmId, int limit) {
+        List<Review> all = new ArrayList<>();
+        ReviewCursor cursor = null;
+        while (true) {
+            List<Review> page = reviewStorage.getReviewsPage(filmId, cursor, limit);
+            all.addAll(page);
+            if (page.size() < limit) {
+                return all;
+            }
+            cursor = new ReviewCursor(page.getLast().getUseful(), page.getLast().getReviewId());
+        }
+    }
+
+    private List<Review> createReviews(int count, int films, int spread) {
+        Random random = new Random(7);
+        List<Review> reviews = new ArrayList<>();
+        List<Object[]> usefulness = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Review review = reviewStorage.createReview(Review.builder()
+                    .content("review " + i).isPositive(true).userId(1).filmId(1 + i % films).build());
+            review.setUseful(random.nextInt(2 * spread + 1) - spread);
+            usefulness.add(new Object[]{review.getUseful(), review.getReviewId()});
+            reviews.add(review);
+        }
+        jdbcTemplate.batchUpdate("UPDATE reviews SET usefulness = ? WHERE id = ?", usefulness);
+        return reviews;
+    }
+
+    private static long measure(int rounds, Runnable query) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            query.run();
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / rounds;
+    }
+}
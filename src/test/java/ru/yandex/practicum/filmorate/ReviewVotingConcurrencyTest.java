@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewUsefulnessBuffer;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({ReviewDbStorage.class, IdAllocator.class, ReviewUsefulnessBuffer.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)  // голоса идут из разных потоков в своих транзакциях
+class ReviewVotingConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int VOTES_PER_THREAD = 1500;
+    private static final int FIRST_VOTER_ID = 5000;
+    private static final int VOTERS = 30;
+
+    @Autowired
+    private ReviewDbStorage reviewStorage;
+    @Autowired
+    private ReviewUsefulnessBuffer usefulnessBuffer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Integer> reviewIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < VOTERS; i++) {
+            jdbcTemplate.update("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, '2000-01-01')",
+                    FIRST_VOTER_ID + i, "voter" + i + "@mail.ru", "voter" + i, "voter" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            reviewIds.add(reviewStorage.createReview(Review.builder()
+                    .content("review " + i).isPositive(true).userId(1).filmId(1).build()).getReviewId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(usefulnessBuffer, "flushIntervalMillis", 100L);
+        reviewIds.forEach(reviewStorage::deleteReview);
+        jdbcTemplate.update("DELETE FROM users WHERE id >= ?", FIRST_VOTER_ID);
+    }
+
+    @Test
+    void bufferedUsefulnessEqualsVoteSum() throws Exception {
+        long millis = voteConcurrently();
+        Map<Integer, Integer> expected = voteSums();
+
+        // до записи пачки полезность видна через счетчики в памяти
+        for (int reviewId : reviewIds) {
+            assertThat(reviewStorage.getReviewById(reviewId).getUseful()).isEqualTo(expected.get(reviewId));
+        }
+        // все отзывы теста у фильма 1
+        assertThat(usefulnessBuffer.maxPendingIncrease(2)).isZero();
+        usefulnessBuffer.flush();
+        assertThat(storedUsefulness()).isEqualTo(expected);
+        // записанные счетчики сняты
+        assertThat(usefulnessBuffer.stats().counters()).isZero();
+        assertThat(usefulnessBuffer.maxPendingIncrease(1)).isZero();
+        log.info("Buffered: {} votes from {} threads in {} ms, usefulness {}; {}", THREADS * VOTES_PER_THREAD,
+                THREADS, millis, expected, usefulnessBuffer.stats());
+    }
+
+    @Test
+    void writeThroughUsefulnessEqualsVoteSum() throws Exception {
+        ReflectionTestUtils.setField(usefulnessBuffer, "flushIntervalMillis", 0L);
+        long millis = voteConcurrently();
+        Map<Integer, Integer> expected = voteSums();
+
+        assertThat(storedUsefulness()).isEqualTo(expected);
+        assertThat(reviewStorage.getReviewsPage(null, null, 10))
+                .filteredOn(review -> reviewIds.contains(review.getReviewId()))
+                .allMatch(review -> review.getUseful().equals(expected.get(review.getReviewId())));
+        log.info("Write-through: {} votes from {} threads in {} ms, usefulness {}", THREADS * VOTES_PER_THREAD,
+                THREADS, millis, expected);
+    }
+
+    @Test
+    void recountRestoresUsefulnessLostBeforeFlush() throws Exception {
+        voteConcurrently();
+        Map<Integer, Integer> expected = voteSums();
+        // падение до записи пачки: счетчики в памяти пропали, в reviews.usefulness старое значение
+        usefulnessBuffer.flush();
+        jdbcTemplate.update("UPDATE reviews SET usefulness = 0");
+
+        usefulnessBuffer.recount();
+
+        assertThat(storedUsefulness()).isEqualTo(expected);
+    }
+
+    // лайки, дизлайки и их отмены вперемешку; один и тот же пользователь голосует из нескольких потоков
+    private long voteConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < VOTES_PER_THREAD; i++) {
+                        int reviewId = reviewIds.get(random.nextInt(reviewIds.size()));
+                        int userId = FIRST_VOTER_ID + random.nextInt(VOTERS);
+                        switch (random.nextInt(4)) {
+                            case 0 -> reviewStorage.addLike(reviewId, userId);
+                            case 1 -> reviewStorage.addDislike(reviewId, userId);
+                            case 2 -> reviewStorage.removeLike(reviewId, userId);
+                            default -> reviewStorage.removeDislike(reviewId, userId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private Map<Integer, Integer> voteSums() {
+        Map<Integer, Integer> sums = reviewIds.stream().collect(Collectors.toMap(id -> id, id -> 0));
+        jdbcTemplate.query("SELECT review_id, SUM(CASE WHEN is_positive THEN 1 ELSE -1 END) AS total" +
+                " FROM review_likes GROUP BY review_id", rs -> {
+            if (sums.containsKey(rs.getInt("review_id"))) sums.put(rs.getInt("review_id"), rs.getInt("total"));
+        });
+        return sums;
+    }
+
+    private Map<Integer, Integer> storedUsefulness() {
+        return reviewIds.stream().collect(Collectors.toMap(id -> id, id -> jdbcTemplate.queryForObject(
+                "SELECT usefulness FROM reviews WHERE id = ?", Integer.class, id)));
+    }
+}
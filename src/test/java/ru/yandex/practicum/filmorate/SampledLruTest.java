@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.util.SampledLru;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SampledLruTest {
+    private static final int ENTRIES = 20_000;
+
+    @Test
+    void evictsTenthOfOldestRegardlessOfHashOrder() {
+        SampledLru lru = new SampledLru(1024);
+        ConcurrentMap<Integer, AtomicLong> entries = new ConcurrentHashMap<>();
+        // таблица обходится по возрастанию ключей, и первыми идут самые давние записи:
+        // выборка из начала обхода дала бы порог у самых старых и вытеснила бы лишь их малую часть
+        for (int key = 0; key < ENTRIES; key++) {
+            entries.put(key, new AtomicLong(lru.tick()));
+        }
+
+        int removed = lru.evict(entries, AtomicLong::get, entries::remove);
+
+        assertThat(removed).isBetween(ENTRIES / 20, ENTRIES / 6);
+        assertThat(entries).hasSize(ENTRIES - removed);
+        // вытеснены только самые давние
+        for (int key = 0; key < removed; key++) {
+            assertThat(entries).doesNotContainKey(key);
+        }
+    }
+
+    @Test
+    void keepsEntriesThatMustNotBeEvicted() {
+        SampledLru lru = new SampledLru(16);
+        ConcurrentMap<Integer, AtomicLong> entries = new ConcurrentHashMap<>();
+        for (int key = 0; key < 100; key++) {
+            entries.put(key, new AtomicLong(Long.MAX_VALUE));
+        }
+
+        assertThat(lru.evict(entries, AtomicLong::get, entries::remove)).isZero();
+        assertThat(entries).hasSize(100);
+    }
+}
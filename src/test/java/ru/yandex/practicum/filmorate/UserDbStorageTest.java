@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.ids.IdAllocator;
+import ru.yandex.practicum.filmorate.util.IntSet;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({UserDbStorage.class, IdAllocator.class})
+class UserDbStorageTest {
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        userStorage.addFriend(101, 102);
+        userStorage.addFriend(101, 10);
+        userStorage.addFriend(102, 10);
+        userStorage.addFriend(102, 20);
+        userStorage.addFriend(10, 1);
+    }
+
+    @Test
+    void getUsersByIdsLoadsUsersInOneQuery() {
+        assertThat(userStorage.getUsersByIds(List.of(102, 10, 999))).extracting(User::getId).containsExactly(10, 102);
+        assertThat(userStorage.getUsersByIds(List.of())).isEmpty();
+        assertThat(userStorage.getUserById(101).getFriends()).containsExactly(10, 102);
+    }
+
+    @Test
+    void getFriendIdsByUserReturnsWholeGraph() {
+        assertThat(userStorage.getFriendIdsByUser()).isEqualTo(Map.of(
+                101, IntSet.of(10, 102),
+                102, IntSet.of(10, 20),
+                10, IntSet.of(1)));
+    }
+
+    @Test
+    void unknownUserIsNotFound() {
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(999));
+        assertThat(userStorage.existsById(999)).isFalse();
+        assertThat(userStorage.existsById(101)).isTrue();
+    }
+}
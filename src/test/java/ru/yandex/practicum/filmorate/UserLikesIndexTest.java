@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.service.UserLikesIndex;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.util.SparseBitmap;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class UserLikesIndexTest {
+    private final UserLikesIndex index = new UserLikesIndex(new InMemoryFilmStorage());
+
+    @Test
+    void intersectsLikesOfAllUsers() {
+        like(1, 1, 2, 3, 100);
+        like(2, 2, 3, 100, 200);
+        like(3, 3, 100);
+
+        assertThat(index.getCommonFilms(List.of(1, 2))).containsExactly(2, 3, 100);
+        assertThat(index.getCommonFilms(List.of(1, 2, 3))).containsExactly(3, 100);
+        assertThat(index.getCommonFilms(List.of(1, 2, 3, 4))).isEmpty();
+
+        index.likeRemoved(3, 3);
+        assertThat(index.getCommonFilms(List.of(1, 2, 3))).containsExactly(100);
+
+        index.filmRemoved(100);
+        assertThat(index.getCommonFilms(List.of(1, 2))).containsExactly(2, 3);
+
+        index.userRemoved(2);
+        assertThat(index.getCommonFilms(List.of(1, 2))).isEmpty();
+    }
+
+    @Test
+    void matchesSetIntersection() {
+        Random random = new Random(11);
+        int users = 100_000;
+        List<Set<Integer>> likes = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            Set<Integer> films = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                // квадрат равномерной величины дает перекос к популярным фильмам
+                double r = random.nextDouble();
+                films.add((int) (20_000 * r * r) + 1);
+            }
+            likes.add(films);
+            for (int filmId : films) {
+                index.likeAdded(userId, filmId);
+            }
+        }
+        assertThat(SparseBitmap.of(3, 1, 3, 200).and(SparseBitmap.of(200, 3, 64)).cardinality()).isEqualTo(2);
+
+        long total = 0;
+        int nonEmpty = 0;
+        int groups = 1000;
+        for (int i = 0; i < groups; i++) {
+            List<Integer> group = IntStream.range(0, 2 + random.nextInt(6))
+                    .map(k -> random.nextInt(users) + 1)
+                    .boxed()
+                    .toList();
+            Set<Integer> expected = new TreeSet<>(likes.get(group.get(0) - 1));
+            group.forEach(userId -> expected.retainAll(likes.get(userId - 1)));
+
+            long start = System.nanoTime();
+            Set<Integer> common = index.getCommonFilms(group);
+            total += System.nanoTime() - start;
+            assertThat(common).as("group %s", group).containsExactlyElementsOf(expected);
+            if (!common.isEmpty()) nonEmpty++;
+        }
+        assertThat(nonEmpty).isPositive();
+        log.info("{} users x 50 likes: common films of 2..7 users in {} us on average, {} of {} groups non-empty",
+                users, total / groups / 1000, nonEmpty, groups);
+    }
+
+    private void like(int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            index.likeAdded(userId, filmId);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.UserLikesIndex;
+import ru.yandex.practicum.filmorate.service.UserNeighbourIndex;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.util.SparseBitmap;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class UserNeighbourIndexTest {
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final UserLikesIndex userLikes = new UserLikesIndex(filmStorage);
+    private final UserNeighbourIndex index = new UserNeighbourIndex(userLikes);
+
+    @Test
+    void sparseBitmapMatchesTreeSet() {
+        Random random = new Random(3);
+        SparseBitmap bitmap = SparseBitmap.EMPTY;
+        SparseBitmap other = SparseBitmap.EMPTY;
+        TreeSet<Integer> expected = new TreeSet<>();
+        TreeSet<Integer> otherExpected = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int bit = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                bitmap = bitmap.without(bit);
+                expected.remove(bit);
+            } else {
+                bitmap = bitmap.with(bit);
+                expected.add(bit);
+            }
+            int otherBit = random.nextInt(2000);
+            other = other.with(otherBit);
+            otherExpected.add(otherBit);
+        }
+
+        List<Integer> bits = new ArrayList<>();
+        bitmap.forEach(bits::add);
+        assertThat(bits).containsExactlyElementsOf(expected);
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        assertThat(bitmap.contains(expected.first())).isTrue();
+
+        expected.retainAll(otherExpected);
+        assertThat(other.andCardinality(bitmap.toDense(2000 / 64 + 1))).isEqualTo(expected.size());
+    }
+
+    @Test
+    void recommendsUnseenFilmsOfNearestUsers() {
+        like(1, 1, 2);
+        like(2, 1, 2, 3);
+        like(3, 1, 4);
+        like(4, 5);
+        like(5, 1);
+
+        // Jaccard с пользователем 2 - 2/3, с пользователем 3 - 1/3; у пользователя 5 нового нет
+        assertThat(index.recommend(1, 10)).containsExactly(3, 4);
+        assertThat(index.recommend(1, 1)).containsExactly(3);
+        assertThat(index.recommend(4, 10)).isEmpty();
+        assertThat(index.recommend(42, 10)).isEmpty();
+
+        userLikes.likeRemoved(2, 3);
+        assertThat(index.recommend(1, 10)).containsExactly(4);
+
+        userLikes.userRemoved(3);
+        assertThat(index.recommend(1, 10)).isEmpty();
+
+        like(2, 6);
+        assertThat(index.recommend(1, 10)).containsExactly(6);
+        userLikes.filmRemoved(6);
+        assertThat(index.recommend(1, 10)).isEmpty();
+    }
+
+    @Test
+    void incrementalUpdatesMatchRebuild() {
+        Random random = new Random(7);
+        for (int i = 0; i < 30; i++) {
+            filmStorage.createFilm(film());
+        }
+        for (int i = 0; i < 3000; i++) {
+            int userId = random.nextInt(50) + 1;
+            int filmId = random.nextInt(30) + 1;
+            if (random.nextInt(3) == 0) {
+                filmStorage.removeLike(filmId, userId);
+                userLikes.likeRemoved(userId, filmId);
+            } else {
+                filmStorage.addLike(filmId, userId);
+                userLikes.likeAdded(userId, filmId);
+            }
+        }
+
+        UserLikesIndex rebuiltLikes = new UserLikesIndex(filmStorage);
+        rebuiltLikes.rebuild();
+        UserNeighbourIndex rebuilt = new UserNeighbourIndex(rebuiltLikes);
+        for (int userId = 1; userId <= 50; userId++) {
+            assertThat(index.recommend(userId, 10)).as("user %s", userId)
+                    .isEqualTo(rebuilt.recommend(userId, 10));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void syntheticUsers() {
+        for (int users : new int[]{10_000, 100_000, 1_000_000}) {
+            UserLikesIndex likes = new UserLikesIndex(filmStorage);
+            benchmark(likes, new UserNeighbourIndex(likes), users, users < 1_000_000 ? 500 : 100);
+        }
+    }
+
+    private void benchmark(UserLikesIndex likes, UserNeighbourIndex index, int users, int queries) {
+        int films = 5_000;
+        int likesPerUser = 10;
+        Random random = new Random(1);
+
+        long start = System.nanoTime();
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < likesPerUser; i++) {
+                // квадрат равномерной величины дает перекос к популярным фильмам
+                double r = random.nextDouble();
+                likes.likeAdded(userId, (int) (films * r * r) + 1);
+            }
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long[] latencies = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            int userId = random.nextInt(users) + 1;
+            long queryStart = System.nanoTime();
+            List<Integer> recommended = index.recommend(userId, 20);
+            latencies[i] = System.nanoTime() - queryStart;
+            assertThat(recommended).isNotEmpty();
+        }
+        Arrays.sort(latencies);
+        log.info("{} users x {} likes, {} cpu: built in {} ms, recommend p50 {} us, p99 {} us", users,
+                likesPerUser, Runtime.getRuntime().availableProcessors(), buildMillis,
+                latencies[queries / 2] / 1000, latencies[queries * 99 / 100] / 1000);
+        index.shutdown();
+    }
+
+    private void like(int userId, int... filmIds) {
+        for (int filmId : filmIds) {
+            userLikes.likeAdded(userId, filmId);
+        }
+    }
+
+    private Film film() {
+        Film film = new Film();
+        film.setName("film");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+}
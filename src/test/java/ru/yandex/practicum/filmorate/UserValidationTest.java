@@ -10,12 +10,28 @@ import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.service.FeedAppender;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.service.FeedHub;
 import ru.yandex.practicum.filmorate.service.FeedService;
+import ru.yandex.practicum.filmorate.service.FeedTimeline;
+import ru.yandex.practicum.filmorate.service.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.service.FilmReviewTop;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.service.FilmSuggestIndex;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.IndexRebuilder;
+import ru.yandex.practicum.filmorate.service.UserLikesIndex;
+import ru.yandex.practicum.filmorate.service.UserNeighbourIndex;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.mappers.DirectorRowMapper;
 
 import java.time.LocalDate;
 
@@ -26,9 +42,24 @@ public class UserValidationTest {
     private final UserStorage userStorage = new InMemoryUserStorage();
     private final FilmStorage filmStorage = new InMemoryFilmStorage();
     private final FeedStorage feedStorage = new FeedDbStorage(new JdbcTemplate());
-    private final FeedService feedService = new FeedService(feedStorage, userStorage);
-    private final UserService userService = new UserService(userStorage, feedService);
-    private final RecommendationService recommendationService = new RecommendationService(userStorage, filmStorage);
+    private final FeedHub feedHub = new FeedHub(feedStorage);
+    private final FeedTimeline feedTimeline = new FeedTimeline(feedStorage);
+    private final FriendGraph friendGraph = new FriendGraph(userStorage);
+    private final FeedService feedService = new FeedService(feedStorage, userStorage,
+            new FeedAppender(feedStorage, feedHub, feedTimeline), feedHub, feedTimeline, friendGraph);
+    private final FilmLeaderboard filmLeaderboard = new FilmLeaderboard(filmStorage);
+    private final UserLikesIndex userLikesIndex = new UserLikesIndex(filmStorage);
+    private final RecommendationService recommendationService = new RecommendationService(userStorage, filmStorage,
+            new FilmSimilarityIndex(userLikesIndex), new UserNeighbourIndex(userLikesIndex));
+    private final FilmReviewTop filmReviewTop = new FilmReviewTop(new ReviewDbStorage(new JdbcTemplate()));
+    private final FilmCache filmCache = new FilmCache(filmStorage);
+    private final DirectorDbStorage directorStorage = new DirectorDbStorage(new JdbcTemplate(), new DirectorRowMapper());
+    private final IndexRebuilder indexRebuilder = new IndexRebuilder(filmLeaderboard,
+            new FilmSearchIndex(filmStorage, directorStorage),
+            new FilmSuggestIndex(filmStorage, directorStorage, filmLeaderboard),
+            userLikesIndex, recommendationService, friendGraph);
+    private final UserService userService = new UserService(userStorage, feedService, filmLeaderboard,
+            recommendationService, userLikesIndex, friendGraph, filmReviewTop, filmCache, indexRebuilder);
     private final UserController controller = new UserController(userService, recommendationService);
 
     private User existing;